@@ -0,0 +1,31 @@
+package benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Точка входа {@code benchmarks.jar}. Принимает обычные опции JMH
+ * (например, регулярное выражение для выбора бенчмарков), но всегда
+ * включает профилировщик gc, чтобы в отчете был виден gc.alloc.rate.norm (bytes/op),
+ * и сохраняет результаты в JSON для сравнения между запусками.
+ */
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        var commandLine = new CommandLineOptions(args);
+
+        var options = new OptionsBuilder()
+            .parent(commandLine)
+            .addProfiler(GCProfiler.class)
+            .resultFormat(ResultFormatType.JSON)
+            .result(commandLine.getResult().orElse("target/jmh-result.json"))
+            .build();
+
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,73 @@
+package benchmarks;
+
+import cli.CommandError;
+import cli.CommandLexer;
+import cli.CommandTokenizer;
+import cli.CommandValidator;
+import cli.utils.Token;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Проверка и разбиение команды на токены: однопроходный {@link CommandLexer}
+ * против прежнего пути на регулярном выражении ({@link LegacyCommandParser}).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CommandParsingBenchmark {
+
+    @Param({"short", "quoted", "escaped", "invalid"})
+    public String input;
+
+    private String command;
+
+    @Setup
+    public void setup() {
+        command = switch (input) {
+            case "short" -> "/chat fetch 15";
+            case "quoted" -> "/chat message 15 1024 7 1718000000000 \"Привет, как дела? Встречаемся в шесть у входа.\"";
+            case "escaped" -> "/groups create gftwl \"Группа для любителей \\\"[ССЫЛКА\\\\ЗАБЛОКИРОВАНА]\\\"\"";
+            case "invalid" -> "/chat message 15 1024 7 1718000000000 \"Незакрытая кавычка";
+            default -> throw new IllegalArgumentException(input);
+        };
+    }
+
+    @Benchmark
+    public CommandError validate() {
+        return CommandValidator.validate(command);
+    }
+
+    @Benchmark
+    public List<Token> tokenize() {
+        return CommandTokenizer.tokenize(command);
+    }
+
+    /**
+     * Путь процессора: проверка и токены за один проход.
+     */
+    @Benchmark
+    public void lex(Blackhole blackhole) {
+        var tokens = new ArrayList<Token>();
+        blackhole.consume(CommandLexer.lex(command, tokens));
+        blackhole.consume(tokens);
+    }
+
+    /**
+     * Прежний путь процессора: проверка, затем повторный прогон выражения для токенов.
+     */
+    @Benchmark
+    public void legacyValidateAndTokenize(Blackhole blackhole) {
+        var error = LegacyCommandParser.validate(command);
+        blackhole.consume(error);
+        if (error == null)
+            blackhole.consume(LegacyCommandParser.tokenize(command));
+    }
+}
@@ -0,0 +1,82 @@
+package benchmarks;
+
+import cli.CommandError;
+import cli.CustomCommandProcessor;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Исполнение команд процессором: от разбора строки до вызова действия.
+ * <br>{@code registered} - сколько еще команд зарегистрировано помимо проверяемых,
+ * чтобы было видно, зависит ли поиск команды от их числа.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CommandProcessorBenchmark {
+
+    @Param({"1", "500"})
+    public int registered;
+
+    private CustomCommandProcessor<Object> processor;
+    private final Object data = new Object();
+
+    @Setup
+    public void setup() {
+        processor = new CustomCommandProcessor<>();
+
+        for (int i = 0; i < registered; i++) {
+            processor.register("push" + i, (it) -> it
+                .subcommand("update", (update) -> update
+                    .requireArgument("id")
+                    .executes(() -> {}))
+            );
+        }
+
+        processor.register("ping", (it) -> it.executes(() -> {}));
+
+        processor.register("chat", (it) -> it
+            .subcommand("fetch", (fetch) -> fetch
+                .requireArgument("groupId")
+                .executes(() -> {}))
+            .subcommand("group", (group) -> group
+                .subcommand("settings", (settings) -> settings
+                    .subcommand("members", (members) -> members
+                        .subcommand("role", (role) -> role
+                            .requireArgument("userId")
+                            .requireArgument("role")
+                            .findArgument("reason")
+                            .executes(() -> {}))
+                        .subcommand("kick", (kick) -> kick
+                            .requireArgument("userId")
+                            .executes(() -> {}))))
+                .subcommand("rename", (rename) -> rename
+                    .requireArgument("name")
+                    .executes(() -> {})))
+        );
+    }
+
+    @Benchmark
+    public CommandError shallow() {
+        return processor.execute("/ping", data);
+    }
+
+    @Benchmark
+    public CommandError withArgument() {
+        return processor.execute("/chat fetch 15", data);
+    }
+
+    @Benchmark
+    public CommandError deep() {
+        return processor.execute("/chat group settings members role 42 \"moderator\" \"по просьбе владельца\"", data);
+    }
+
+    @Benchmark
+    public CommandError notFound() {
+        return processor.execute("/unknown command", data);
+    }
+}
@@ -0,0 +1,43 @@
+package benchmarks;
+
+import cli.CommandError;
+import cli.CommandResults;
+import org.openjdk.jmh.annotations.*;
+import utils.Ansi;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Построение сообщений об ошибках и раскраска текста.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FormattingBenchmark {
+
+    private final String command = "/chat message 15 1024 7 1718000000000 \"Незакрытая кавычка";
+    private final String text = "Пользователь 7 присоединился к группе";
+
+    @Benchmark
+    public CommandError commandError() {
+        return CommandResults.UNCLOSED_QUOTE.create(command, 38, command.length());
+    }
+
+    @Benchmark
+    public CommandError commandErrorOutOfBounds() {
+        return CommandResults.FURTHER_SUBCOMMANDS_EXPECTED.create(command, command.length(), command.length() + 10);
+    }
+
+    @Benchmark
+    public String applyStyle() {
+        return Ansi.applyStyle(text, Ansi.Colors.RED);
+    }
+
+    @Benchmark
+    public String applyStyles() {
+        return Ansi.applyStyle(text, Ansi.Colors.RED, Ansi.Modes.UNDERLINE, Ansi.Modes.BOLD);
+    }
+}
@@ -0,0 +1,113 @@
+package benchmarks;
+
+import cli.CommandError;
+import cli.utils.Token;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.regex.MatchResult;
+import java.util.regex.Pattern;
+
+import static cli.CommandResults.*;
+
+/**
+ * Копия разбора команд на регулярном выражении, который использовался
+ * до {@link cli.CommandLexer}. Нужна только для сравнения в бенчмарках.
+ */
+final class LegacyCommandParser {
+
+    static final Pattern pattern = Pattern.compile(
+        "^/" // Начало строки
+            + "|(\\w+|(?<!\")\"\"|(?<!\")\".*?(?:(?<=[^\\\\])(?:\\\\\\\\)+|[^\\\\])\")"
+            + "|([^\"^[:alnum]]+?(?=\\w|\"|$)|\".*)" // Сепараторы
+    );
+
+    private LegacyCommandParser() {
+    }
+
+    static CommandError validate(String command) {
+        if (command.isEmpty())
+            return EMPTY_COMMAND.create(command, 0, 0);
+
+        var parserOutput = pattern
+            .matcher(command)
+            .results()
+            .toList();
+
+        for (int i = 0; i < parserOutput.size(); i++) {
+            var it = parserOutput.get(i);
+            String delimiter = it.group(2);
+
+            if (delimiter == null)
+                continue;
+
+            if (delimiter.isEmpty())
+                if (i == parserOutput.size() - 1)
+                    return null;
+                else
+                    return NO_SEPARATION.create(command, it.start(2) - 1, it.end(2) + 1);
+
+            if (delimiter.charAt(0) == '"') {
+                if (command.charAt(it.start(2) - 1) == '\"')
+                    return NO_SEPARATION.create(command, it.start(2), it.end(2));
+                return UNCLOSED_QUOTE.create(command, it.start(2), it.end(2));
+            }
+
+            if (delimiter.charAt(0) != ' ')
+                return INVALID_SEPARATOR.create(command, it.start(2), it.end(2));
+
+            if (delimiter.length() > 1)
+                return UNEXPECTED_SYMBOL.create(command, it.start(2) + 1, it.end(2));
+        }
+        return null;
+    }
+
+    static List<Token> tokenize(String input) {
+        return pattern
+            .matcher(input)
+            .results()
+            .map(LegacyCommandParser::processToken)
+            .filter(Objects::nonNull)
+            .toList();
+    }
+
+    private static Token processToken(MatchResult result) {
+        var token = result.group(1);
+
+        if (token == null)
+            return null;
+
+        var isArgument = token.charAt(0) == '"';
+        if (isArgument)
+            token = token.substring(1, token.length() - 1);
+
+        return new Token(
+            removeEscapeMetasymbols(token),
+            result.start(1),
+            result.end(1),
+            isArgument
+        );
+    }
+
+    private static String removeEscapeMetasymbols(String token) {
+        StringBuilder stringBuilder = new StringBuilder();
+        boolean isEscaped = false;
+
+        for (int i = 0; i < token.length(); i++) {
+            char c = token.charAt(i);
+            if (c == '\\') {
+                if (isEscaped) {
+                    stringBuilder.append(c);
+                    isEscaped = false;
+                    continue;
+                }
+                isEscaped = true;
+                continue;
+            }
+            if (isEscaped)
+                isEscaped = false;
+            stringBuilder.append(c);
+        }
+        return stringBuilder.toString();
+    }
+}
@@ -0,0 +1,98 @@
+package benchmarks;
+
+import cli.CommandLexer;
+import cli.utils.Token;
+import elements.Message;
+import elements.MessageCodec;
+import elements.MessageView;
+import org.openjdk.jmh.annotations.*;
+import server.HistoryService;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Бинарное представление сообщения ({@link MessageCodec}) против текстовой
+ * команды {@code /chat message ...} ({@link HistoryService#encodeMessage(int, Message)}).
+ *
+ * <p>Чтение текста - путь клиента: разбор команды на токены и создание {@link Message}.
+ * Бинарное чтение измеряется и с созданием {@link Message}, и через {@link MessageView},
+ * как при пересылке сообщения сервером.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MessageCodecBenchmark {
+
+    private static final int GROUP_ID = 15;
+
+    @Param({"short", "long"})
+    public String content;
+
+    private Message message;
+    private String line;
+    private ByteBuffer encoded;
+    private final ByteBuffer out = ByteBuffer.allocateDirect(64 * 1024);
+    private final MessageView view = new MessageView();
+
+    @Setup
+    public void setup() {
+        var text = switch (content) {
+            case "short" -> "Привет!";
+            case "long" -> "Встречаемся в шесть у входа, \"не опаздывайте\". ".repeat(20);
+            default -> throw new IllegalArgumentException(content);
+        };
+        message = new Message(1024, text, 7, new Timestamp(1718000000000L));
+        line = HistoryService.encodeMessage(GROUP_ID, message);
+
+        encoded = ByteBuffer.allocateDirect(MessageCodec.encodedLength(message));
+        MessageCodec.encode(message, encoded);
+        encoded.flip();
+    }
+
+    @Benchmark
+    public byte[] textEncode() {
+        return HistoryService.encodeMessage(GROUP_ID, message).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public int binaryEncode() {
+        out.clear();
+        MessageCodec.encode(message, out);
+        return out.position();
+    }
+
+    @Benchmark
+    public Message textDecode() {
+        var tokens = new ArrayList<Token>();
+        CommandLexer.lex(line, tokens);
+        return new Message(
+            Integer.parseInt(tokens.get(3).content()),
+            tokens.get(6).content(),
+            Integer.parseInt(tokens.get(4).content()),
+            new Timestamp(Long.parseLong(tokens.get(5).content()))
+        );
+    }
+
+    @Benchmark
+    public Message binaryDecode() {
+        return view.wrap(encoded, 0).toMessage();
+    }
+
+    /**
+     * Пересылка: заголовок читается, текст копируется байтами без декодирования.
+     */
+    @Benchmark
+    public int binaryRelay() {
+        view.wrap(encoded, 0);
+        out.clear();
+        view.copyTo(out);
+        return view.senderId();
+    }
+}
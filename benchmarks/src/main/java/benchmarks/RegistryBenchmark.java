@@ -0,0 +1,94 @@
+package benchmarks;
+
+import elements.AbstractUser;
+import org.openjdk.jmh.annotations.*;
+import server.Registry;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Поиск пользователя по id в {@link Registry} против {@code ConcurrentHashMap<Integer, User>}
+ * при одновременном чтении из нескольких потоков.
+ *
+ * <p>Запускать с разным числом потоков, например {@code -t 1} и {@code -t 8}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RegistryBenchmark {
+
+    static final class User extends AbstractUser {
+        User(int id, String userName) {
+            this.id = id;
+            this.userName = userName;
+        }
+
+        @Override
+        public void sendMessage(String text, int id) {
+        }
+
+        @Override
+        public void setName(String name) {
+        }
+
+        @Override
+        public void setPassword(String password) {
+        }
+
+        @Override
+        public void addFriend(int id) {
+        }
+    }
+
+    @Param({"100000"})
+    public int users;
+
+    private Registry<User> registry;
+    private ConcurrentHashMap<Integer, User> map;
+    private int[] ids;
+
+    @Setup
+    public void setup() {
+        registry = Registry.ofUsers();
+        map = new ConcurrentHashMap<>();
+        ids = new int[users];
+
+        for (int i = 0; i < users; i++) {
+            int id = i * 7 + 1;
+            var user = new User(id, "user" + id);
+            registry.register(user);
+            map.put(id, user);
+            ids[i] = id;
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int position = ThreadLocalRandom.current().nextInt(1 << 20);
+    }
+
+    private int nextId(Cursor cursor) {
+        cursor.position = cursor.position * 1103515245 + 12345;
+        return ids[(cursor.position >>> 8) % ids.length];
+    }
+
+    @Benchmark
+    public User registryGet(Cursor cursor) {
+        return registry.get(nextId(cursor));
+    }
+
+    @Benchmark
+    public User concurrentHashMapGet(Cursor cursor) {
+        return map.get(nextId(cursor));
+    }
+
+    @Benchmark
+    public User registryFind(Cursor cursor) {
+        return registry.find("user" + nextId(cursor));
+    }
+}
@@ -0,0 +1,77 @@
+package benchmarks;
+
+import network.SimpleServerSocket;
+import network.SimpleSocket;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Задержка "запрос - ответ" между двумя {@link SimpleSocket} через loopback.
+ * <br>Второй конец соединения отвечает эхом из отдельного потока.
+ */
+@BenchmarkMode({Mode.AverageTime, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SocketRoundTripBenchmark {
+
+    @Param({"lines", "frames"})
+    public String mode;
+
+    @Param({"32", "4096"})
+    public int size;
+
+    private SimpleServerSocket server;
+    private SimpleSocket client;
+    private SimpleSocket echo;
+    private Thread echoThread;
+    private String message;
+
+    @Setup
+    public void setup() throws InterruptedException {
+        server = new SimpleServerSocket(0);
+        var accepted = new SimpleSocket[1];
+        var acceptor = Thread.ofPlatform().start(() -> accepted[0] = server.accept());
+
+        client = new SimpleSocket("localhost", server.getLocalPort());
+        acceptor.join();
+        echo = accepted[0];
+
+        echoThread = Thread.ofPlatform().daemon().start(() -> {
+            try {
+                String received;
+                while (!echo.isClosed() && (received = echo.receiveMessage()) != null)
+                    echo.sendMessage(received);
+            } catch (IllegalStateException ignored) {
+                // Сокет закрыт в tearDown() между проверкой и вызовом
+            }
+        });
+
+        if (mode.equals("frames")) {
+            client.enableFraming();
+            // Первое сообщение после запроса переключает на кадры и эхо-сторону
+            client.sendMessage("warmup");
+            client.receiveMessage();
+        }
+
+        message = "x".repeat(size);
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        // Сначала останавливаем эхо: закрытие будит ожидающий поток, и он выходит из цикла
+        echo.close();
+        echoThread.join(1000);
+        client.close();
+        server.close();
+    }
+
+    @Benchmark
+    public String roundTrip() {
+        client.sendMessage(message);
+        return client.receiveMessage();
+    }
+}
@@ -8,7 +8,9 @@ import utils.kt.Check;
 import utils.kt.CheckIf;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import static cli.CommandResults.*;
 
@@ -17,6 +19,10 @@ public class Command<T> {
     final String base;
     final String helpDescription;
     final List<Command<T>> subcommands;
+    /**
+     * Суб-команды по названию - для поиска следующей суб-команды за O(1).
+     */
+    final Map<String, Command<T>> subcommandTable;
     final List<Argument> arguments;
 
     final Apply<Context<T>> action;
@@ -36,12 +42,20 @@ public class Command<T> {
         this.base = base;
         this.helpDescription = helpDescription;
         this.subcommands = subcommands;
+        this.subcommandTable = createTable(subcommands);
         this.arguments = arguments;
         this.action = action;
         this.conditions = conditions;
         this.isPhantom = isPhantom;
     }
 
+    static <T> Map<String, Command<T>> createTable(List<Command<T>> commands) {
+        var table = new HashMap<String, Command<T>>();
+        for (var command : commands)
+            table.putIfAbsent(command.base, command);
+        return Map.copyOf(table);
+    }
+
     public boolean is(Token token) {
         return base.equals(token.content());
     }
@@ -108,19 +122,19 @@ public class Command<T> {
         }
 
         // Ищем позицию, на которой располагается следующая суб-команда:
-        var nextSubcommand = context.position + 1;
+        var nextSubcommand = subcommandTable.isEmpty()
+            ? context.tokens.size()
+            : context.position + 1;
         Command<T> foundSubcommand = null;
 
-        out:
-        while (context.tokens.size() > nextSubcommand) {
-            for (var subcommand : subcommands) {
-                var sbToken = context.getToken(nextSubcommand);
-                if (sbToken.is(subcommand.base) && sbToken.isFunctional()) {
-                    foundSubcommand = subcommand;
-                    break out;
-                }
-            }
-            nextSubcommand++;
+        for (; nextSubcommand < context.tokens.size(); nextSubcommand++) {
+            var sbToken = context.tokens.get(nextSubcommand);
+            if (!sbToken.isFunctional())
+                continue;
+
+            foundSubcommand = subcommandTable.get(sbToken.content());
+            if (foundSubcommand != null)
+                break;
         }
 
 
@@ -0,0 +1,242 @@
+package cli;
+
+import cli.utils.Token;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static cli.CommandResults.*;
+
+/**
+ * Однопроходный разборщик команд: за один просмотр строки проверяет ее,
+ * разбивает на токены и снимает экранирование с аргументов в кавычках.
+ *
+ * <p>Правила разбора повторяют прежнее регулярное выражение процессора:
+ * <ul>
+ *     <li> {@code /} в начале строки пропускается
+ *     <li> Слово - последовательность символов {@code [a-zA-Z_0-9]}
+ *     <li> Аргумент - текст в кавычках. Кавычка закрывает аргумент, если перед ней
+ *          четное число обратных слэшей. Перенос строки допустим только последним символом,
+ *          внутри аргумента он записывается как {@code \n}, {@code \r} или {@code \}{@code uXXXX}
+ *     <li> Разделитель - все остальное до следующего слова, кавычки или конца строки.
+ *          Допустим только одиночный пробел
+ *     <li> Символы {@code ^} и {@code :} (и разделители, оборванные ими) пропускаются
+ * </ul>
+ * Ошибки и их позиции совпадают с тем, что выдавали
+ * {@link CommandValidator} и {@link CommandTokenizer} на регулярном выражении.
+ */
+public final class CommandLexer {
+
+    private CommandLexer() {
+    }
+
+    /**
+     * Разбирает команду до первой ошибки.
+     *
+     * @param input  команда
+     * @param tokens список, в который добавляются токены. Может быть null,
+     *               если нужна только проверка
+     * @return {@link CommandError}, если команда не прошла проверку
+     *     <br><code>null</code> иначе.
+     */
+    public static CommandError lex(String input, List<Token> tokens) {
+        if (input.isEmpty())
+            return new CommandError(EMPTY_COMMAND, input, 0, 0);
+        return scan(input, tokens, true);
+    }
+
+    /**
+     * Разбирает команду целиком, не обращая внимания на ошибки разделителей.
+     */
+    static List<Token> tokens(String input) {
+        var tokens = new ArrayList<Token>();
+        scan(input, tokens, false);
+        return tokens;
+    }
+
+    private static CommandError scan(String input, List<Token> tokens, boolean stopOnError) {
+        int length = input.length();
+        int position = length > 0 && input.charAt(0) == '/' ? 1 : 0;
+
+        while (position < length) {
+            char c = input.charAt(position);
+
+            if (isWord(c)) {
+                int end = position + 1;
+                while (end < length && isWord(input.charAt(end)))
+                    end++;
+
+                if (tokens != null)
+                    tokens.add(new Token(input.substring(position, end), position, end, false));
+                position = end;
+                continue;
+            }
+
+            if (c == '"') {
+                boolean afterQuote = position > 0 && input.charAt(position - 1) == '"';
+
+                if (!afterQuote) {
+                    int close = position + 1 < length && input.charAt(position + 1) == '"'
+                        ? position + 1
+                        : closingQuote(input, position);
+
+                    if (close >= 0) {
+                        if (tokens != null)
+                            tokens.add(new Token(unescape(input, position + 1, close), position, close + 1, true));
+                        position = close + 1;
+                        continue;
+                    }
+                }
+
+                // Незакрытая кавычка поглощает остаток строки
+                int end = position + 1;
+                while (end < length && !isLineTerminator(input.charAt(end)))
+                    end++;
+
+                if (stopOnError)
+                    return new CommandError(afterQuote ? NO_SEPARATION : UNCLOSED_QUOTE, input, position, end);
+                position = end;
+                continue;
+            }
+
+            int end = separatorEnd(input, position);
+            if (end < 0) {
+                position++;
+                continue;
+            }
+
+            if (stopOnError) {
+                if (c != ' ')
+                    return new CommandError(INVALID_SEPARATOR, input, position, end);
+                if (end - position > 1)
+                    return new CommandError(UNEXPECTED_SYMBOL, input, position + 1, end);
+            }
+            position = end;
+        }
+        return null;
+    }
+
+    /**
+     * Ищет кавычку, закрывающую аргумент, открытый в {@code open}.
+     *
+     * @return позиция закрывающей кавычки, либо -1, если аргумент не закрыт
+     */
+    private static int closingQuote(String input, int open) {
+        int length = input.length();
+        int backslashes = 0;
+
+        for (int i = open + 1; i < length; i++) {
+            char c = input.charAt(i);
+
+            if (c == '"' && i > open + 1 && backslashes % 2 == 0)
+                return i;
+            if (isLineTerminator(c))
+                return i + 1 < length && input.charAt(i + 1) == '"' ? i + 1 : -1;
+
+            backslashes = c == '\\' ? backslashes + 1 : 0;
+        }
+        return -1;
+    }
+
+    /**
+     * Ищет конец разделителя, начинающегося в {@code start}.
+     *
+     * @return позиция за разделителем, либо -1, если разделитель оборван
+     *     недопустимым символом
+     */
+    private static int separatorEnd(String input, int start) {
+        int length = input.length();
+
+        for (int i = start; i < length; i++) {
+            char c = input.charAt(i);
+            if (i > start && (isWord(c) || c == '"' || isInputEnd(input, i)))
+                return i;
+            if (!isSeparator(c))
+                return -1;
+        }
+        return length;
+    }
+
+    /**
+     * Снимает экранирование: {@code \n}, {@code \r} и {@code \}{@code uXXXX} превращаются
+     * в соответствующие символы, у остальных обратный слэш убирается,
+     * а следующий за ним символ остается как есть.
+     */
+    private static String unescape(String input, int start, int end) {
+        int backslash = input.indexOf('\\', start);
+        if (backslash < 0 || backslash >= end)
+            return input.substring(start, end);
+
+        var builder = new StringBuilder(end - start);
+        builder.append(input, start, backslash);
+        for (int i = backslash; i < end; i++) {
+            char c = input.charAt(i);
+            if (c == '\\') {
+                if (++i >= end)
+                    break;
+                c = input.charAt(i);
+                if (c == 'n') {
+                    c = '\n';
+                } else if (c == 'r') {
+                    c = '\r';
+                } else if (c == 'u' && i + 4 < end) {
+                    int code = hexCode(input, i + 1);
+                    if (code >= 0) {
+                        c = (char) code;
+                        i += 4;
+                    }
+                }
+            }
+            builder.append(c);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * @return число из четырех шестнадцатеричных цифр, начиная с {@code start}, либо -1
+     */
+    private static int hexCode(String input, int start) {
+        int code = 0;
+        for (int i = start; i < start + 4; i++) {
+            int digit = Character.digit(input.charAt(i), 16);
+            if (digit < 0)
+                return -1;
+            code = code << 4 | digit;
+        }
+        return code;
+    }
+
+    private static boolean isWord(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_';
+    }
+
+    private static boolean isSeparator(char c) {
+        return switch (c) {
+            case '"', '^', ':', 'a', 'l', 'n', 'u', 'm' -> false;
+            default -> true;
+        };
+    }
+
+    private static boolean isLineTerminator(char c) {
+        return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+    }
+
+    /**
+     * Конец ввода в смысле {@code $}: сам конец строки, либо позиция
+     * перед завершающим переводом строки.
+     */
+    private static boolean isInputEnd(String input, int position) {
+        int length = input.length();
+        if (position == length)
+            return true;
+        if (position == length - 2)
+            return input.charAt(position) == '\r' && input.charAt(position + 1) == '\n';
+        if (position == length - 1) {
+            char c = input.charAt(position);
+            if (c == '\n')
+                return position == 0 || input.charAt(position - 1) != '\r';
+            return isLineTerminator(c);
+        }
+        return false;
+    }
+}
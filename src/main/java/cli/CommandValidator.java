@@ -1,7 +1,5 @@
 package cli;
 
-import static cli.CommandResults.*;
-
 public class CommandValidator {
 
     /**
@@ -25,64 +23,6 @@ public class CommandValidator {
      *     <br><code>null</code> иначе.
      */
     public static CommandError validate(String command) {
-        if (command.isEmpty())
-            return new CommandError(EMPTY_COMMAND, command, 0, 0);
-
-        var parserOutput = CommandProcessor.pattern
-            .matcher(command)
-            .results()
-            .toList();
-
-        for (int i = 0; i < parserOutput.size(); i++) {
-            var it = parserOutput.get(i);
-            String delimiter = it.group(2);
-
-            if (delimiter == null)
-                continue;
-
-            if (delimiter.isEmpty())
-                if (i == parserOutput.size() - 1)
-                    return null;
-                else {
-                    return new CommandError(NO_SEPARATION,
-                        command, it.start(2) - 1, it.end(2) + 1);
-                }
-
-            if (delimiter.charAt(0) == '"') {
-
-                if (command.charAt(it.start(2) - 1) == '\"')
-                    return new CommandError(
-                        NO_SEPARATION,
-                        command,
-                        it.start(2),
-                        it.end(2)
-                    );
-
-                return new CommandError(
-                    UNCLOSED_QUOTE,
-                    command,
-                    it.start(2),
-                    it.end(2)
-                );
-
-            }
-
-            if (delimiter.charAt(0) != ' ')
-                return new CommandError(
-                    INVALID_SEPARATOR,
-                    command,
-                    it.start(2),
-                    it.end(2)
-                );
-
-            if (delimiter.length() > 1)
-                return new CommandError(
-                    UNEXPECTED_SYMBOL,
-                    command,
-                    it.start(2) + 1,
-                    it.end(2)
-                );
-        }
-        return null;
+        return CommandLexer.lex(command, null);
     }
 }
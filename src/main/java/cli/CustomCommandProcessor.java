@@ -7,8 +7,8 @@ import utils.StringPrintWriter;
 import utils.kt.ApplyStrict;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
-import java.util.regex.Pattern;
 
 import static cli.CommandResults.COMMAND_NOT_FOUND;
 import static cli.CommandResults.NOT_A_COMMAND;
@@ -18,12 +18,11 @@ public class CustomCommandProcessor<T> {
     private final StringPrintWriter output = new StringPrintWriter();
     private CommandError lastError = null;
     private final ArrayList<Command<T>> registeredCommands = new ArrayList<>();
-
-    static final Pattern pattern = Pattern.compile(
-        "^/" // Начало строки
-            + "|(\\w+|(?<!\")\"\"|(?<!\")\".*?(?:(?<=[^\\\\])(?:\\\\\\\\)+|[^\\\\])\")"
-            + "|([^\"^[:alnum]]+?(?=\\w|\"|$)|\".*)" // Сепараторы
-    );
+    /**
+     * Команды по названию. При совпадении названий исполняется
+     * зарегистрированная первой, как и при переборе {@link #registeredCommands}.
+     */
+    private final HashMap<String, Command<T>> dispatchTable = new HashMap<>();
 
     public CustomCommandProcessor() {
         createHelpCommand();
@@ -50,6 +49,7 @@ public class CustomCommandProcessor<T> {
 
     public void register(Command<T> command) {
         registeredCommands.add(command);
+        dispatchTable.putIfAbsent(command.base, command);
     }
 
     public void register(String command, ApplyStrict<Command.Builder<T>> action)
@@ -57,7 +57,7 @@ public class CustomCommandProcessor<T> {
 
         var c = Command.<T>create(command);
         action.run(c);
-        registeredCommands.add(c.build());
+        register(c.build());
     }
 
     /**
@@ -101,24 +101,21 @@ public class CustomCommandProcessor<T> {
             return lastError;
         }
 
-        lastError = CommandValidator.validate(input);
+        List<Token> tokens = new ArrayList<>();
+        lastError = CommandLexer.lex(input, tokens);
         if (lastError != null)
             return lastError;
 
-        List<Token> tokens = CommandTokenizer.tokenize(input);
         var firstToken = tokens.getFirst();
 
-        for (var command : registeredCommands) {
-            if (!command.is(firstToken))
-                continue;
+        var command = dispatchTable.get(firstToken.content());
+        if (command == null)
+            return new CommandError(COMMAND_NOT_FOUND, input, firstToken);
 
-            if (command.isPhantom != null)
-                return command.isPhantom;
-            lastError = command.execute(new Context<>(output, tokens, input, contextData));
-            return lastError;
-        }
-
-        return new CommandError(COMMAND_NOT_FOUND, input, firstToken);
+        if (command.isPhantom != null)
+            return command.isPhantom;
+        lastError = command.execute(new Context<>(output, tokens, input, contextData));
+        return lastError;
     }
 
     private void createHelpCommand() {
@@ -135,12 +132,7 @@ public class CustomCommandProcessor<T> {
     }
 
     private void printAllPossibleCommands(StringPrintWriter out, String subcommand) {
-        Command<T> cmd = null;
-        for (var command : registeredCommands)
-            if (command.base.equals(subcommand)) {
-                cmd = command;
-                break;
-            }
+        var cmd = dispatchTable.get(subcommand);
         if (cmd == null) {
             out.println(Ansi.applyStyle("Unknown command.", Ansi.Colors.RED));
             return;
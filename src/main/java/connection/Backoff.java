@@ -0,0 +1,42 @@
+package connection;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Экспоненциальная задержка между попытками переподключения со случайным разбросом.
+ *
+ * <p>Задержка удваивается с каждой попыткой до {@code maxMillis}, а затем
+ * выбирается случайно из второй половины получившегося интервала.
+ * Благодаря разбросу клиенты, отключенные одновременно (например, при перезапуске
+ * сервера), возвращаются не в один момент.
+ */
+final class Backoff {
+
+    private final long baseMillis;
+    private final long maxMillis;
+    private int attempt = 0;
+
+    Backoff(long baseMillis, long maxMillis) {
+        if (baseMillis < 1 || maxMillis < baseMillis)
+            throw new IllegalArgumentException("Invalid backoff bounds.");
+
+        this.baseMillis = baseMillis;
+        this.maxMillis = maxMillis;
+    }
+
+    /**
+     * @return задержка перед следующей попыткой.
+     */
+    synchronized long nextDelayMillis() {
+        long ceiling = Math.min(maxMillis, baseMillis << Math.min(attempt, 20));
+        attempt++;
+        return ThreadLocalRandom.current().nextLong(ceiling / 2, ceiling + 1);
+    }
+
+    /**
+     * Сбрасывает задержку к начальной после успешного подключения.
+     */
+    synchronized void reset() {
+        attempt = 0;
+    }
+}
@@ -0,0 +1,320 @@
+package connection;
+
+import elements.Message;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+
+/**
+ * Загруженная часть истории открытого чата.
+ *
+ * <p>При открытии чата сервер присылает только последнюю страницу сообщений.
+ * Более старые страницы подгружаются по запросу ({@link #loadOlder()}),
+ * например, когда пользователь долистал до начала списка.
+ *
+ * <p>История хранит окно не длиннее {@value #WINDOW_SIZE} сообщений. Если при
+ * загрузке страницы окно переполняется, сообщения с противоположного конца
+ * выгружаются, и при прокрутке обратно загружаются снова ({@link #loadNewer()}).
+ *
+ * <p>Новые сообщения чата приходят той же командой, что и сообщения страниц,
+ * и добавляются в конец, если окно доходит до конца истории. Пропуск в id
+ * (например, после обрыва соединения) догружается страницами с сервера.
+ */
+public class ChatHistory {
+
+    /**
+     * Получатель изменений окна истории.
+     */
+    public interface Listener {
+        /**
+         * @param messages добавленные сообщения, от старых к новым
+         * @param older    true, если сообщения добавлены в начало истории
+         * @param dropped  сколько сообщений выгружено с противоположного конца
+         */
+        void onMessages(List<Message> messages, boolean older, int dropped);
+    }
+
+    public static final int PAGE_SIZE = 50;
+    public static final int WINDOW_SIZE = 4 * PAGE_SIZE;
+
+    /**
+     * Изменение окна, о котором нужно сообщить получателю вне блокировки.
+     */
+    private record Change(List<Message> messages, boolean older, int dropped) {
+    }
+
+    private final String groupId;
+    private final ArrayList<Message> messages = new ArrayList<>();
+    /**
+     * Сообщения, пришедшие во время загрузки страницы, по id: без повторов и по порядку.
+     */
+    private final TreeMap<Integer, Message> pending = new TreeMap<>();
+
+    private boolean hasOlder = true;
+    private boolean hasNewer = false;
+    private boolean isLoading = true;
+    /**
+     * Догружаются ли пропущенные сообщения: страницы запрашиваются, пока сервер не скажет, что это все.
+     */
+    private boolean isCatchingUp = false;
+    private Listener listener = null;
+
+    public ChatHistory(String groupId) {
+        this.groupId = groupId;
+    }
+
+    public String getGroupId() {
+        return groupId;
+    }
+
+    /**
+     * @return копия загруженных сообщений, от старых к новым.
+     */
+    public synchronized List<Message> getMessages() {
+        return List.copyOf(messages);
+    }
+
+    public synchronized boolean hasOlder() {
+        return hasOlder;
+    }
+
+    /**
+     * @return true, если новые сообщения выгружены из окна, либо еще не загружены.
+     */
+    public synchronized boolean hasNewer() {
+        return hasNewer;
+    }
+
+    public synchronized boolean isLoading() {
+        return isLoading;
+    }
+
+    /**
+     * Устанавливает получателя изменений, сделанных после этого вызова.
+     * <br>Вызывается в потоке, принимающем сообщения сервера.
+     *
+     * @return сообщения, загруженные до этого вызова, от старых к новым.
+     *     Вместе с последующими вызовами {@code listener} они дают все окно
+     *     без пропусков и повторов.
+     */
+    public synchronized List<Message> subscribe(Listener listener) {
+        this.listener = listener;
+        return List.copyOf(messages);
+    }
+
+    /**
+     * Принимает сообщение чата: сообщение загружаемой страницы, либо новое.
+     */
+    void receive(Message message) {
+        Listener listener;
+        Change change;
+        int newest;
+        synchronized (this) {
+            if (isLoading) {
+                pending.put(message.getId(), message);
+                return;
+            }
+            // Окно не у конца истории: сообщение загрузится при прокрутке вниз
+            if (hasNewer)
+                return;
+
+            newest = messages.isEmpty() ? -1 : messages.getLast().getId();
+            if (message.getId() <= newest)
+                return;
+
+            if (message.getId() > newest + 1) {
+                // Пропущены сообщения: догружаем их, а это сообщение дождется страницы
+                pending.put(message.getId(), message);
+                isCatchingUp = true;
+                isLoading = true;
+                change = null;
+            } else {
+                change = add(List.of(message), false);
+            }
+            listener = this.listener;
+        }
+
+        if (change == null)
+            request("/history after " + groupId + " " + newest + " " + PAGE_SIZE);
+        else if (listener != null)
+            listener.onMessages(change.messages, change.older, change.dropped);
+    }
+
+    /**
+     * Завершает загрузку страницы: сообщения страницы встают
+     * в начало или конец истории, в зависимости от направления.
+     * Новые сообщения, пришедшие во время загрузки, добавляются в конец.
+     *
+     * @param older   true, если страница загружалась перед самым старым сообщением
+     * @param hasMore есть ли дальше по направлению еще страницы
+     */
+    void pageLoaded(boolean older, boolean hasMore) {
+        Listener listener;
+        var changes = new ArrayList<Change>(2);
+        boolean continueNewer;
+        synchronized (this) {
+            if (messages.isEmpty()) {
+                var run = run(pending.isEmpty() ? 0 : pending.firstKey(), 1);
+                changes.add(add(run, older));
+            } else {
+                // Запрошенная страница добавляется последней, чтобы окно сдвинулось в ее сторону
+                if (older)
+                    changes.add(add(run(messages.getLast().getId() + 1, 1), false));
+                int oldest = messages.getFirst().getId();
+                int newest = messages.getLast().getId();
+                changes.add(older ? add(run(oldest - 1, -1), true) : add(run(newest + 1, 1), false));
+            }
+
+            if (older) {
+                hasOlder = hasMore;
+            } else {
+                hasNewer = hasMore;
+                isCatchingUp &= hasMore;
+            }
+            pending.clear();
+            isLoading = false;
+            continueNewer = isCatchingUp;
+            listener = this.listener;
+        }
+
+        if (listener != null) {
+            for (var change : changes) {
+                if (!change.messages.isEmpty())
+                    listener.onMessages(change.messages, change.older, change.dropped);
+            }
+        }
+
+        if (continueNewer)
+            requestNewer();
+    }
+
+    /**
+     * Выбирает из {@code pending} непрерывную цепочку id, начиная с {@code from},
+     * в сторону {@code step}. Вызывается только под блокировкой.
+     *
+     * @return сообщения цепочки, от старых к новым
+     */
+    private List<Message> run(int from, int step) {
+        var result = new ArrayList<Message>();
+        for (int id = from; ; id += step) {
+            var message = pending.get(id);
+            if (message == null)
+                break;
+            result.add(message);
+        }
+        if (step < 0)
+            result.sort((a, b) -> Integer.compare(a.getId(), b.getId()));
+        return result;
+    }
+
+    /**
+     * Добавляет сообщения в окно и выгружает лишние с противоположного конца.
+     * Вызывается только под блокировкой.
+     */
+    private Change add(List<Message> added, boolean older) {
+        if (older)
+            messages.addAll(0, added);
+        else
+            messages.addAll(added);
+
+        int dropped = Math.max(0, messages.size() - WINDOW_SIZE);
+        if (dropped > 0) {
+            if (older) {
+                messages.subList(messages.size() - dropped, messages.size()).clear();
+                hasNewer = true;
+            } else {
+                messages.subList(0, dropped).clear();
+                hasOlder = true;
+            }
+        }
+        return new Change(added, older, dropped);
+    }
+
+    /**
+     * Запрашивает у сервера страницу сообщений, следующих за самым новым в окне.
+     * <br>Ничего не делает, если страница уже загружается или окно доходит до конца истории.
+     *
+     * @return true, если запрос отправлен
+     */
+    public boolean loadNewer() {
+        synchronized (this) {
+            if (!hasNewer)
+                return false;
+        }
+        return requestNewer();
+    }
+
+    private boolean requestNewer() {
+        int newest;
+        synchronized (this) {
+            if (isLoading)
+                return false;
+            isLoading = true;
+            newest = messages.isEmpty() ? -1 : messages.getLast().getId();
+        }
+
+        return request("/history after " + groupId + " " + newest + " " + PAGE_SIZE);
+    }
+
+    /**
+     * Восстанавливает историю после переподключения к серверу: запрашивает только
+     * сообщения, пришедшие после последнего увиденного, а не всю историю заново.
+     * <br>Запрос страницы, оборванный отключением, отменяется.
+     */
+    public void resume() {
+        boolean isEmpty;
+        synchronized (this) {
+            pending.clear();
+            isEmpty = messages.isEmpty();
+            // Для пустой истории сразу запрашивается первая страница
+            isLoading = isEmpty;
+            // Окно не у конца истории: новые сообщения загрузятся при прокрутке
+            isCatchingUp = !isEmpty && !hasNewer;
+            if (!isCatchingUp && !isEmpty)
+                return;
+        }
+
+        if (isEmpty)
+            request("/history open " + groupId + " " + PAGE_SIZE);
+        else
+            requestNewer();
+    }
+
+    /**
+     * Запрашивает у сервера страницу сообщений, предшествующих самому старому загруженному.
+     * <br>Ничего не делает, если страница уже загружается или история загружена полностью.
+     *
+     * @return true, если запрос отправлен
+     */
+    public boolean loadOlder() {
+        int oldest;
+        synchronized (this) {
+            if (isLoading || !hasOlder || messages.isEmpty())
+                return false;
+            isLoading = true;
+            oldest = messages.getFirst().getId();
+        }
+
+        return request("/history before " + groupId + " " + oldest + " " + PAGE_SIZE);
+    }
+
+    /**
+     * Отправляет запрос страницы. Если соединения нет, снимает флаг загрузки.
+     */
+    private boolean request(String command) {
+        if (ServerConnectManager.send(command))
+            return true;
+
+        requestFailed();
+        return false;
+    }
+
+    /**
+     * Снимает флаг загрузки, если сервер отказал в странице или запрос не удалось отправить.
+     */
+    synchronized void requestFailed() {
+        isLoading = false;
+        isCatchingUp = false;
+    }
+}
@@ -1,15 +1,56 @@
 package connection;
 
-import java.util.ArrayList;
-import java.util.HashMap;
+import utils.kt.Apply;
+
+import java.util.concurrent.ConcurrentHashMap;
 
 public class Client {
 
     public static String openChatId;
 
+    /**
+     * Загруженная история открытого чата, либо null, если чат не открыт.
+     */
+    public static volatile ChatHistory history = null;
+
+    private static volatile Apply<ChatHistory> onChatOpened = null;
+
     static ServerConnectManager scm = new ServerConnectManager("127.0.0.1", 8080);
 
-    public static HashMap<String, ArrayList<String>> map = new HashMap<>(20);
+    public static final int MAX_UNREAD_GROUPS = 1024;
+    public static final int UNREAD_PREVIEWS_PER_GROUP = 20;
+
+    /**
+     * Непрочитанные сообщения групп, не открытых на данный момент.
+     */
+    public static final UnreadStore unread = new UnreadStore(MAX_UNREAD_GROUPS, UNREAD_PREVIEWS_PER_GROUP);
+
+    /**
+     * Присутствие друзей и участников открытых групп: id пользователя -
+     * {@code online} или {@code typing:<groupId>}. Пользователей не в сети здесь нет.
+     */
+    public static final ConcurrentHashMap<String, String> presence = new ConcurrentHashMap<>();
+
+    /**
+     * Применяет изменение присутствия из сообщения {@code /presence update}.
+     *
+     * @param diff {@code <userId>:<online|offline|typing|stopped>[:<groupId>]}
+     */
+    static void applyPresence(String diff) {
+        var parts = diff.split(":");
+        if (parts.length < 2)
+            return;
+
+        switch (parts[1]) {
+            case "online", "stopped" -> presence.put(parts[0], "online");
+            case "offline" -> presence.remove(parts[0]);
+            case "typing" -> {
+                if (parts.length == 3)
+                    presence.put(parts[0], "typing:" + parts[2]);
+            }
+            default -> System.err.println("Unknown presence change: " + diff);
+        }
+    }
 
     public static void launch() {
         scm.connect();
@@ -24,9 +65,54 @@ public class Client {
      * @param msg - новое сообщение
      */
     public static void addUnreadMsg(String groupName, Object msg) {
-        ArrayList<String> unread = map.get(groupName);
-        unread.add(msg.toString());
-        map.put(groupName, unread);
+        unread.add(groupName, msg.toString());
+    }
+
+    /**
+     * Открывает чат и запрашивает у сервера последнюю страницу его истории.
+     *
+     * @param groupId - "строковый" id чата
+     */
+    public static void openChat(String groupId) {
+        onChatOpened(groupId);
+        ServerConnectManager.send("/history open " + groupId + " " + ChatHistory.PAGE_SIZE);
+    }
+
+    /**
+     * Делает чат открытым. Если это другой чат, загруженная история сбрасывается.
+     *
+     * @param groupId - "строковый" id чата
+     */
+    static void onChatOpened(String groupId) {
+        openChatId = groupId;
+        readMessage(groupId);
+
+        var current = history;
+        if (current != null && current.getGroupId().equals(groupId))
+            return;
+
+        var opened = new ChatHistory(groupId);
+        history = opened;
+
+        var listener = onChatOpened;
+        if (listener != null)
+            listener.run(opened);
+    }
+
+    /**
+     * Устанавливает действие при открытии другого чата, например, показ его истории.
+     * <br>Вызывается в потоке, открывшем чат.
+     */
+    public static void setOnChatOpened(Apply<ChatHistory> listener) {
+        onChatOpened = listener;
+    }
+
+    /**
+     * @return история чата, если он сейчас открыт, иначе null.
+     */
+    static ChatHistory historyOf(String groupId) {
+        var current = history;
+        return current != null && current.getGroupId().equals(groupId) ? current : null;
     }
 
     /**
@@ -35,6 +121,6 @@ public class Client {
      * @param groupName - "строковый" id открытого чата
      */
     public static void readMessage(String groupName) {
-        map.remove(groupName);
+        unread.markRead(groupName);
     }
 }
@@ -6,12 +6,21 @@ public class Group extends AbstractGroup {
 
     @Override
     public void includeUser(int id) {
-        this.members.add(id); // на сервере находим группу по id и добавляем в неё пользователя
+        if (this.members.add(id)) // на сервере находим группу по id и добавляем в неё пользователя
+            journal.memberAdded(this.id, id);
     }
 
     @Override
     public void excludeUser(int id) {
-        this.members.remove(members.indexOf(id));
+        boolean wasMember = this.members.remove(id);
+        if (this.admins.remove(id) || wasMember)
+            journal.memberRemoved(this.id, id);
+    }
+
+    @Override
+    public void addAdmin(int id) {
+        if (this.admins.add(id))
+            journal.adminAdded(this.id, id);
     }
 
 }
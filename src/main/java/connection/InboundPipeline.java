@@ -0,0 +1,105 @@
+package connection;
+
+import cli.CommandProcessor;
+import network.SimpleSocket;
+import utils.kt.Apply;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Обработка входящих сообщений сервера в три стадии:
+ * <ol>
+ *     <li> Поток чтения только принимает строки из сокета и кладет их в очередь
+ *     <li> Ограниченная очередь сглаживает всплески сообщений. Если она заполнена,
+ *          поток чтения ждет, и сервер упирается в TCP окно - сообщения не теряются
+ *     <li> Поток обработки разбирает сообщения {@link ServerCommands#processor}
+ *          и передает результат в {@code onMessage}
+ * </ol>
+ * Ни одна из стадий не выполняется в потоке JavaFX: в него должны попадать
+ * только итоговые изменения интерфейса (см. {@link ServerConnectManager}).
+ *
+ * <p>Поток обработки один на все время работы: при переподключении новый поток
+ * чтения кладет сообщения в ту же очередь, и они разбираются после тех, что остались
+ * от прежнего соединения. Так {@link ServerCommands#processor}, который не потокобезопасен,
+ * никогда не исполняется двумя потоками сразу.
+ */
+final class InboundPipeline {
+
+    static final int QUEUE_CAPACITY = 4096;
+
+    private final CommandProcessor processor;
+    private final Apply<String> onMessage;
+    private final BlockingQueue<String> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private Thread dispatcher = null;
+
+    /**
+     * @param processor процессор серверных команд. Используется только потоком обработки
+     * @param onMessage вызывается в потоке обработки для каждого сообщения после его разбора
+     */
+    InboundPipeline(CommandProcessor processor, Apply<String> onMessage) {
+        this.processor = processor;
+        this.onMessage = onMessage;
+    }
+
+    /**
+     * Начинает читать сообщения нового соединения. Поток обработки
+     * запускается при первом вызове.
+     *
+     * @param socket       соединение с сервером
+     * @param onDisconnect вызывается в потоке чтения, когда сервер закрыл соединение
+     */
+    synchronized void attach(SimpleSocket socket, Runnable onDisconnect) {
+        if (dispatcher == null) {
+            dispatcher = Thread.ofPlatform()
+                .name("server-dispatch")
+                .daemon()
+                .start(this::dispatchLoop);
+        }
+        Thread.ofPlatform()
+            .name("server-reader")
+            .daemon()
+            .start(() -> readLoop(socket, onDisconnect));
+    }
+
+    private void readLoop(SimpleSocket socket, Runnable onDisconnect) {
+        try {
+            while (socket.hasNewMessage())
+                queue.put(socket.receiveMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // Поток обработки дочитает очередь сам
+        onDisconnect.run();
+    }
+
+    private void dispatchLoop() {
+        try {
+            while (true)
+                dispatch(queue.take());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void dispatch(String message) {
+        if (message.isEmpty() || message.charAt(0) != '/') {
+            System.out.println(message);
+            onMessage.run(message);
+            return;
+        }
+
+        try {
+            var error = processor.execute(message);
+            var output = processor.getOutput();
+            if (output != null)
+                System.out.print(output);
+            if (error != null)
+                System.err.println("Unhandled server message: " + message);
+        } catch (RuntimeException e) {
+            // Ошибка в обработчике одной команды не должна останавливать весь поток
+            System.err.println("Error processing server message \"" + message + "\": " + e);
+        }
+        onMessage.run(message);
+    }
+}
@@ -1,6 +1,7 @@
 package connection;
 
 import cli.CommandProcessor;
+import network.BufferPool;
 
 import static cli.CommandResults.PHANTOM_COMMAND;
 
@@ -20,6 +21,39 @@ public class InputManager {
 
     protected String message;
 
+    public InputManager() {
+        registerCommands();
+    }
+
+    /**
+     * Регистрирует команды, обрабатываемые самим клиентом.
+     */
+    private void registerCommands() {
+        commandProcessor.register("history", (it) -> it
+                .description("история чата")
+                .subcommand("open", (open) -> open
+                        .requireArgument("groupId")
+                        .executes((ctx) -> Client.openChat(ctx.getString("groupId"))))
+                .subcommand("older", (older) -> older
+                        .require("No chat is open.", () -> Client.history != null)
+                        .executes(() -> {
+                            if (!Client.history.loadOlder())
+                                System.out.println("Nothing to load.");
+                        }))
+        );
+        commandProcessor.register("ui", (it) -> it
+                .description("состояние интерфейса")
+                .subcommand("stats", (stats) -> stats
+                        .description("сколько сообщений склеивается в один кадр")
+                        .executes((ctx) -> ctx.out.println(Client.scm.getUiStats())))
+        );
+        commandProcessor.register("net", (it) -> it
+                .description("состояние сетевого слоя")
+                .subcommand("buffers", (buffers) -> buffers
+                        .description("попадания в пул буферов и занятая память")
+                        .executes((ctx) -> ctx.out.println(BufferPool.shared().getStats())))
+        );
+    }
 
     boolean isConnected() {
         return ServerConnectManager.socket != null;
@@ -35,12 +69,7 @@ public class InputManager {
      * Все потоки, работающие с ним также будут автоматически остановлены.
      */
     public void disconnect() {
-        if (ServerConnectManager.socket == null)
-            return;
-
-        ServerConnectManager.socket.close();
-        ServerConnectManager.socket = null;
-        System.out.println("Disconnected from the server");
+        Client.scm.disconnect();
     }
 
     /**
@@ -74,9 +103,7 @@ public class InputManager {
     }
 
     private void send(String msg) {
-        if (isConnected())
-            ServerConnectManager.socket.sendMessage(msg);
-        else
+        if (!ServerConnectManager.send(msg))
             System.err.println("Not connected to server.");
     }
 }
@@ -1,6 +1,10 @@
 package connection;
 
 import cli.CommandProcessor;
+import elements.Message;
+import utils.Utils;
+
+import java.sql.Timestamp;
 
 @SuppressWarnings("checkstyle:LineLength")
 public class ServerCommands {
@@ -62,16 +66,21 @@ public class ServerCommands {
     /**
      * Команды по отправке уведомлений о непрочитанных сообщениях
      * и передаче данных об открытом чате на сервер.
+     * <br>Также принимают постранично загружаемую историю чата и новые сообщения
+     * с id ({@code /chat message}), которые попадают в историю открытого чата (см. {@link ChatHistory}).
+     * {@code /chat fetch new} - уведомление без id, оно в историю не попадает.
      */
     private static void initGroupResponse() {
         processor.register("chat", (a) -> a
                 .description("Send id of open chat.")
                 .subcommand("fetch", (b) -> b
-                        .executes((c) -> ServerConnectManager.socket.sendMessage("/response chat " + Client.openChatId))
+                        .executes((c) -> ServerConnectManager.send("/response chat " + Client.openChatId))
 
                         .subcommand("new", (d) -> d
+                                .requireArgument("groupId")
+                                .requireArgument("message")
                                 .executes((msg) -> {
-                                    if (!Client.openChatId.equals(msg.getString("groupId"))) {
+                                    if (!msg.getString("groupId").equals(Client.openChatId)) {
                                         Client.addUnreadMsg(msg.getString("groupId"), msg.getString("message"));
                                         newMessageMsg();
                                     } else {
@@ -81,9 +90,135 @@ public class ServerCommands {
                                 })
                         ))
                 .subcommand("open", (b) -> b
-                        .requireArgument("listMessages")
+                        .requireArgument("groupId")
+                        .executes((msg) -> Client.onChatOpened(msg.getString("groupId"))))
+                .subcommand("message", (b) -> b
+                        .requireArgument("groupId")
+                        .requireArgument("messageId")
+                        .requireArgument("senderId")
+                        .requireArgument("time")
+                        .requireArgument("content")
+                        .executes((msg) -> {
+                            var text = Utils.createChatMessage(msg.getString("senderId"), msg.getString("content"));
+                            var history = Client.historyOf(msg.getString("groupId"));
+                            if (history == null) {
+                                // Новое сообщение чата, который сейчас не открыт
+                                Client.addUnreadMsg(msg.getString("groupId"), text);
+                                newMessageMsg();
+                                return;
+                            }
+                            history.receive(new Message(
+                                    Integer.parseInt(msg.getString("messageId")),
+                                    msg.getString("content"),
+                                    Integer.parseInt(msg.getString("senderId")),
+                                    new Timestamp(Long.parseLong(msg.getString("time")))
+                            ));
+                            System.out.println(text);
+                        }))
+                .subcommand("page", (b) -> b
+                        .requireArgument("groupId")
+                        .requireArgument("direction")
+                        .requireArgument("status")
+                        .executes((msg) -> {
+                            var history = Client.historyOf(msg.getString("groupId"));
+                            if (history != null)
+                                history.pageLoaded(
+                                        msg.getString("direction").equals("before"),
+                                        msg.getString("status").equals("more")
+                                );
+                        }))
+        );
+    }
+
+    /**
+     * Ошибки, которыми сервер отвечает на запросы клиента.
+     */
+    private static void initErrorResponse() {
+        processor.register("error", (a) -> a
+                .description("Server error")
+                .subcommand("throttled", (b) -> b
+                        .description("Too many requests of one kind")
+                        .requireArgument("family")
+                        .requireArgument("retryAfter")
+                        .executes((error) -> {
+                            long seconds = (Long.parseLong(error.getString("retryAfter")) + 999) / 1000;
+                            System.err.println("Too many " + error.getString("family")
+                                    + " requests, try again in " + seconds + " s.");
+                        }))
+                .subcommand("forbidden", (b) -> b
+                        .description("Access to a group was refused")
+                        .subcommand("history", (c) -> c
+                                .requireArgument("groupId")
+                                .executes((error) -> {
+                                    System.err.println("No access to the history of chat " + error.getString("groupId") + ".");
+                                    var history = Client.historyOf(error.getString("groupId"));
+                                    if (history != null)
+                                        history.requestFailed();
+                                })))
+        );
+    }
+
+    /**
+     * Изменения присутствия друзей и участников групп, собранные сервером в пачку.
+     */
+    private static void initPresenceResponse() {
+        processor.register("presence", (a) -> a
+                .description("Presence changes")
+                .subcommand("update", (b) -> b
+                        .requireArgument("changes")
+                        .executes((update) -> {
+                            for (var diff : update.getString("changes").split(","))
+                                Client.applyPresence(diff);
+                        }))
+        );
+    }
+
+    /**
+     * Число уведомлений, полученных из очереди сервера с начала ее выдачи.
+     */
+    private static int inboxReceived = 0;
+
+    /**
+     * Уведомления, пришедшие, пока клиент был не в сети. Сервер отправляет их страницами:
+     * получив страницу, клиент запрашивает следующую.
+     */
+    private static void initInboxResponse() {
+        processor.register("inbox", (a) -> a
+                .description("Notifications received while offline")
+                .subcommand("message", (b) -> b
+                        .requireArgument("groupId")
+                        .requireArgument("senderId")
+                        .requireArgument("time")
+                        .requireArgument("content")
                         .executes((msg) -> {
-                            System.out.println(msg.getString("ListMessages"));
+                            Client.addUnreadMsg(msg.getString("groupId"),
+                                    Utils.createChatMessage(msg.getString("senderId"), msg.getString("content")));
+                            inboxReceived++;
+                        }))
+                .subcommand("request", (b) -> b
+                        .requireArgument("type")
+                        .requireArgument("fromId")
+                        .requireArgument("groupId")
+                        .requireArgument("time")
+                        .executes((request) -> {
+                            var from = request.getString("fromId");
+                            var group = request.getString("groupId");
+                            switch (request.getString("type")) {
+                                case "Friend" -> System.out.println("You receive a friend request from user " + from);
+                                case "Join" -> System.out.println("User " + from + " asks to join group " + group);
+                                case "GroupInvitation" -> System.out.println("User " + from + " invites you to group " + group);
+                                default -> System.err.println("Unknown request: " + request.getString("type"));
+                            }
+                            inboxReceived++;
+                        }))
+                .subcommand("page", (b) -> b
+                        .requireArgument("status")
+                        .executes((page) -> {
+                            ServerConnectManager.send("/inbox next");
+                            if (page.getString("status").equals("end")) {
+                                System.out.println("You have " + inboxReceived + " notifications received while offline.");
+                                inboxReceived = 0;
+                            }
                         }))
         );
     }
@@ -95,5 +230,8 @@ public class ServerCommands {
         initFriendResponse();
         initRegisterResponse();
         initGroupResponse();
+        initErrorResponse();
+        initPresenceResponse();
+        initInboxResponse();
     }
 }
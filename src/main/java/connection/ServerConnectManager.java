@@ -4,20 +4,60 @@ import cli.CommandProcessor;
 import network.SimpleSocket;
 import org.example.demo.HelloController;
 
+import java.util.concurrent.atomic.AtomicBoolean;
+
 public class ServerConnectManager {
 
     public final String host;
     public final int port;
 
-    public String message;
+    public volatile String message;
+
+    /**
+     * Сообщения, пришедшие за один кадр, показываются разом: поле вывода
+     * получает только последнее из них.
+     */
+    private final UiUpdateBatcher<String> uiUpdates =
+        new UiUpdateBatcher<>((batch) -> HelloController.setMsg(batch.getLast()));
 
+    /**
+     * Показывает {@link #message} в интерфейсе. Может вызываться из любого потока.
+     */
     public void updateControllerMsg() {
-        HelloController.setMsg(this.message);
+        uiUpdates.submit(this.message);
     }
 
-    public static SimpleSocket socket = null;
+    /**
+     * @return статистика склеивания обновлений интерфейса.
+     */
+    public UiUpdateBatcher.Stats getUiStats() {
+        return uiUpdates.getStats();
+    }
+
+    public static volatile SimpleSocket socket = null;
     private final CommandProcessor commandProcessor = new CommandProcessor();
 
+    /**
+     * Общая для всех соединений обработка входящих сообщений.
+     */
+    private final InboundPipeline inbound = new InboundPipeline(
+        ServerCommands.processor,
+        (received) -> {
+            this.message = received;
+            updateControllerMsg();
+        }
+    );
+
+    public static final long RECONNECT_BASE_MILLIS = 500;
+    public static final long RECONNECT_MAX_MILLIS = 30_000;
+
+    private final Backoff backoff = new Backoff(RECONNECT_BASE_MILLIS, RECONNECT_MAX_MILLIS);
+    /**
+     * Нужно ли восстанавливать соединение при обрыве. Сбрасывается при отключении пользователем.
+     */
+    private volatile boolean keepConnected = false;
+    private final AtomicBoolean isReconnecting = new AtomicBoolean(false);
+
     public ServerConnectManager(String host, int port) {
         this.host = host;
         this.port = port;
@@ -28,28 +68,99 @@ public class ServerConnectManager {
         return socket != null;
     }
 
+    /**
+     * Отправляет сообщение серверу, если соединение установлено.
+     *
+     * @return false, если соединения нет
+     */
+    static boolean send(String message) {
+        var current = socket;
+        if (current == null || current.isClosed())
+            return false;
+
+        current.sendMessage(message);
+        return true;
+    }
+
     /**
      * Создает, если это возможно, соединение с сервером и начинает прослушивать сообщения.
+     * <br>Если сервер недоступен, или соединение позже оборвется, подключение
+     * будет повторяться автоматически (см. {@link Backoff}).
      */
     public void connect() {
-        socket = new SimpleSocket(host, port);
-        if (socket.isClosed())
-            socket = null;
-        else {
-            System.out.println("Connected to the server");
-            this.message = "Connected";
-            processConnection();
-            System.out.println("Здесь лежит не нулл! " + this.message);
-            updateControllerMsg();
-            System.out.println("Он должен быть в строке: " + HelloController.getMsg());
-        }
+        keepConnected = true;
+        if (!openConnection())
+            reconnectLater();
+    }
+
+    private synchronized boolean openConnection() {
+        if (socket != null)
+            return true;
+
+        var attempt = new SimpleSocket(host, port);
+        if (attempt.isClosed())
+            return false;
+
+        socket = attempt;
+        System.out.println("Connected to the server");
+        this.message = "Connected";
+        updateControllerMsg();
+        processConnection();
+        return true;
+    }
+
+    /**
+     * Запускает переподключение в фоне, если оно еще не идет.
+     */
+    private void reconnectLater() {
+        if (!keepConnected || !isReconnecting.compareAndSet(false, true))
+            return;
+
+        Thread.ofVirtual().name("server-reconnect").start(() -> {
+            try {
+                while (keepConnected && socket == null) {
+                    long delay = backoff.nextDelayMillis();
+                    this.message = "Reconnecting in " + delay + " ms";
+                    updateControllerMsg();
+                    Thread.sleep(delay);
+
+                    if (keepConnected && openConnection()) {
+                        backoff.reset();
+                        resumeSession();
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                isReconnecting.set(false);
+            }
+
+            // Соединение могло оборваться, пока флаг еще не был сброшен
+            if (keepConnected && socket == null)
+                reconnectLater();
+        });
+    }
+
+    /**
+     * Догружает сообщения открытого чата, пришедшие, пока соединения не было.
+     */
+    private void resumeSession() {
+        var history = Client.history;
+        if (history != null)
+            history.resume();
     }
 
     /**
      * Разрывает соединение с сервером, если таковое имеется. <br>
      * Все потоки, работающие с ним также будут автоматически остановлены.
+     * <br>Автоматическое переподключение прекращается.
      */
     public void disconnect() {
+        keepConnected = false;
+        closeConnection();
+    }
+
+    private synchronized void closeConnection() {
         if (socket == null)
             return;
 
@@ -63,22 +174,19 @@ public class ServerConnectManager {
     }
 
     /**
-     * Создание потока для подключения к серверу.
+     * Запускает обработку входящих сообщений сервера (см. {@link InboundPipeline}).
+     * <br>Серверные команды исполняются {@link ServerCommands#processor} вне потока JavaFX,
+     * в одном потоке для всех соединений.
      */
     public void processConnection() {
-        new Thread(() -> {
-            while (isConnected()) {
-                if (socket.hasNewMessage()) {
-                    this.message = socket.receiveMessage();
-                    System.out.println(this.message);
-                    updateControllerMsg();
-                }
-                else {
-                    disconnect();
-                    break;
-                }
-            }
-        }).start();
+        var connection = socket;
+        inbound.attach(connection, () -> {
+            // Соединение могло быть уже заменено новым через /retry
+            if (socket != connection)
+                return;
+            closeConnection();
+            reconnectLater();
+        });
     }
 
     public void exit() {
@@ -0,0 +1,115 @@
+package connection;
+
+import javafx.application.Platform;
+import utils.kt.Apply;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Собирает обновления интерфейса, пришедшие за один кадр (~{@value #FRAME_MILLIS} мс),
+ * и применяет их одной задачей в потоке JavaFX.
+ *
+ * <p>Без этого каждое сообщение активного чата ставило бы в очередь JavaFX
+ * отдельную задачу, и при тысячах сообщений в секунду интерфейс бы "залипал".
+ * С батчингом в поток JavaFX попадает не больше одной задачи за кадр.
+ *
+ * <p>Статистика склеивания доступна через {@link #getStats()}.
+ */
+public final class UiUpdateBatcher<T> implements AutoCloseable {
+
+    public static final long FRAME_MILLIS = 16;
+
+    /**
+     * @param frames      число примененных пачек
+     * @param updates     число обновлений во всех пачках
+     * @param maxPerFrame наибольшее число обновлений в одной пачке
+     */
+    public record Stats(long frames, long updates, int maxPerFrame) {
+
+        public double averagePerFrame() {
+            return frames == 0 ? 0 : (double) updates / frames;
+        }
+
+        @Override
+        public String toString() {
+            return "%d updates in %d frames (avg %.1f, max %d per frame)"
+                .formatted(updates, frames, averagePerFrame(), maxPerFrame);
+        }
+    }
+
+    private final Apply<List<T>> apply;
+    private final Executor uiExecutor;
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(
+        Thread.ofPlatform().name("ui-batcher").daemon().factory()
+    );
+
+    private ArrayList<T> pending = new ArrayList<>();
+    private boolean isScheduled = false;
+
+    private long frames = 0;
+    private long updates = 0;
+    private int maxPerFrame = 0;
+
+    /**
+     * @param apply действие над всеми обновлениями кадра, от старых к новым.
+     *              Выполняется в потоке JavaFX
+     */
+    public UiUpdateBatcher(Apply<List<T>> apply) {
+        this(apply, Platform::runLater);
+    }
+
+    /**
+     * @param apply      действие над всеми обновлениями кадра, от старых к новым
+     * @param uiExecutor исполнитель, в котором применяются пачки
+     */
+    public UiUpdateBatcher(Apply<List<T>> apply, Executor uiExecutor) {
+        this.apply = apply;
+        this.uiExecutor = uiExecutor;
+    }
+
+    /**
+     * Добавляет обновление в текущий кадр. Может вызываться из любого потока.
+     */
+    public void submit(T update) {
+        synchronized (this) {
+            pending.add(update);
+            if (isScheduled)
+                return;
+            isScheduled = true;
+        }
+        timer.schedule(this::flush, FRAME_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    private void flush() {
+        List<T> batch;
+        synchronized (this) {
+            batch = pending;
+            pending = new ArrayList<>();
+            isScheduled = false;
+
+            frames++;
+            updates += batch.size();
+            maxPerFrame = Math.max(maxPerFrame, batch.size());
+        }
+
+        try {
+            uiExecutor.execute(() -> apply.run(batch));
+        } catch (IllegalStateException e) {
+            // JavaFX не запущен (консольный клиент) - применять некуда
+        }
+    }
+
+    public synchronized Stats getStats() {
+        return new Stats(frames, updates, maxPerFrame);
+    }
+
+    @Override
+    public void close() {
+        timer.shutdownNow();
+    }
+}
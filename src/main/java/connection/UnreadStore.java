@@ -0,0 +1,150 @@
+package connection;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Непрочитанные сообщения по группам.
+ *
+ * <p>Для каждой группы хранится счетчик и только последние {@code previewsPerGroup}
+ * превью сообщений. Групп хранится не больше {@code maxGroups}: при переполнении
+ * целиком удаляется группа, в которую дольше всех ничего не приходило.
+ * Поэтому память ограничена, даже если пользователь состоит в тысячах активных групп.
+ *
+ * <p>Счетчики читаются без блокировок (например, для значков в интерфейсе).
+ * Запись может идти из любого потока и сериализуется одной блокировкой:
+ * сообщения приходят из одного потока обработки, так что она почти не оспаривается.
+ */
+public class UnreadStore {
+
+    public static final int MAX_PREVIEW_LENGTH = 200;
+
+    /**
+     * Непрочитанное одной группы. Превью хранятся в кольцевом буфере.
+     */
+    private static final class GroupUnread {
+
+        private final String[] previews;
+        private int head = 0;
+        private int size = 0;
+
+        volatile int count = 0;
+
+        GroupUnread(int capacity) {
+            previews = new String[capacity];
+        }
+
+        synchronized void add(String preview) {
+            previews[(head + size) % previews.length] = preview;
+            if (size < previews.length)
+                size++;
+            else
+                head = (head + 1) % previews.length;
+            count++;
+        }
+
+        synchronized List<String> previews() {
+            var result = new ArrayList<String>(size);
+            for (int i = 0; i < size; i++)
+                result.add(previews[(head + i) % previews.length]);
+            return result;
+        }
+    }
+
+    private final int maxGroups;
+    private final int previewsPerGroup;
+
+    private final ConcurrentHashMap<String, GroupUnread> groups = new ConcurrentHashMap<>();
+    /**
+     * Порядок групп от давно обновленных к недавним. Защищен собственным монитором.
+     */
+    private final LinkedHashMap<String, GroupUnread> recent = new LinkedHashMap<>(16, 0.75f, true);
+    private final AtomicLong total = new AtomicLong();
+
+    public UnreadStore(int maxGroups, int previewsPerGroup) {
+        if (maxGroups < 1 || previewsPerGroup < 1)
+            throw new IllegalArgumentException("Store limits must be positive.");
+
+        this.maxGroups = maxGroups;
+        this.previewsPerGroup = previewsPerGroup;
+    }
+
+    /**
+     * Добавляет непрочитанное сообщение группы.
+     */
+    public void add(String groupId, String message) {
+        var preview = message.length() > MAX_PREVIEW_LENGTH
+            ? message.substring(0, MAX_PREVIEW_LENGTH)
+            : message;
+
+        synchronized (recent) {
+            // get() в порядке доступа делает группу самой "свежей"
+            var group = recent.get(groupId);
+            if (group == null) {
+                group = new GroupUnread(previewsPerGroup);
+                recent.put(groupId, group);
+                groups.put(groupId, group);
+            }
+
+            group.add(preview);
+            total.incrementAndGet();
+            evictIdle();
+        }
+    }
+
+    private void evictIdle() {
+        var iterator = recent.entrySet().iterator();
+        while (recent.size() > maxGroups && iterator.hasNext()) {
+            var eldest = iterator.next();
+            iterator.remove();
+            groups.remove(eldest.getKey(), eldest.getValue());
+            total.addAndGet(-eldest.getValue().count);
+        }
+    }
+
+    /**
+     * Удаляет непрочитанные сообщения группы.
+     */
+    public void markRead(String groupId) {
+        synchronized (recent) {
+            var group = recent.remove(groupId);
+            if (group == null)
+                return;
+            groups.remove(groupId, group);
+            total.addAndGet(-group.count);
+        }
+    }
+
+    /**
+     * @return число непрочитанных сообщений группы. Не блокирует поток.
+     */
+    public int unreadCount(String groupId) {
+        var group = groups.get(groupId);
+        return group == null ? 0 : group.count;
+    }
+
+    /**
+     * @return число непрочитанных сообщений во всех хранимых группах. Не блокирует поток.
+     */
+    public long totalUnread() {
+        return total.get();
+    }
+
+    /**
+     * @return последние превью непрочитанных сообщений группы, от старых к новым.
+     */
+    public List<String> previews(String groupId) {
+        var group = groups.get(groupId);
+        return group == null ? List.of() : group.previews();
+    }
+
+    /**
+     * @return число групп с непрочитанными сообщениями.
+     */
+    public int groupCount() {
+        return groups.size();
+    }
+}
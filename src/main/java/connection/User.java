@@ -11,17 +11,20 @@ public class User extends AbstractUser {
 
     @Override
     public void setName(String name) {
-
+        this.name = name;
+        journal.userChanged(this);
     }
 
     @Override
     public void setPassword(String password) {
-
+        this.password = password;
+        journal.userChanged(this);
     }
 
     @Override
     public void addFriend(int id) {
-        this.friends.add(id);
+        if (this.friends.add(id))
+            journal.friendAdded(this.id, id);
     }
 //    @Override
 //    public ArrayList<Integer> joinGroup(int id) {
@@ -1,16 +1,22 @@
 package elements;
 
-import java.util.ArrayList;
+import utils.IntList;
+import utils.IntSet;
 
 public abstract class AbstractGroup {
     protected int id;
     protected String groupName;
     protected String name;
     protected GroupTypes type;
-    protected ArrayList<Integer> members;
-    protected ArrayList<Integer> admins;
+    protected IntSet members = new IntSet();
+    protected IntSet admins = new IntSet();
     protected int owner;
-    protected ArrayList<Integer> messages; // id-s сообщений группы
+    protected IntList messages = new IntList(); // id-s сообщений группы
+
+    /**
+     * Куда сообщать об изменениях группы.
+     */
+    protected SocialJournal journal = SocialJournal.NONE;
 
     public int getIdGroup() {
         return this.id;
@@ -20,8 +26,48 @@ public abstract class AbstractGroup {
         return groupName;
     }
 
+    public String getName() {
+        return name;
+    }
+
+    public GroupTypes getType() {
+        return type;
+    }
+
+    public int getOwner() {
+        return owner;
+    }
+
+    /**
+     * @return id участников группы. Проверка {@link IntSet#contains(int)} выполняется за O(1).
+     */
+    public IntSet getMembers() {
+        return members;
+    }
+
+    public IntSet getAdmins() {
+        return admins;
+    }
+
+    public boolean isMember(int userId) {
+        return members.contains(userId);
+    }
+
+    /**
+     * Задает получателя изменений группы, либо {@link SocialJournal#NONE}.
+     * <br>Получатель сразу узнает текущее состояние группы: ее свойства, участников и администраторов.
+     */
+    public void setJournal(SocialJournal journal) {
+        this.journal = journal;
+        journal.groupChanged(this);
+        members.forEachInt((userId) -> journal.memberAdded(id, userId));
+        admins.forEachInt((userId) -> journal.adminAdded(id, userId));
+    }
+
     public abstract void includeUser(int id);
 
     public abstract void excludeUser(int id);
 
+    public abstract void addAdmin(int id);
+
 }
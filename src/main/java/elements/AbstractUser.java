@@ -2,21 +2,27 @@ package elements;
 
 import utils.Ansi;
 
-import java.util.ArrayList;
+import utils.IntList;
+import utils.IntSet;
 
 public abstract class AbstractUser {
     protected int id;
     protected String userName;
     protected String name;
     protected String password;
-    protected ArrayList<Integer> friends; // массив id'шников друзей
+    protected IntSet friends = new IntSet(); // id'шники друзей
 
-    public ArrayList<Integer> request;
+    public IntList request = new IntList();
+
+    /**
+     * Куда сообщать об изменениях пользователя.
+     */
+    protected SocialJournal journal = SocialJournal.NONE;
 
     public abstract void sendMessage(String text, int id);
 
     /*Реализация этого запроса будет переписана*/
-    public ArrayList<Integer> joinGroup(int id) {
+    public IntList joinGroup(int id) {
         // ? Extends Group
         // id группы, в которую вступает пользователь.
         // Возвращает переданный на сервер id пользователя?
@@ -43,7 +49,7 @@ public abstract class AbstractUser {
         return this.id;
     }
 
-    public ArrayList<Integer> getFriends() {
+    public IntSet getFriends() {
         return this.friends;
     }
 
@@ -59,6 +65,16 @@ public abstract class AbstractUser {
         return this.password;
     }
 
+    /**
+     * Задает получателя изменений пользователя, либо {@link SocialJournal#NONE}.
+     * <br>Получатель сразу узнает текущее состояние пользователя: его данные и друзей.
+     */
+    public void setJournal(SocialJournal journal) {
+        this.journal = journal;
+        journal.userChanged(this);
+        friends.forEachInt((friendId) -> journal.friendAdded(id, friendId));
+    }
+
     public abstract void setName(String name);
 
     public abstract void setPassword(String password);
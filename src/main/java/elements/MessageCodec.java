@@ -0,0 +1,200 @@
+package elements;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.sql.Timestamp;
+
+/**
+ * Компактное бинарное представление {@link Message}.
+ *
+ * <p>Формат записи:
+ * <pre>
+ * +-------------+-------------------+-------------------+----------------------+-----------------+
+ * | id (varint) | senderId (varint) | time (varlong)    | content length (var) | content (UTF-8) |
+ * +-------------+-------------------+-------------------+----------------------+-----------------+
+ * </pre>
+ * Числа записываются как varint: по 7 бит в байте, старший бит - признак продолжения.
+ * Id и отправитель кодируются зигзагом, чтобы служебные отрицательные значения
+ * (например, -1) занимали один байт. Время - миллисекунды от эпохи.
+ * Типичное сообщение занимает 10 байт заголовка плюс текст - в несколько раз
+ * меньше текстовой команды {@code /chat message ...}.
+ *
+ * <p>Кодирование пишет прямо в переданный буфер и не создает объектов.
+ * Для чтения без создания {@link Message} используйте {@link MessageView}.
+ */
+public final class MessageCodec {
+
+    /**
+     * Наибольший размер текста сообщения в байтах.
+     */
+    public static final int MAX_CONTENT_LENGTH = 1024 * 1024;
+
+    private MessageCodec() {}
+
+    /**
+     * @return размер записи сообщения в байтах.
+     */
+    public static int encodedLength(Message message) {
+        return encodedLength(message.getId(), message.getSenderId(), message.getTime().getTime(), message.getContent());
+    }
+
+    public static int encodedLength(int id, int senderId, long timeMillis, CharSequence content) {
+        int contentLength = utf8Length(content);
+        return varintLength(zigzag(id))
+            + varintLength(zigzag(senderId))
+            + varlongLength(zigzag(timeMillis))
+            + varintLength(contentLength)
+            + contentLength;
+    }
+
+    /**
+     * Записывает сообщение в буфер с его текущей позиции.
+     *
+     * @throws BufferOverflowException  если в буфере не хватает места. Буфер при этом не изменяется
+     * @throws IllegalArgumentException если текст длиннее {@link #MAX_CONTENT_LENGTH}
+     */
+    public static void encode(Message message, ByteBuffer out) throws BufferOverflowException {
+        encode(message.getId(), message.getSenderId(), message.getTime().getTime(), message.getContent(), out);
+    }
+
+    /**
+     * Записывает сообщение в буфер с его текущей позиции, не создавая {@link Message}.
+     *
+     * @throws BufferOverflowException  если в буфере не хватает места. Буфер при этом не изменяется
+     * @throws IllegalArgumentException если текст длиннее {@link #MAX_CONTENT_LENGTH}
+     */
+    public static void encode(int id, int senderId, long timeMillis, CharSequence content, ByteBuffer out)
+        throws BufferOverflowException {
+        int contentLength = utf8Length(content);
+        if (contentLength > MAX_CONTENT_LENGTH)
+            throw new IllegalArgumentException("Message is too long: " + contentLength + " bytes");
+
+        int length = varintLength(zigzag(id))
+            + varintLength(zigzag(senderId))
+            + varlongLength(zigzag(timeMillis))
+            + varintLength(contentLength)
+            + contentLength;
+        if (out.remaining() < length)
+            throw new BufferOverflowException();
+
+        putVarint(out, zigzag(id));
+        putVarint(out, zigzag(senderId));
+        putVarlong(out, zigzag(timeMillis));
+        putVarint(out, contentLength);
+        putUtf8(out, content);
+    }
+
+    /**
+     * Читает сообщение целиком, начиная с текущей позиции буфера, и сдвигает позицию за него.
+     *
+     * @throws IllegalArgumentException если запись повреждена или обрезана
+     */
+    public static Message decode(ByteBuffer in) throws IllegalArgumentException {
+        var view = new MessageView().wrap(in, in.position());
+        var message = view.toMessage();
+        in.position(in.position() + view.encodedLength());
+        return message;
+    }
+
+    static Message toMessage(int id, int senderId, long timeMillis, String content) {
+        return new Message(id, content, senderId, new Timestamp(timeMillis));
+    }
+
+    // ======== varint ========
+
+    static int zigzag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    static int unzigzag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    static int varintLength(int value) {
+        // 1 байт на каждые 7 значащих бит, минимум 1
+        return (31 - Integer.numberOfLeadingZeros(value | 1)) / 7 + 1;
+    }
+
+    static int varlongLength(long value) {
+        return (63 - Long.numberOfLeadingZeros(value | 1)) / 7 + 1;
+    }
+
+    private static void putVarint(ByteBuffer out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.put((byte) (value & 0x7F | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+
+    private static void putVarlong(ByteBuffer out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.put((byte) (value & 0x7F | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+
+    // ======== UTF-8 ========
+
+    /**
+     * @return длина строки в UTF-8 без ее кодирования.
+     */
+    static int utf8Length(CharSequence content) {
+        int length = content.length();
+        int result = length;
+
+        for (int i = 0; i < length; i++) {
+            char c = content.charAt(i);
+            if (c < 0x80)
+                continue;
+            if (c < 0x800) {
+                result += 1;
+            } else if (Character.isHighSurrogate(c) && i + 1 < length
+                && Character.isLowSurrogate(content.charAt(i + 1))) {
+                // Пара суррогатов - 4 байта на 2 символа
+                result += 2;
+                i++;
+            } else {
+                // Одиночный суррогат кодируется как '?', как в String.getBytes()
+                result += Character.isSurrogate(c) ? 0 : 2;
+            }
+        }
+        return result;
+    }
+
+    private static void putUtf8(ByteBuffer out, CharSequence content) {
+        int length = content.length();
+
+        for (int i = 0; i < length; i++) {
+            char c = content.charAt(i);
+            if (c < 0x80) {
+                out.put((byte) c);
+            } else if (c < 0x800) {
+                out.put((byte) (0xC0 | c >> 6));
+                out.put((byte) (0x80 | c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length
+                && Character.isLowSurrogate(content.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, content.charAt(++i));
+                out.put((byte) (0xF0 | codePoint >> 18));
+                out.put((byte) (0x80 | codePoint >> 12 & 0x3F));
+                out.put((byte) (0x80 | codePoint >> 6 & 0x3F));
+                out.put((byte) (0x80 | codePoint & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                out.put((byte) '?');
+            } else {
+                out.put((byte) (0xE0 | c >> 12));
+                out.put((byte) (0x80 | c >> 6 & 0x3F));
+                out.put((byte) (0x80 | c & 0x3F));
+            }
+        }
+    }
+}
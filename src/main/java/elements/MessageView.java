@@ -0,0 +1,156 @@
+package elements;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Представление записи {@link MessageCodec} прямо в буфере, без создания {@link Message}.
+ *
+ * <p>{@link #wrap(ByteBuffer, int)} разбирает только заголовок записи, поэтому
+ * серверу, пересылающему сообщение, не нужно декодировать текст: достаточно
+ * прочитать id и отправителя и скопировать байты записи через {@link #copyTo(ByteBuffer)}.
+ * Один экземпляр переиспользуется для всех записей буфера.
+ *
+ * <p>Представление не копирует данные: после изменения буфера оно становится недействительным.
+ * Позиция и предел буфера не изменяются.
+ */
+public final class MessageView {
+
+    private ByteBuffer buffer;
+    private int offset;
+    private int contentOffset;
+    private int contentLength;
+
+    private int id;
+    private int senderId;
+    private long timeMillis;
+
+    /**
+     * Разбирает заголовок записи, начинающейся с {@code offset}.
+     *
+     * @return this
+     * @throws IllegalArgumentException если запись повреждена или не помещается в пределы буфера
+     */
+    public MessageView wrap(ByteBuffer buffer, int offset) throws IllegalArgumentException {
+        this.buffer = buffer;
+        this.offset = offset;
+
+        int position = offset;
+        long value = getVarlong(buffer, position);
+        position += MessageCodec.varlongLength(value);
+        id = MessageCodec.unzigzag((int) checkInt(value));
+
+        value = getVarlong(buffer, position);
+        position += MessageCodec.varlongLength(value);
+        senderId = MessageCodec.unzigzag((int) checkInt(value));
+
+        value = getVarlong(buffer, position);
+        position += MessageCodec.varlongLength(value);
+        timeMillis = MessageCodec.unzigzag(value);
+
+        value = getVarlong(buffer, position);
+        position += MessageCodec.varlongLength(value);
+        if (value > MessageCodec.MAX_CONTENT_LENGTH)
+            throw new IllegalArgumentException("Invalid message length: " + value);
+
+        contentOffset = position;
+        contentLength = (int) value;
+        if (contentOffset + contentLength > buffer.limit())
+            throw new IllegalArgumentException("Message is truncated");
+        return this;
+    }
+
+    private static long checkInt(long value) {
+        if (value >>> 32 != 0)
+            throw new IllegalArgumentException("Invalid message header");
+        return value;
+    }
+
+    /**
+     * Читает varint с абсолютной позиции. Длину прочитанного можно
+     * получить через {@link MessageCodec#varlongLength(long)}: запись всегда минимальна.
+     */
+    private static long getVarlong(ByteBuffer buffer, int position) {
+        long result = 0;
+        int limit = buffer.limit();
+
+        for (int shift = 0; shift < 64; shift += 7) {
+            if (position >= limit)
+                throw new IllegalArgumentException("Message is truncated");
+
+            byte b = buffer.get(position++);
+            result |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                // Неминимальная запись сломала бы вычисление длины
+                if (b == 0 && shift > 0)
+                    throw new IllegalArgumentException("Invalid message header");
+                return result;
+            }
+        }
+        throw new IllegalArgumentException("Invalid message header");
+    }
+
+    public int id() {
+        return id;
+    }
+
+    public int senderId() {
+        return senderId;
+    }
+
+    public long timeMillis() {
+        return timeMillis;
+    }
+
+    /**
+     * @return длина текста в байтах UTF-8.
+     */
+    public int contentLength() {
+        return contentLength;
+    }
+
+    /**
+     * @return размер всей записи в байтах.
+     */
+    public int encodedLength() {
+        return contentOffset + contentLength - offset;
+    }
+
+    /**
+     * @return позиция в буфере, следующая за записью. С нее начинается следующая запись.
+     */
+    public int nextOffset() {
+        return contentOffset + contentLength;
+    }
+
+    /**
+     * @return текст в виде буфера только для чтения, разделяющего память с исходным.
+     */
+    public ByteBuffer contentBytes() {
+        return buffer.slice(contentOffset, contentLength).asReadOnlyBuffer();
+    }
+
+    /**
+     * Декодирует текст сообщения. Создает строку.
+     */
+    public String content() {
+        var bytes = new byte[contentLength];
+        buffer.get(contentOffset, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Копирует запись целиком в {@code out} с его текущей позиции, не декодируя ее.
+     */
+    public void copyTo(ByteBuffer out) {
+        out.put(out.position(), buffer, offset, encodedLength());
+        out.position(out.position() + encodedLength());
+    }
+
+    /**
+     * Создает {@link Message} из записи.
+     */
+    public Message toMessage() {
+        return MessageCodec.toMessage(id, senderId, timeMillis, content());
+    }
+}
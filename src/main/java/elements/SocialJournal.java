@@ -0,0 +1,46 @@
+package elements;
+
+/**
+ * Получатель изменений пользователей и групп, например, постоянное хранилище.
+ *
+ * <p>Методы вызываются в потоке, изменившем объект, сразу после изменения,
+ * поэтому не должны блокироваться на диске или сети.
+ * Объект, получивший журнал ({@link AbstractUser#setJournal}, {@link AbstractGroup#setJournal}),
+ * сразу сообщает ему свое текущее состояние теми же методами.
+ * По умолчанию все изменения игнорируются.
+ */
+public interface SocialJournal {
+
+    /**
+     * Журнал, не сохраняющий ничего.
+     */
+    SocialJournal NONE = new SocialJournal() {
+    };
+
+    /**
+     * Пользователь создан, либо изменились его имя или пароль.
+     */
+    default void userChanged(AbstractUser user) {
+    }
+
+    default void friendAdded(int userId, int friendId) {
+    }
+
+    /**
+     * Группа создана, либо изменились ее свойства.
+     */
+    default void groupChanged(AbstractGroup group) {
+    }
+
+    default void memberAdded(int groupId, int userId) {
+    }
+
+    default void adminAdded(int groupId, int userId) {
+    }
+
+    /**
+     * Пользователь исключен из группы и, если был, из ее администраторов.
+     */
+    default void memberRemoved(int groupId, int userId) {
+    }
+}
@@ -14,6 +14,9 @@ module org.example.demo {
     exports utils;
     exports utils.kt;
     exports cli.utils;
+    exports elements;
+    exports server;
+    exports server.store;
 
     opens connection to javafx.fxml;
 }
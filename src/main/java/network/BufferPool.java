@@ -0,0 +1,229 @@
+package network;
+
+import java.lang.ref.Cleaner;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Пул direct буферов для ввода-вывода сокетов.
+ *
+ * <p>Буферы выдаются классами размеров - степенями двойки от
+ * {@value #MIN_CLASS_SIZE} байт до {@value #MAX_CLASS_SIZE} байт, так что
+ * возвращенный буфер подходит любому запросу своего класса. Буферы больше
+ * {@value #MAX_CLASS_SIZE} байт выделяются без пула.
+ *
+ * <p>Свободные буферы лежат в два уровня:
+ * <ol>
+ *     <li> Небольшой кэш платформенного потока (например, цикла событий),
+ *          доступный без синхронизации. Виртуальные потоки кэша не имеют:
+ *          они живут недолго, и буферы их кэша пропадали бы вместе с ними
+ *     <li> Общий пул класса, в который попадает все, что не поместилось в кэш
+ * </ol>
+ * Объем общего пула ограничен {@code maxPooledBytes}: лишние буферы
+ * отдаются сборщику мусора. Кэши потоков в этот объем не входят: каждый из них
+ * мал, а его буферы пропадают вместе с потоком, и счетчик пула не должен их помнить.
+ *
+ * <p>Каждый выданный буфер должен быть возвращен через {@link PooledBuffer#release()}.
+ * О невозвращенных буферах пул сообщает в {@code System.err}, а после
+ * {@link #setLeakTracing(boolean)} - и о месте их выдачи.
+ */
+public final class BufferPool {
+
+    public static final int MIN_CLASS_SIZE = 4 * 1024;
+    public static final int MAX_CLASS_SIZE = 1024 * 1024;
+    public static final long DEFAULT_MAX_POOLED_BYTES = 64L * 1024 * 1024;
+
+    private static final int CLASS_COUNT = Integer.numberOfTrailingZeros(MAX_CLASS_SIZE)
+        - Integer.numberOfTrailingZeros(MIN_CLASS_SIZE) + 1;
+
+    /**
+     * Кэш потока хранит буферы классов не больше этого размера.
+     */
+    private static final int MAX_CACHED_CLASS_SIZE = 64 * 1024;
+    private static final int THREAD_CACHE_SIZE = 8;
+
+    private static final Cleaner cleaner = Cleaner.create();
+    private static BufferPool shared = null;
+
+    /**
+     * @param hits             число выдач свободного буфера
+     * @param misses           число выдач с выделением нового буфера
+     * @param leaks            число буферов, не возвращенных в пул
+     * @param outstandingBytes объем выданных и еще не возвращенных буферов
+     * @param pooledBytes      объем свободных буферов в общем пуле, без кэшей потоков
+     */
+    public record Stats(long hits, long misses, long leaks, long outstandingBytes, long pooledBytes) {
+
+        public double hitRate() {
+            long total = hits + misses;
+            return total == 0 ? 0 : (double) hits / total;
+        }
+
+        @Override
+        public String toString() {
+            return "hit rate %.1f%% (%d/%d), %d bytes outstanding, %d bytes pooled, %d leaks"
+                .formatted(hitRate() * 100, hits, hits + misses, outstandingBytes, pooledBytes, leaks);
+        }
+    }
+
+    /**
+     * Свободные буферы одного потока. Используется только своим потоком.
+     */
+    private static final class ThreadCache {
+        final ByteBuffer[][] stacks = new ByteBuffer[CLASS_COUNT][THREAD_CACHE_SIZE];
+        final int[] sizes = new int[CLASS_COUNT];
+    }
+
+    private final long maxPooledBytes;
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private final ConcurrentLinkedDeque<ByteBuffer>[] classes = new ConcurrentLinkedDeque[CLASS_COUNT];
+    private final ThreadLocal<ThreadCache> threadCaches = ThreadLocal.withInitial(ThreadCache::new);
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong leaks = new AtomicLong();
+    private final AtomicLong outstandingBytes = new AtomicLong();
+    private final AtomicLong pooledBytes = new AtomicLong();
+
+    private volatile boolean isLeakTracing = false;
+
+    public BufferPool() {
+        this(DEFAULT_MAX_POOLED_BYTES);
+    }
+
+    /**
+     * @param maxPooledBytes наибольший объем свободных буферов, хранимых пулом
+     */
+    public BufferPool(long maxPooledBytes) {
+        if (maxPooledBytes < 0)
+            throw new IllegalArgumentException("Pool size must not be negative.");
+
+        this.maxPooledBytes = maxPooledBytes;
+        for (int i = 0; i < CLASS_COUNT; i++)
+            classes[i] = new ConcurrentLinkedDeque<>();
+    }
+
+    /**
+     * @return общий пул сетевого слоя. Создается при первом обращении.
+     */
+    public static synchronized BufferPool shared() {
+        if (shared == null)
+            shared = new BufferPool();
+        return shared;
+    }
+
+    /**
+     * Включает запоминание места выдачи каждого буфера для сообщений об утечках.
+     * <br>Заметно замедляет выдачу, поэтому по умолчанию выключено.
+     */
+    public void setLeakTracing(boolean isLeakTracing) {
+        this.isLeakTracing = isLeakTracing;
+    }
+
+    /**
+     * Выдает очищенный direct буфер емкостью не меньше {@code size} байт.
+     * Может вызываться из любого потока.
+     */
+    public PooledBuffer acquire(int size) {
+        if (size < 0)
+            throw new IllegalArgumentException("Buffer size must not be negative: " + size);
+
+        int index = classIndex(size);
+        ByteBuffer buffer = index < 0 ? null : poll(index);
+
+        if (buffer != null) {
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+            buffer = ByteBuffer.allocateDirect(index < 0 ? size : MIN_CLASS_SIZE << index);
+        }
+        outstandingBytes.addAndGet(buffer.capacity());
+
+        var site = isLeakTracing ? new Throwable("Buffer acquired here") : null;
+        return new PooledBuffer(buffer, new PooledBuffer.State(this, buffer.capacity(), site), cleaner);
+    }
+
+    private ByteBuffer poll(int index) {
+        if (isCached(index)) {
+            var cache = threadCaches.get();
+            int size = cache.sizes[index];
+            if (size > 0) {
+                var stack = cache.stacks[index];
+                var buffer = stack[--size];
+                stack[size] = null;
+                cache.sizes[index] = size;
+                return buffer;
+            }
+        }
+
+        var buffer = classes[index].pollFirst();
+        if (buffer != null)
+            pooledBytes.addAndGet(-buffer.capacity());
+        return buffer;
+    }
+
+    /**
+     * Принимает возвращенный буфер. Вызывается из {@link PooledBuffer#release()}.
+     */
+    void recycle(ByteBuffer buffer) {
+        int capacity = buffer.capacity();
+        outstandingBytes.addAndGet(-capacity);
+
+        int index = classIndex(capacity);
+        // Буферы вне классов и сверх лимита пула освобождает сборщик мусора
+        if (index < 0 || MIN_CLASS_SIZE << index != capacity)
+            return;
+
+        buffer.clear();
+        if (isCached(index)) {
+            var cache = threadCaches.get();
+            int size = cache.sizes[index];
+            if (size < THREAD_CACHE_SIZE) {
+                cache.stacks[index][size] = buffer;
+                cache.sizes[index] = size + 1;
+                return;
+            }
+        }
+
+        if (pooledBytes.addAndGet(capacity) > maxPooledBytes) {
+            pooledBytes.addAndGet(-capacity);
+            return;
+        }
+        classes[index].offerFirst(buffer);
+    }
+
+    private static boolean isCached(int index) {
+        return MIN_CLASS_SIZE << index <= MAX_CACHED_CLASS_SIZE && !Thread.currentThread().isVirtual();
+    }
+
+    /**
+     * @return номер класса наименьших буферов, вмещающих {@code size} байт,
+     *         либо -1, если размер больше наибольшего класса.
+     */
+    private static int classIndex(int size) {
+        if (size > MAX_CLASS_SIZE)
+            return -1;
+        if (size <= MIN_CLASS_SIZE)
+            return 0;
+        return 32 - Integer.numberOfLeadingZeros(size - 1) - Integer.numberOfTrailingZeros(MIN_CLASS_SIZE);
+    }
+
+    /**
+     * Учитывает буфер, обертка которого собрана без возврата в пул.
+     * Вызывается потоком {@link Cleaner}.
+     */
+    void reportLeak(int capacity, Throwable allocationSite) {
+        outstandingBytes.addAndGet(-capacity);
+        leaks.incrementAndGet();
+
+        System.err.println("Pooled buffer of " + capacity + " bytes was not released"
+            + (allocationSite == null ? " (enable leak tracing to find the owner)" : ":"));
+        if (allocationSite != null)
+            allocationSite.printStackTrace();
+    }
+
+    public Stats getStats() {
+        return new Stats(hits.get(), misses.get(), leaks.get(), outstandingBytes.get(), pooledBytes.get());
+    }
+}
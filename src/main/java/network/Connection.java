@@ -0,0 +1,32 @@
+package network;
+
+import java.io.Closeable;
+
+/**
+ * Общий интерфейс серверного соединения с клиентом,
+ * независимо от того, обслуживается оно блокирующим {@link SimpleSocket}
+ * или неблокирующим {@link NioConnection}.
+ */
+public interface Connection extends Closeable {
+
+    /**
+     * Отправляет сообщение клиенту.
+     *
+     * @throws IllegalStateException если соединение закрыто
+     */
+    void sendMessage(String message) throws IllegalStateException;
+
+    /**
+     * Отправляет заранее закодированное сообщение клиенту.
+     * <br>Байты сообщения не копируются и могут разделяться
+     * между любым числом соединений.
+     *
+     * @throws IllegalStateException если соединение закрыто
+     */
+    void sendMessage(EncodedMessage message) throws IllegalStateException;
+
+    boolean isClosed();
+
+    @Override
+    void close();
+}
@@ -0,0 +1,61 @@
+package network;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Сообщение, закодированное для отправки один раз.
+ *
+ * <p>Полезно при рассылке одного сообщения множеству получателей:
+ * строка кодируется в байты только при первой отправке в каждом
+ * из режимов (строковом или кадровом), а все соединения
+ * пишут в сокет одни и те же байты.
+ */
+public final class EncodedMessage {
+
+    private final String text;
+
+    private volatile ByteBuffer line = null;
+    private volatile ByteBuffer frame = null;
+
+    public EncodedMessage(String text) {
+        this.text = text;
+    }
+
+    public String text() {
+        return text;
+    }
+
+    /**
+     * @return представление сообщения в строковом режиме.
+     *         Позиция представления независима от других получателей.
+     */
+    ByteBuffer line() {
+        var buffer = line;
+        if (buffer == null)
+            line = buffer = toDirect(LineCodec.encode(text));
+        return buffer.duplicate();
+    }
+
+    /**
+     * @return представление сообщения в режиме кадров.
+     *         Позиция представления независима от других получателей.
+     */
+    ByteBuffer frame() {
+        var buffer = frame;
+        if (buffer == null)
+            frame = buffer = toDirect(FrameCodec.encode(Frame.TEXT, text.getBytes(StandardCharsets.UTF_8)));
+        return buffer.duplicate();
+    }
+
+    private static ByteBuffer toDirect(ByteBuffer heap) {
+        return ByteBuffer.allocateDirect(heap.remaining())
+            .put(heap)
+            .flip();
+    }
+
+    @Override
+    public String toString() {
+        return text;
+    }
+}
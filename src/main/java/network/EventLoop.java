@@ -0,0 +1,164 @@
+package network;
+
+import java.io.IOException;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Цикл событий: один поток и один {@link Selector},
+ * обслуживающие произвольное число неблокирующих соединений.
+ *
+ * <p>Все операции над соединениями цикла выполняются только в его потоке.
+ * Другие потоки передают работу через {@link #execute(Runnable)}.
+ */
+final class EventLoop implements Runnable {
+
+    private final Selector selector;
+    private final MessageHandler handler;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final Thread thread;
+
+    private volatile boolean isClosed = false;
+    private volatile HeartbeatSettings heartbeat = null;
+
+    EventLoop(String name, MessageHandler handler) throws IOException {
+        this.selector = Selector.open();
+        this.handler = handler;
+        this.thread = new Thread(this, name);
+    }
+
+    void start() {
+        thread.start();
+    }
+
+    boolean inLoop() {
+        return Thread.currentThread() == thread;
+    }
+
+    MessageHandler handler() {
+        return handler;
+    }
+
+    /**
+     * Задает проверку живости для соединений, зарегистрированных после вызова.
+     *
+     * @param settings интервалы проверки, либо null, чтобы не проверять
+     */
+    void setHeartbeat(HeartbeatSettings settings) {
+        this.heartbeat = settings;
+    }
+
+    /**
+     * Ставит задачу в очередь цикла. Задача будет выполнена
+     * в потоке цикла на ближайшей итерации.
+     */
+    void execute(Runnable task) {
+        tasks.add(task);
+        if (!inLoop())
+            selector.wakeup();
+    }
+
+    /**
+     * Передает принятый канал под управление цикла.
+     */
+    void register(SocketChannel channel) {
+        execute(() -> {
+            NioConnection connection = null;
+            try {
+                channel.configureBlocking(false);
+                var key = channel.register(selector, SelectionKey.OP_READ);
+                connection = new NioConnection(channel, key, this);
+                key.attach(connection);
+
+                var settings = heartbeat;
+                if (settings != null)
+                    connection.startHeartbeat(settings, TimerWheel.shared());
+                handler.onConnect(connection);
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Error registering client: " + e.getMessage());
+                if (connection != null) {
+                    connection.close();
+                } else {
+                    try {
+                        channel.close();
+                    } catch (IOException ignored) {}
+                }
+            }
+        });
+    }
+
+    int connectionCount() {
+        try {
+            return selector.keys().size();
+        } catch (ClosedSelectorException e) {
+            return 0;
+        }
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (!isClosed) {
+                selector.select();
+                processSelectedKeys();
+                runTasks();
+            }
+        } catch (IOException | ClosedSelectorException e) {
+            if (!isClosed)
+                System.err.println("Event loop failure: " + e.getMessage());
+        } finally {
+            closeConnections();
+        }
+    }
+
+    private void processSelectedKeys() {
+        var selected = selector.selectedKeys();
+        for (var key : selected) {
+            var connection = (NioConnection) key.attachment();
+
+            try {
+                if (key.isValid() && key.isReadable())
+                    connection.handleRead();
+                if (key.isValid() && key.isWritable())
+                    connection.flush();
+            } catch (CancelledKeyException ignored) {
+                // Соединение было закрыто из другого потока
+            } catch (RuntimeException e) {
+                // Ошибка обработчика не должна останавливать цикл и обрывать соседние соединения
+                System.err.println("Error handling client: " + e);
+                connection.close();
+            }
+        }
+        selected.clear();
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                System.err.println("Event loop task failed: " + e);
+            }
+        }
+    }
+
+    private void closeConnections() {
+        try {
+            for (var key : selector.keys())
+                ((NioConnection) key.attachment()).close();
+            runTasks();
+            selector.close();
+        } catch (IOException | ClosedSelectorException ignored) {}
+    }
+
+    void close() {
+        isClosed = true;
+        selector.wakeup();
+    }
+}
@@ -0,0 +1,44 @@
+package network;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Кадр бинарного протокола {@link SimpleSocket}.
+ *
+ * <p>В отличие от строкового режима, кадр может содержать
+ * переводы строк и произвольные бинарные данные (например, вложения).
+ *
+ * @param type    тип кадра ({@link #TEXT} или {@link #BINARY})
+ * @param payload содержимое кадра
+ */
+public record Frame(byte type, byte[] payload) {
+
+    /**
+     * Текстовое сообщение в кодировке UTF-8.
+     */
+    public static final byte TEXT = 0;
+
+    /**
+     * Произвольные бинарные данные.
+     */
+    public static final byte BINARY = 1;
+
+    public static Frame text(String message) {
+        return new Frame(TEXT, message.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static Frame binary(byte[] data) {
+        return new Frame(BINARY, data);
+    }
+
+    public boolean isBinary() {
+        return type == BINARY;
+    }
+
+    /**
+     * Декодирует содержимое кадра как UTF-8 строку.
+     */
+    public String text() {
+        return new String(payload, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,83 @@
+package network;
+
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+
+/**
+ * Кодирование и декодирование кадров {@link Frame}.
+ *
+ * <p>Формат кадра:
+ * <pre>
+ * +-----------------+----------+-----------------+
+ * | length (int32)  | type (1) | payload (length)|
+ * +-----------------+----------+-----------------+
+ * </pre>
+ * Длина записывается в порядке big-endian и не включает заголовок.
+ */
+final class FrameCodec {
+
+    static final int HEADER_SIZE = Integer.BYTES + 1;
+
+    /**
+     * Максимальный размер содержимого одного кадра в байтах.
+     */
+    static final int MAX_PAYLOAD_LENGTH = 16 * 1024 * 1024;
+
+    private FrameCodec() {}
+
+    /**
+     * Извлекает из буфера (в режиме чтения) первый законченный кадр.
+     * <br>При успехе позиция буфера сдвигается за конец кадра.
+     *
+     * @return кадр,<br>
+     *         null, если кадр еще не пришел целиком
+     * @throws ProtocolException если заголовок кадра некорректен
+     */
+    static Frame nextFrame(ByteBuffer buffer) throws ProtocolException {
+        if (buffer.remaining() < HEADER_SIZE)
+            return null;
+
+        int start = buffer.position();
+        int length = buffer.getInt(start);
+
+        if (length < 0 || length > MAX_PAYLOAD_LENGTH)
+            throw new ProtocolException("Invalid frame length: " + length);
+
+        if (buffer.remaining() < HEADER_SIZE + length)
+            return null;
+
+        byte type = buffer.get(start + Integer.BYTES);
+        var payload = new byte[length];
+        buffer.get(start + HEADER_SIZE, payload);
+        buffer.position(start + HEADER_SIZE + length);
+
+        return new Frame(type, payload);
+    }
+
+    /**
+     * Полный размер кадра, заголовок которого лежит в начале буфера.
+     *
+     * @return размер кадра в байтах, либо -1, если заголовок еще не получен
+     */
+    static int frameLength(ByteBuffer buffer) {
+        if (buffer.remaining() < HEADER_SIZE)
+            return -1;
+        return HEADER_SIZE + buffer.getInt(buffer.position());
+    }
+
+    /**
+     * Кодирует кадр.
+     *
+     * @return буфер в режиме чтения
+     */
+    static ByteBuffer encode(byte type, byte[] payload) {
+        if (payload.length > MAX_PAYLOAD_LENGTH)
+            throw new IllegalArgumentException("Frame is too long: " + payload.length);
+
+        return ByteBuffer.allocate(HEADER_SIZE + payload.length)
+            .putInt(payload.length)
+            .put(type)
+            .put(payload)
+            .flip();
+    }
+}
@@ -0,0 +1,94 @@
+package network;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Проверка живости одного соединения по {@link HeartbeatSettings}.
+ *
+ * <p>Соединение сообщает о каждом чтении через {@link #onRead()} - это одна запись
+ * в volatile поле, без обращения к таймеру. Таймер проверяет соединение только
+ * в моменты, когда мог истечь срок, и переносит проверку, если данные успели прийти.
+ */
+final class Heartbeat {
+
+    /**
+     * Соединение, живость которого проверяется.
+     */
+    interface Peer {
+        boolean isClosed();
+
+        /**
+         * Отправляет ping. Вызывается в потоке таймера и не должен блокировать.
+         */
+        void sendPing();
+
+        /**
+         * Закрывает соединение, от которого слишком долго ничего не приходило.
+         */
+        void reap(long idleMillis);
+    }
+
+    private final Peer peer;
+    private final long pingIntervalNanos;
+    private final long idleTimeoutNanos;
+    private final TimerWheel timer;
+
+    private volatile long lastReadNanos = System.nanoTime();
+    private volatile boolean isPingPending = false;
+
+    Heartbeat(Peer peer, HeartbeatSettings settings, TimerWheel timer) {
+        this.peer = peer;
+        this.pingIntervalNanos = TimeUnit.MILLISECONDS.toNanos(settings.pingIntervalMillis());
+        this.idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(settings.idleTimeoutMillis());
+        this.timer = timer;
+    }
+
+    void start() {
+        lastReadNanos = System.nanoTime();
+        schedule(System.nanoTime());
+    }
+
+    /**
+     * Отмечает, что от другой стороны пришли данные.
+     */
+    void onRead() {
+        lastReadNanos = System.nanoTime();
+        if (isPingPending)
+            isPingPending = false;
+    }
+
+    private void check() {
+        if (peer.isClosed())
+            return;
+
+        long now = System.nanoTime();
+        long idle = now - lastReadNanos;
+
+        if (idle >= idleTimeoutNanos) {
+            peer.reap(TimeUnit.NANOSECONDS.toMillis(idle));
+            return;
+        }
+
+        if (pingIntervalNanos > 0 && idle >= pingIntervalNanos && !isPingPending) {
+            isPingPending = true;
+            peer.sendPing();
+        }
+        schedule(now);
+    }
+
+    /**
+     * Планирует следующую проверку на ближайший срок: отправку ping или закрытие.
+     */
+    private void schedule(long now) {
+        long lastRead = lastReadNanos;
+        long deadline = lastRead + idleTimeoutNanos;
+        if (pingIntervalNanos > 0 && !isPingPending)
+            deadline = Math.min(deadline, lastRead + pingIntervalNanos);
+
+        try {
+            timer.schedule(this::check, Math.max(1, TimeUnit.NANOSECONDS.toMillis(deadline - now)));
+        } catch (IllegalStateException e) {
+            // Таймер остановлен - проверять больше некому
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package network;
+
+/**
+ * Настройки проверки живости соединения.
+ *
+ * <p>Если от другой стороны ничего не приходило {@code pingIntervalMillis},
+ * ей отправляется ping, на который она отвечает pong. Если ничего не приходило
+ * {@code idleTimeoutMillis}, соединение считается мертвым и закрывается.
+ * Так обнаруживаются "полуоткрытые" TCP соединения, на которых чтение
+ * иначе блокировалось бы навсегда.
+ *
+ * @param pingIntervalMillis время простоя до отправки ping. 0 - не отправлять ping,
+ *                           только закрывать простаивающие соединения
+ * @param idleTimeoutMillis  время простоя до закрытия соединения
+ */
+public record HeartbeatSettings(long pingIntervalMillis, long idleTimeoutMillis) {
+
+    public HeartbeatSettings {
+        if (idleTimeoutMillis < 1)
+            throw new IllegalArgumentException("Idle timeout must be positive.");
+        if (pingIntervalMillis < 0 || pingIntervalMillis >= idleTimeoutMillis && pingIntervalMillis != 0)
+            throw new IllegalArgumentException("Ping interval must be shorter than idle timeout.");
+    }
+
+    /**
+     * Ping раз в 15 секунд, закрытие после 45 секунд тишины.
+     */
+    public static HeartbeatSettings defaults() {
+        return new HeartbeatSettings(15_000, 45_000);
+    }
+}
@@ -0,0 +1,72 @@
+package network;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Кодирование и декодирование строковых сообщений,
+ * разделенных символом перевода строки.
+ *
+ * <p>Работает напрямую с {@link ByteBuffer}, что позволяет
+ * использовать его в неблокирующем режиме, где строка может
+ * прийти по частям.
+ */
+final class LineCodec {
+
+    /**
+     * Максимальная длина одной строки в байтах.
+     * Клиент, приславший строку длиннее, считается неисправным.
+     */
+    static final int MAX_LINE_LENGTH = 64 * 1024;
+
+    private LineCodec() {}
+
+    /**
+     * Ищет в буфере (в режиме чтения) первую законченную строку.
+     * <br>При успехе позиция буфера сдвигается за символ перевода строки.
+     * <br>Завершающий {@code '\r'}, как и в {@link java.io.BufferedReader#readLine()}, отбрасывается.
+     *
+     * @return строка без символа перевода,<br>
+     *         null, если строка еще не пришла целиком
+     */
+    static String nextLine(ByteBuffer buffer) {
+        var bytes = nextLineBytes(buffer);
+        return bytes == null ? null : new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * То же, что и {@link #nextLine(ByteBuffer)}, но без декодирования строки.
+     */
+    static byte[] nextLineBytes(ByteBuffer buffer) {
+        int start = buffer.position();
+        int limit = buffer.limit();
+
+        for (int i = start; i < limit; i++) {
+            if (buffer.get(i) != '\n')
+                continue;
+
+            int end = i;
+            if (end > start && buffer.get(end - 1) == '\r')
+                end--;
+
+            var bytes = new byte[end - start];
+            buffer.get(start, bytes);
+            buffer.position(i + 1);
+            return bytes;
+        }
+        return null;
+    }
+
+    /**
+     * Кодирует сообщение в UTF-8 с завершающим переводом строки.
+     *
+     * @return буфер в режиме чтения
+     */
+    static ByteBuffer encode(String message) {
+        var bytes = message.getBytes(StandardCharsets.UTF_8);
+        return ByteBuffer.allocate(bytes.length + 1)
+            .put(bytes)
+            .put((byte) '\n')
+            .flip();
+    }
+}
@@ -0,0 +1,27 @@
+package network;
+
+/**
+ * Обработчик событий неблокирующего сервера {@link SelectorServer}.
+ *
+ * <p>Все методы вызываются из потока цикла событий, которому принадлежит
+ * соединение. Они не должны блокировать поток надолго: пока выполняется
+ * обработчик, остальные соединения этого цикла не обслуживаются.
+ */
+@FunctionalInterface
+public interface MessageHandler {
+
+    /**
+     * Получено законченное (до перевода строки) сообщение от клиента.
+     */
+    void onMessage(NioConnection connection, String message);
+
+    /**
+     * Новый клиент подключен и готов к обмену сообщениями.
+     */
+    default void onConnect(NioConnection connection) {}
+
+    /**
+     * Соединение с клиентом закрыто (любой из сторон).
+     */
+    default void onDisconnect(NioConnection connection) {}
+}
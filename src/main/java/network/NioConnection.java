@@ -0,0 +1,246 @@
+package network;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Неблокирующее соединение с клиентом, обслуживаемое {@link SelectorServer}.
+ *
+ * <p>В отличие от {@link SimpleSocket}, не имеет методов чтения:
+ * входящие сообщения доставляются в {@link MessageHandler}.
+ * Отправка сообщений потокобезопасна и никогда не блокирует вызывающий поток.
+ */
+public class NioConnection implements Connection {
+
+    private static final int INITIAL_BUFFER_SIZE = 4 * 1024;
+
+    private final SocketChannel channel;
+    private final SelectionKey key;
+    private final EventLoop loop;
+
+    /**
+     * Буфер чтения из {@link BufferPool#shared()}. Используется и возвращается в пул
+     * только потоком цикла.
+     */
+    private PooledBuffer readHandle = BufferPool.shared().acquire(INITIAL_BUFFER_SIZE);
+    private ByteBuffer readBuffer = readHandle.buffer();
+    private final Queue<ByteBuffer> outbound = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+    private final AtomicBoolean isClosed = new AtomicBoolean(false);
+
+    private volatile Object attachment = null;
+    private volatile Heartbeat heartbeat = null;
+
+    NioConnection(SocketChannel channel, SelectionKey key, EventLoop loop) {
+        this.channel = channel;
+        this.key = key;
+        this.loop = loop;
+    }
+
+    @Override
+    public boolean isClosed() {
+        return isClosed.get();
+    }
+
+    /**
+     * Включает проверку живости соединения. Вызывается циклом при регистрации.
+     */
+    void startHeartbeat(HeartbeatSettings settings, TimerWheel timer) {
+        var created = new Heartbeat(new Heartbeat.Peer() {
+            @Override
+            public boolean isClosed() {
+                return NioConnection.this.isClosed();
+            }
+
+            @Override
+            public void sendPing() {
+                try {
+                    sendMessage(SimpleSocket.PING);
+                } catch (IllegalStateException ignored) {}
+            }
+
+            @Override
+            public void reap(long idleMillis) {
+                System.err.println("No data from " + getRemoteAddress() + " for " + idleMillis + " ms, dropping client");
+                close();
+            }
+        }, settings, timer);
+        heartbeat = created;
+        created.start();
+    }
+
+    /**
+     * Позволяет связать с соединением произвольные данные,
+     * например, сессию авторизованного пользователя.
+     */
+    public void attach(Object attachment) {
+        this.attachment = attachment;
+    }
+
+    public Object attachment() {
+        return attachment;
+    }
+
+    public SocketAddress getRemoteAddress() {
+        try {
+            return channel.getRemoteAddress();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Ставит сообщение в очередь на отправку.
+     * <br>Сообщение будет отправлено потоком цикла событий.
+     *
+     * @param message сообщение
+     * @throws IllegalStateException если соединение закрыто
+     */
+    @Override
+    public void sendMessage(String message) throws IllegalStateException {
+        enqueue(LineCodec.encode(message));
+    }
+
+    /**
+     * Ставит заранее закодированное сообщение в очередь на отправку.
+     *
+     * @param message сообщение
+     * @throws IllegalStateException если соединение закрыто
+     */
+    @Override
+    public void sendMessage(EncodedMessage message) throws IllegalStateException {
+        enqueue(message.line());
+    }
+
+    private void enqueue(ByteBuffer buffer) throws IllegalStateException {
+        if (isClosed())
+            throw new IllegalStateException("Connection is closed");
+
+        outbound.add(buffer);
+        if (flushScheduled.compareAndSet(false, true))
+            loop.execute(this::flush);
+    }
+
+    /**
+     * Читает доступные данные и передает все законченные строки обработчику.
+     * <br>Вызывается только из потока цикла.
+     */
+    void handleRead() {
+        int read;
+        try {
+            read = channel.read(readBuffer);
+        } catch (IOException e) {
+            close();
+            return;
+        }
+
+        if (read < 0) {
+            close();
+            return;
+        }
+
+        var check = heartbeat;
+        if (check != null && read > 0)
+            check.onRead();
+
+        readBuffer.flip();
+        String line;
+        while (!isClosed() && (line = LineCodec.nextLine(readBuffer)) != null) {
+            if (!handleControlLine(line))
+                loop.handler().onMessage(this, line);
+        }
+        readBuffer.compact();
+
+        if (readBuffer.hasRemaining())
+            return;
+
+        if (readBuffer.capacity() >= LineCodec.MAX_LINE_LENGTH) {
+            System.err.println("Message is too long, dropping client " + getRemoteAddress());
+            close();
+            return;
+        }
+
+        var grown = BufferPool.shared().acquire(readBuffer.capacity() * 2);
+        grown.buffer().put(readBuffer.flip());
+        readHandle.release();
+        readHandle = grown;
+        readBuffer = grown.buffer();
+    }
+
+    /**
+     * Отвечает на ping и пропускает pong: служебные строки не передаются обработчику.
+     *
+     * @return true, если строка была служебной
+     */
+    private boolean handleControlLine(String line) {
+        if (line.isEmpty() || line.charAt(0) != 0)
+            return false;
+
+        if (line.equals(SimpleSocket.PING)) {
+            enqueue(LineCodec.encode(SimpleSocket.PONG));
+            return true;
+        }
+        return line.equals(SimpleSocket.PONG);
+    }
+
+    /**
+     * Пишет в канал накопленные сообщения. Если сокет не принимает данные,
+     * подписывается на готовность к записи и продолжит позже.
+     * <br>Вызывается только из потока цикла.
+     */
+    void flush() {
+        if (isClosed())
+            return;
+
+        try {
+            ByteBuffer buffer;
+            while ((buffer = outbound.peek()) != null) {
+                channel.write(buffer);
+                if (buffer.hasRemaining()) {
+                    key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                    return;
+                }
+                outbound.poll();
+            }
+            key.interestOps(SelectionKey.OP_READ);
+        } catch (IOException | CancelledKeyException e) {
+            close();
+            return;
+        }
+
+        flushScheduled.set(false);
+
+        // Сообщение могло прийти между последней проверкой очереди и сбросом флага
+        if (!outbound.isEmpty() && flushScheduled.compareAndSet(false, true))
+            loop.execute(this::flush);
+    }
+
+    /**
+     * Закрывает соединение. Неотправленные сообщения отбрасываются.
+     * <br>Данный метод безопасен и может быть вызван из любого потока повторно.
+     */
+    @Override
+    public void close() {
+        if (!isClosed.compareAndSet(false, true))
+            return;
+
+        key.cancel();
+        try {
+            channel.close();
+        } catch (IOException ignored) {}
+        outbound.clear();
+
+        loop.execute(() -> {
+            // Чтение выполняется только в потоке цикла, так что буфер уже никто не использует
+            readHandle.release();
+            loop.handler().onDisconnect(this);
+        });
+    }
+}
@@ -0,0 +1,22 @@
+package network;
+
+/**
+ * Поведение асинхронной очереди отправки {@link SimpleSocket}
+ * при переполнении, то есть когда получатель не успевает забирать сообщения.
+ *
+ * @see SimpleSocket#enableAsyncSend(int, OverflowPolicy)
+ */
+public enum OverflowPolicy {
+    /**
+     * Отправитель ждет, пока в очереди не освободится место.
+     */
+    BLOCK,
+    /**
+     * Самое старое неотправленное сообщение отбрасывается.
+     */
+    DROP_OLDEST,
+    /**
+     * Медленный получатель отключается.
+     */
+    DISCONNECT
+}
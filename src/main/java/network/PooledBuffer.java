@@ -0,0 +1,79 @@
+package network;
+
+import java.lang.ref.Cleaner;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Direct буфер, выданный {@link BufferPool}.
+ *
+ * <p>Владелец работает с {@link #buffer()} и по окончании обязан вызвать
+ * {@link #release()}, после чего буфер использовать нельзя: он может быть
+ * выдан другому соединению. Если обертка собрана сборщиком мусора без
+ * {@link #release()}, пул сообщает об утечке.
+ */
+public final class PooledBuffer {
+
+    /**
+     * Состояние, доступное действию {@link Cleaner}. Не должно ссылаться на обертку,
+     * иначе она никогда не станет недостижимой.
+     */
+    static final class State implements Runnable {
+
+        private final BufferPool pool;
+        private final int capacity;
+        private final Throwable allocationSite;
+        private final AtomicBoolean isReleased = new AtomicBoolean(false);
+
+        State(BufferPool pool, int capacity, Throwable allocationSite) {
+            this.pool = pool;
+            this.capacity = capacity;
+            this.allocationSite = allocationSite;
+        }
+
+        /**
+         * Вызывается при {@link #release()}, либо сборщиком мусора.
+         */
+        @Override
+        public void run() {
+            if (!isReleased.get())
+                pool.reportLeak(capacity, allocationSite);
+        }
+    }
+
+    private final ByteBuffer buffer;
+    private final State state;
+    private final Cleaner.Cleanable cleanable;
+
+    PooledBuffer(ByteBuffer buffer, State state, Cleaner cleaner) {
+        this.buffer = buffer;
+        this.state = state;
+        this.cleanable = cleaner.register(this, state);
+    }
+
+    /**
+     * @return буфер в режиме записи. Позиция и предел принадлежат владельцу.
+     */
+    public ByteBuffer buffer() {
+        return buffer;
+    }
+
+    public int capacity() {
+        return buffer.capacity();
+    }
+
+    /**
+     * Возвращает буфер в пул.
+     * <br>Повторный вызов ничего не делает.
+     *
+     * @return true, если буфер был возвращен этим вызовом
+     */
+    public boolean release() {
+        if (!state.isReleased.compareAndSet(false, true))
+            return false;
+
+        cleanable.clean();
+        state.pool.recycle(buffer);
+        return true;
+    }
+}
@@ -0,0 +1,137 @@
+package network;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+
+/**
+ * Неблокирующий сервер на основе {@link java.nio.channels.Selector}.
+ *
+ * <p>В отличие от {@link SimpleServerSocket}, не требует отдельного потока
+ * на каждого клиента: соединения распределяются между небольшим фиксированным
+ * числом циклов событий, а полученные сообщения передаются в {@link MessageHandler}.
+ *
+ * <pre><code>
+ * var server = new SelectorServer(8080, (connection, message) -&gt;
+ *     connection.sendMessage("echo: " + message)
+ * );
+ * server.start();
+ * </code></pre>
+ *
+ * <p>После окончания работы с этим классом должен
+ * быть вызван метод {@link #close()}
+ */
+public class SelectorServer implements Closeable {
+
+    private ServerSocketChannel serverChannel;
+    private final EventLoop[] loops;
+    private final Thread acceptor;
+
+    private int nextLoop = 0;
+    private volatile boolean isClosed = false;
+
+    public SelectorServer(int port, MessageHandler handler) {
+        this(port, Runtime.getRuntime().availableProcessors(), handler);
+    }
+
+    /**
+     * @param port        порт сервера
+     * @param eventLoops  число потоков, обслуживающих соединения
+     * @param handler     обработчик сообщений и событий соединений
+     */
+    public SelectorServer(int port, int eventLoops, MessageHandler handler) {
+        if (eventLoops < 1)
+            throw new IllegalArgumentException("At least one event loop is required.");
+
+        loops = new EventLoop[eventLoops];
+        acceptor = new Thread(this::acceptLoop, "selector-server-acceptor");
+
+        try {
+            serverChannel = ServerSocketChannel.open();
+            serverChannel.bind(new InetSocketAddress(port));
+
+            for (int i = 0; i < eventLoops; i++)
+                loops[i] = new EventLoop("selector-server-loop-" + i, handler);
+        } catch (IOException e) {
+            System.err.println("Error creating selector server: " + e.getMessage());
+            close();
+        }
+    }
+
+    /**
+     * Запускает прием клиентов и циклы событий.
+     *
+     * @throws IllegalStateException если сервер закрыт
+     */
+    public void start() throws IllegalStateException {
+        if (isClosed)
+            throw new IllegalStateException("Server is closed");
+
+        for (var loop : loops)
+            loop.start();
+        acceptor.start();
+    }
+
+    public boolean isClosed() {
+        return isClosed;
+    }
+
+    /**
+     * Включает проверку живости для соединений, принятых после вызова:
+     * простаивающим клиентам отправляется ping, а молчащие дольше
+     * {@link HeartbeatSettings#idleTimeoutMillis()} отключаются.
+     *
+     * @param settings интервалы проверки, либо null, чтобы отключить проверку
+     */
+    public void setHeartbeat(HeartbeatSettings settings) {
+        for (var loop : loops)
+            if (loop != null)
+                loop.setHeartbeat(settings);
+    }
+
+    /**
+     * @return число соединений, обслуживаемых в данный момент.
+     */
+    public int getConnectionCount() {
+        int count = 0;
+        for (var loop : loops)
+            if (loop != null)
+                count += loop.connectionCount();
+        return count;
+    }
+
+    private void acceptLoop() {
+        var server = serverChannel;
+        while (!isClosed) {
+            try {
+                var channel = server.accept();
+                loops[nextLoop].register(channel);
+                nextLoop = (nextLoop + 1) % loops.length;
+            } catch (IOException e) {
+                if (!isClosed)
+                    System.err.println("Error accepting client: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Останавливает прием клиентов и закрывает все соединения.
+     * <br>Данный метод безопасен, и может быть вызван, даже если сервер закрыт.
+     */
+    @Override
+    public void close() {
+        isClosed = true;
+
+        if (serverChannel != null) {
+            try {
+                serverChannel.close();
+            } catch (IOException ignored) {}
+            serverChannel = null;
+        }
+
+        for (var loop : loops)
+            if (loop != null)
+                loop.close();
+    }
+}
@@ -0,0 +1,257 @@
+package network;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Ограниченная очередь закодированных сообщений одного {@link SimpleSocket}.
+ *
+ * <p>Отправители занимают место через {@link #reserve()} и кладут сообщения
+ * через {@link #commit(ByteBuffer)}, единственный писатель забирает все накопленное разом через {@link #drainTo(List)}.
+ *
+ * <p>Служебные строки (согласование кадров, ping и pong) не занимают место
+ * обычных сообщений и никогда не отбрасываются: без них соединение
+ * сломается или будет закрыто по тишине. Порядок относительно обычных
+ * сообщений при этом сохраняется.
+ */
+final class SendQueue {
+
+    /**
+     * Сколько служебных строк может ждать отправки. Больше набирается,
+     * только если другая сторона шлет ping, не читая ответов.
+     */
+    static final int CONTROL_CAPACITY = 16;
+
+    private final SimpleSocket owner;
+    private final int capacity;
+    private final OverflowPolicy policy;
+
+    private final ArrayDeque<ByteBuffer> queue;
+    private final Set<ByteBuffer> controls = Collections.newSetFromMap(new IdentityHashMap<>());
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+
+    /**
+     * Сколько мест занято отправителями, еще не положившими сообщения.
+     */
+    private int reserved = 0;
+    private boolean isClosed = false;
+    private boolean isPressured = false;
+
+    volatile SendQueueListener listener = null;
+
+    SendQueue(SimpleSocket owner, int capacity, OverflowPolicy policy) {
+        if (capacity < 1)
+            throw new IllegalArgumentException("Queue capacity must be positive.");
+
+        this.owner = owner;
+        this.capacity = capacity;
+        this.policy = policy;
+        this.queue = new ArrayDeque<>(Math.min(capacity, 1024));
+    }
+
+    /**
+     * Занимает место для сообщения. При {@link OverflowPolicy#BLOCK} ждет, пока место освободится,
+     * при остальных политиках ничего не ждет: они применяются в {@link #commit(ByteBuffer)}.
+     * <br>Отправитель занимает место до того, как закодировать сообщение, и не держит
+     * при этом своих блокировок, поэтому ожидание не мешает отправлять служебные строки.
+     * Занятое место нужно заполнить {@link #commit(ByteBuffer)}, либо вернуть {@link #cancel()}.
+     *
+     * @return false, если очередь закрыта
+     */
+    boolean reserve() throws InterruptedException {
+        if (policy != OverflowPolicy.BLOCK)
+            return true;
+
+        boolean overflow = false;
+        lock.lock();
+        try {
+            while (messageCount() + reserved >= capacity && !isClosed) {
+                overflow = true;
+                notFull.await();
+            }
+
+            if (isClosed)
+                return report(overflow, false, false);
+            reserved++;
+        } finally {
+            lock.unlock();
+        }
+        return report(overflow, false, true);
+    }
+
+    /**
+     * Ставит сообщение в очередь на место, занятое {@link #reserve()},
+     * применяя политику переполнения. Никогда не ждет.
+     *
+     * @return false, если сообщение не было поставлено в очередь:
+     *         очередь закрыта, либо получатель должен быть отключен.
+     */
+    boolean commit(ByteBuffer message) {
+        boolean overflow = false;
+        boolean pressure = false;
+
+        lock.lock();
+        try {
+            if (policy == OverflowPolicy.BLOCK) {
+                reserved--;
+            } else if (messageCount() >= capacity && !isClosed) {
+                overflow = true;
+                if (policy == OverflowPolicy.DROP_OLDEST)
+                    dropOldestMessage();
+            }
+
+            if (isClosed || messageCount() >= capacity)
+                return report(overflow, false, false);
+
+            queue.add(message);
+            notEmpty.signal();
+
+            if (!isPressured && messageCount() * 4 > capacity * 3) {
+                isPressured = true;
+                pressure = true;
+            }
+        } finally {
+            lock.unlock();
+        }
+        return report(overflow, pressure, true);
+    }
+
+    /**
+     * Возвращает место, занятое {@link #reserve()}, если сообщение так и не было отправлено.
+     */
+    void cancel() {
+        if (policy != OverflowPolicy.BLOCK)
+            return;
+
+        lock.lock();
+        try {
+            reserved--;
+            notFull.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Ставит в очередь служебную строку. Она не ждет места и не вытесняет сообщения.
+     *
+     * @return false, если строка не была поставлена в очередь:
+     *         очередь закрыта, либо служебных строк накопилось слишком много.
+     */
+    boolean offerControl(ByteBuffer control) {
+        lock.lock();
+        try {
+            if (isClosed || controls.size() >= CONTROL_CAPACITY)
+                return false;
+
+            queue.add(control);
+            controls.add(control);
+            notEmpty.signal();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Число обычных сообщений в очереди. Вызывается только под {@code lock}.
+     */
+    private int messageCount() {
+        return queue.size() - controls.size();
+    }
+
+    /**
+     * Отбрасывает самое старое обычное сообщение, оставляя служебные строки.
+     * Вызывается только под {@code lock}.
+     */
+    private void dropOldestMessage() {
+        var iterator = queue.iterator();
+        while (iterator.hasNext()) {
+            if (!controls.contains(iterator.next())) {
+                iterator.remove();
+                return;
+            }
+        }
+    }
+
+    private boolean report(boolean overflow, boolean pressure, boolean result) {
+        var listener = this.listener;
+        if (listener == null)
+            return result;
+
+        if (overflow)
+            listener.onOverflow(owner, policy);
+        if (pressure)
+            listener.onHighWatermark(owner, size());
+        return result;
+    }
+
+    /**
+     * Ждет появления сообщений и забирает из очереди все накопленные.
+     *
+     * @return false, если очередь закрыта
+     */
+    boolean drainTo(List<ByteBuffer> sink) throws InterruptedException {
+        boolean relieved = false;
+        int depth;
+
+        lock.lock();
+        try {
+            while (queue.isEmpty() && !isClosed)
+                notEmpty.await();
+            if (isClosed)
+                return false;
+
+            depth = queue.size();
+            sink.addAll(queue);
+            queue.clear();
+            controls.clear();
+            notFull.signalAll();
+
+            if (isPressured) {
+                isPressured = false;
+                relieved = true;
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        var listener = this.listener;
+        if (relieved && listener != null)
+            listener.onLowWatermark(owner, depth);
+        return true;
+    }
+
+    int size() {
+        lock.lock();
+        try {
+            return queue.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Закрывает очередь и будит всех ожидающих. Неотправленные сообщения отбрасываются.
+     */
+    void close() {
+        lock.lock();
+        try {
+            isClosed = true;
+            queue.clear();
+            controls.clear();
+            notEmpty.signalAll();
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
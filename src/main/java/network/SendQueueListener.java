@@ -0,0 +1,31 @@
+package network;
+
+/**
+ * Наблюдатель за заполненностью асинхронной очереди отправки {@link SimpleSocket}.
+ *
+ * <p>Позволяет отправителю притормозить (например, перестать читать
+ * входящие сообщения от того, кто порождает трафик), пока получатель
+ * не разберет накопившееся.
+ *
+ * <p>Методы вызываются из потоков отправителя и писателя очереди
+ * и не должны блокировать их надолго.
+ */
+public interface SendQueueListener {
+
+    /**
+     * Очередь заполнилась более чем на три четверти.
+     */
+    default void onHighWatermark(SimpleSocket socket, int depth) {}
+
+    /**
+     * Очередь, ранее превысившая верхнюю отметку, разобрана писателем.
+     *
+     * @param depth сколько сообщений писатель забрал из очереди за раз
+     */
+    default void onLowWatermark(SimpleSocket socket, int depth) {}
+
+    /**
+     * Очередь переполнена, применена политика {@code policy}.
+     */
+    default void onOverflow(SimpleSocket socket, OverflowPolicy policy) {}
+}
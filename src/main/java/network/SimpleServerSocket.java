@@ -2,22 +2,41 @@ package network;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
+import java.nio.channels.ServerSocketChannel;
 
 /**
  * Небольшой класс-обертка серверного сокета.
  *
+ * <p>Каждый клиент обслуживается блокирующим {@link SimpleSocket},
+ * то есть требует отдельного потока. Для большого числа соединений
+ * используйте неблокирующий {@link SelectorServer}.
+ *
  * <p>После окончания работы с этим классом должен
  * быть вызван метод {@link #close()}
  */
 public class SimpleServerSocket implements Closeable {
     ServerSocket serverSocket;
+    private final BufferPool pool;
 
-    private boolean isClosed = false;
+    private volatile boolean isClosed = false;
 
     public  SimpleServerSocket(int port) {
+        this(port, BufferPool.shared());
+    }
+
+    /**
+     * @param port порт сервера
+     * @param pool пул буферов, из которого принятые сокеты берут буферы чтения и записи
+     */
+    public SimpleServerSocket(int port, BufferPool pool) {
+        this.pool = pool;
         try {
-            serverSocket = new ServerSocket(port);
+            // Сокеты, принятые через канал, позволяют SimpleSocket читать напрямую в ByteBuffer
+            serverSocket = ServerSocketChannel.open()
+                .bind(new InetSocketAddress(port))
+                .socket();
         } catch (IOException e) {
             System.err.println("Error creating server socket: " + e.getMessage());
             close();
@@ -31,10 +50,15 @@ public class SimpleServerSocket implements Closeable {
      * @return готовая к работе {@link SimpleSocket} обертка подключенного клиента.
      */
     public SimpleSocket accept() {
+        var server = serverSocket;
+        if (server == null)
+            return null;
+
         try {
-            return new SimpleSocket(serverSocket.accept());
+            return new SimpleSocket(server.accept(), pool);
         } catch (IOException e) {
-            System.err.println("Error accepting client: " + e.getMessage());
+            if (!isClosed)
+                System.err.println("Error accepting client: " + e.getMessage());
             return null;
         }
     }
@@ -43,9 +67,21 @@ public class SimpleServerSocket implements Closeable {
         return isClosed;
     }
 
+    /**
+     * @return порт, на котором сервер принимает подключения, либо -1, если сокет закрыт.
+     *     <br>Полезно, если сервер был создан на порту 0 (любой свободный).
+     */
+    public int getLocalPort() {
+        var server = serverSocket;
+        return server == null ? -1 : server.getLocalPort();
+    }
+
     @Override
     public void close() {
         isClosed = true;
+        if (serverSocket == null)
+            return;
+
         try {
             serverSocket.close();
         } catch (IOException ignored) {}
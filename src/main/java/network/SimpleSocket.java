@@ -1,34 +1,113 @@
 package network;
 
 import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.ProtocolException;
 import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
 
 /**
  * Небольшой класс-обертка обычного сокета,
  * включающий в себя работу с отправкой и получением
  * информации, а также отлов исключений.
  *
+ * <p>По умолчанию сообщения передаются строками, разделенными переводом строки.
+ * После вызова {@link #enableFraming()} соединение переходит в бинарный режим
+ * кадров {@link Frame}: сообщения могут содержать переводы строк, а через
+ * {@link #sendBinary(byte[])} можно передавать произвольные данные.
+ *
+ * <p>По умолчанию отправка синхронна: каждое сообщение пишется в сокет сразу,
+ * а отправитель ждет, пока получатель его примет. После вызова
+ * {@link #enableAsyncSend(int, OverflowPolicy)} сообщения попадают в ограниченную
+ * очередь, которую разбирает отдельный поток, объединяя накопившиеся
+ * сообщения в одну запись.
+ *
+ * <p>Буферы чтения и записи берутся из {@link BufferPool} и возвращаются
+ * в него при закрытии, поэтому соединения не порождают мусор из direct буферов.
+ *
+ * <p>После вызова {@link #enableHeartbeat(HeartbeatSettings)} простаивающему
+ * соединению отправляется ping, а соединение, по которому долго ничего не приходит,
+ * закрывается. Ожидающий сообщения поток при этом получает конец потока.
+ *
  * <p>После окончания работы с этим классом должен
  * быть вызван метод {@link #close()}
  */
-public class SimpleSocket implements Closeable {
+public class SimpleSocket implements Connection {
+
+    /**
+     * Служебные строки согласования режима кадров.
+     * Начинаются с нулевого символа, который не встречается в обычных сообщениях.
+     */
+    static final String FRAMING_REQUEST = "\u0000frames?";
+    static final String FRAMING_ACCEPT = "\u0000frames!";
+
+    /**
+     * Служебные строки проверки живости соединения.
+     * На ping другая сторона отвечает pong. Обе строки не передаются получателю.
+     */
+    static final String PING = "\u0000ping";
+    static final String PONG = "\u0000pong";
+
+    private static final int INITIAL_BUFFER_SIZE = 8 * 1024;
+    private static final int MAX_BUFFER_SIZE = FrameCodec.HEADER_SIZE + FrameCodec.MAX_PAYLOAD_LENGTH;
+    private static final int COALESCE_BUFFER_SIZE = 64 * 1024;
+
+    private static final ByteBuffer EMPTY_BUFFER = ByteBuffer.allocate(0);
+
     private Socket socket;
-    private boolean isClosed = false;
+    private final BufferPool pool;
+    private volatile boolean isClosed = false;
 
-    private PrintWriter out = null;
-    private BufferedReader in = null;
+    private WritableByteChannel out = null;
+    private ReadableByteChannel in = null;
+    private final ReentrantLock writeLock = new ReentrantLock();
+    /**
+     * Отправляется ли ping в синхронном режиме.
+     */
+    private final AtomicBoolean isPinging = new AtomicBoolean(false);
+    private volatile SendQueue sendQueue = null;
 
-    private String peekMessage = null;
+    /**
+     * Буфер чтения берется из пула при первом чтении. Пока поток читает
+     * ({@code isReading}), вернуть буфер в пул может только он сам.
+     */
+    private final Object readLock = new Object();
+    private boolean isReading = false;
+    private PooledBuffer readHandle = null;
+    private ByteBuffer readBuffer = EMPTY_BUFFER;
+    private boolean isFramedRead = false;
+    private volatile boolean isFramedWrite = false;
+
+    private Frame peekFrame = null;
+    private volatile Heartbeat heartbeat = null;
 
     public SimpleSocket(Socket socket) {
+        this(socket, BufferPool.shared());
+    }
+
+    /**
+     * @param socket сокет
+     * @param pool   пул буферов чтения и записи
+     */
+    public SimpleSocket(Socket socket, BufferPool pool) {
         this.socket = socket;
+        this.pool = pool;
         loadSocket();
-
     }
 
     public SimpleSocket(String host, int port) {
+        this.pool = BufferPool.shared();
         try {
-            socket = new Socket(host, port);
+            socket = SocketChannel.open(new InetSocketAddress(host, port)).socket();
             loadSocket();
         } catch (IOException e) {
             System.err.println("Error opening socket: " + e.getMessage());
@@ -38,8 +117,14 @@ public class SimpleSocket implements Closeable {
 
     private void loadSocket() {
         try {
-            out = new PrintWriter(socket.getOutputStream(), true);
-            in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+            var channel = socket.getChannel();
+            if (channel != null) {
+                out = channel;
+                in = channel;
+            } else {
+                out = Channels.newChannel(socket.getOutputStream());
+                in = Channels.newChannel(socket.getInputStream());
+            }
         } catch (IOException e) {
             System.err.println("Error opening socket streams: " + e.getMessage());
             close();
@@ -51,19 +136,309 @@ public class SimpleSocket implements Closeable {
             throw new IllegalStateException("Socket is closed");
     }
 
+    @Override
     public boolean isClosed() {
         return isClosed;
     }
 
+    /**
+     * @return true, если исходящие сообщения передаются кадрами.
+     */
+    public boolean isFramed() {
+        return isFramedWrite;
+    }
+
+    /**
+     * Переводит соединение в бинарный режим кадров.
+     * <br>Все сообщения, отправленные после вызова, передаются кадрами.
+     * Другая сторона переключается автоматически, получив запрос,
+     * поэтому она также должна использовать {@link SimpleSocket}.
+     * <br>
+     * <br>Повторный вызов ничего не делает.
+     *
+     * @throws IllegalStateException если сокет закрыт
+     */
+    public void enableFraming() throws IllegalStateException {
+        ensureOpen();
+        writeLock.lock();
+        try {
+            if (isFramedWrite)
+                return;
+            sendControl(LineCodec.encode(FRAMING_REQUEST));
+            isFramedWrite = true;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Переводит отправку в асинхронный режим.
+     * <br>{@link #sendMessage(String)} больше не ждет получателя: сообщение
+     * попадает в очередь, а отдельный поток пишет в сокет все накопившиеся
+     * сообщения за одну запись.
+     *
+     * @param capacity максимальное число сообщений в очереди
+     * @param policy   поведение при переполнении очереди
+     * @throws IllegalStateException если сокет закрыт, либо режим уже включен
+     */
+    public void enableAsyncSend(int capacity, OverflowPolicy policy) throws IllegalStateException {
+        ensureOpen();
+        writeLock.lock();
+        try {
+            if (sendQueue != null)
+                throw new IllegalStateException("Async send is already enabled");
+
+            var queue = new SendQueue(this, capacity, policy);
+            sendQueue = queue;
+            Thread.ofVirtual()
+                .name("socket-writer")
+                .start(() -> drainSendQueue(queue));
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Включает проверку живости соединения на общем таймере {@link TimerWheel#shared()}.
+     *
+     * @throws IllegalStateException если сокет закрыт, либо проверка уже включена
+     * @see #enableHeartbeat(HeartbeatSettings, TimerWheel)
+     */
+    public void enableHeartbeat(HeartbeatSettings settings) throws IllegalStateException {
+        enableHeartbeat(settings, TimerWheel.shared());
+    }
+
+    /**
+     * Включает проверку живости соединения.
+     * <br>Если от другой стороны долго ничего не приходит, ей отправляется ping.
+     * Если тишина продолжается дольше {@link HeartbeatSettings#idleTimeoutMillis()},
+     * сокет закрывается.
+     * <br>Другая сторона отвечает на ping автоматически, если использует
+     * {@link SimpleSocket} или {@link NioConnection}.
+     *
+     * @param settings интервалы проверки
+     * @param timer    таймер, на котором выполняются проверки
+     * @throws IllegalStateException если сокет закрыт, либо проверка уже включена
+     */
+    public synchronized void enableHeartbeat(HeartbeatSettings settings, TimerWheel timer)
+        throws IllegalStateException {
+        ensureOpen();
+        if (heartbeat != null)
+            throw new IllegalStateException("Heartbeat is already enabled");
+
+        var created = new Heartbeat(new Heartbeat.Peer() {
+            @Override
+            public boolean isClosed() {
+                return isClosed;
+            }
+
+            @Override
+            public void sendPing() {
+                // Очередь не ждет получателя, и ping просто встает в нее
+                if (sendQueue != null) {
+                    sendControl(PING);
+                    return;
+                }
+                // Синхронная отправка может ждать получателя, а поток таймера блокировать нельзя.
+                // Пока предыдущий ping не отправлен, новый не нужен: потоки не копятся на зависшем соединении
+                if (!isPinging.compareAndSet(false, true))
+                    return;
+                Thread.startVirtualThread(() -> {
+                    try {
+                        sendControl(PING);
+                    } finally {
+                        isPinging.set(false);
+                    }
+                });
+            }
+
+            @Override
+            public void reap(long idleMillis) {
+                System.err.println("No data from peer for " + idleMillis + " ms, closing connection");
+                close();
+            }
+        }, settings, timer);
+        heartbeat = created;
+        created.start();
+    }
+
+    /**
+     * Устанавливает наблюдателя за заполненностью очереди отправки.
+     *
+     * @throws IllegalStateException если асинхронная отправка не включена
+     */
+    public void setSendQueueListener(SendQueueListener listener) throws IllegalStateException {
+        var queue = sendQueue;
+        if (queue == null)
+            throw new IllegalStateException("Async send is not enabled");
+        queue.listener = listener;
+    }
+
+    /**
+     * @return число сообщений, ожидающих отправки. В синхронном режиме всегда 0.
+     */
+    public int getSendQueueDepth() {
+        var queue = sendQueue;
+        return queue == null ? 0 : queue.size();
+    }
+
     /**
      * Отправляет сообщение данному сокету.
      *
      * @param message сообщение
      * @throws IllegalStateException если сокет закрыт
      */
+    @Override
     public void sendMessage(String message) throws IllegalStateException {
         ensureOpen();
-        out.println(message);
+        send(() -> encode(message));
+    }
+
+    /**
+     * Отправляет заранее закодированное сообщение данному сокету.
+     *
+     * @param message сообщение
+     * @throws IllegalStateException если сокет закрыт
+     */
+    @Override
+    public void sendMessage(EncodedMessage message) throws IllegalStateException {
+        ensureOpen();
+        send(() -> isFramedWrite ? message.frame() : message.line());
+    }
+
+    /**
+     * Отправляет бинарные данные данному сокету.
+     *
+     * @param data данные
+     * @throws IllegalStateException если сокет закрыт или не переведен в режим кадров
+     * @see #enableFraming()
+     */
+    public void sendBinary(byte[] data) throws IllegalStateException {
+        ensureOpen();
+        send(() -> {
+            if (!isFramedWrite)
+                throw new IllegalStateException("Binary messages require framed mode");
+            return FrameCodec.encode(Frame.BINARY, data);
+        });
+    }
+
+    /**
+     * Кодирует текстовое сообщение в текущем режиме. Вызывается только под {@code writeLock}.
+     */
+    private ByteBuffer encode(String message) {
+        return isFramedWrite
+            ? FrameCodec.encode(Frame.TEXT, message.getBytes(StandardCharsets.UTF_8))
+            : LineCodec.encode(message);
+    }
+
+    /**
+     * Кодирует и отправляет обычное сообщение: сразу, либо через очередь.
+     * <br>Сообщение кодируется и ставится в очередь под {@code writeLock}, чтобы порядок
+     * сообщений совпадал с порядком выбора режима их кодирования. Место в очереди
+     * занимается заранее, без {@code writeLock}: иначе ожидание места при
+     * {@link OverflowPolicy#BLOCK} не давало бы потоку чтения ответить на ping
+     * и согласование кадров, и два переполненных соединения ждали бы друг друга.
+     *
+     * @param encoder кодирует сообщение в текущем режиме. Вызывается под {@code writeLock}
+     */
+    private void send(Supplier<ByteBuffer> encoder) {
+        while (true) {
+            var queue = sendQueue;
+            try {
+                if (queue != null && !queue.reserve())
+                    return;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+
+            boolean isCommitted = false;
+            writeLock.lock();
+            try {
+                // Асинхронный режим включили, пока занимали место - занимаем его в новой очереди
+                if (sendQueue != queue)
+                    continue;
+
+                var message = encoder.get();
+                if (queue == null) {
+                    write(message);
+                    return;
+                }
+                isCommitted = true;
+                if (!queue.commit(message))
+                    onOverflow();
+                return;
+            } finally {
+                writeLock.unlock();
+                if (queue != null && !isCommitted)
+                    queue.cancel();
+            }
+        }
+    }
+
+    /**
+     * Отправляет закодированную служебную строку: сразу, либо через очередь.
+     * Очередь не отбрасывает служебные строки и не ждет для них места.
+     * <br>Вызывается только под {@code writeLock}.
+     */
+    private void sendControl(ByteBuffer control) {
+        var queue = sendQueue;
+        if (queue == null)
+            write(control);
+        else if (!queue.offerControl(control))
+            onOverflow();
+    }
+
+    private void onOverflow() {
+        if (isClosed)
+            return;
+        System.err.println("Send queue overflow, disconnecting slow consumer");
+        close();
+    }
+
+    /**
+     * Цикл потока-писателя: забирает из очереди все накопившиеся сообщения
+     * и пишет их в сокет как можно меньшим числом записей.
+     */
+    private void drainSendQueue(SendQueue queue) {
+        var batch = new ArrayList<ByteBuffer>();
+        var coalescedHandle = pool.acquire(COALESCE_BUFFER_SIZE);
+        var coalesced = coalescedHandle.buffer();
+
+        try {
+            while (queue.drainTo(batch)) {
+                for (var message : batch) {
+                    if (message.remaining() > coalesced.remaining()) {
+                        write(coalesced.flip());
+                        coalesced.clear();
+                    }
+
+                    if (message.remaining() > coalesced.capacity())
+                        write(message);
+                    else
+                        coalesced.put(message);
+                }
+                write(coalesced.flip());
+                coalesced.clear();
+                batch.clear();
+            }
+        } catch (InterruptedException ignored) {
+        } finally {
+            coalescedHandle.release();
+        }
+    }
+
+    private void write(ByteBuffer buffer) {
+        var channel = out;
+        if (channel == null)
+            return;
+
+        try {
+            while (buffer.hasRemaining())
+                channel.write(buffer);
+        } catch (IOException e) {
+            close();
+        }
     }
 
     /**
@@ -78,14 +453,14 @@ public class SimpleSocket implements Closeable {
      *         false, если сокет закрыт, либо произошла ошибка.
      */
     public boolean hasNewMessage() {
-        if (peekMessage != null)
+        if (peekFrame != null)
             return true;
         if (isClosed)
             return false;
 
-        peekMessage = rawGetMessage();
+        peekFrame = rawGetFrame();
 
-        return peekMessage != null;
+        return peekFrame != null;
     }
 
     /**
@@ -101,45 +476,204 @@ public class SimpleSocket implements Closeable {
      * @throws IllegalStateException если сокет закрыт
      */
     public String receiveMessage() throws IllegalStateException {
-        if (peekMessage != null) {
-            var msg = peekMessage;
-            peekMessage = null;
-            return msg;
+        var frame = receiveFrame();
+        return frame == null ? null : frame.text();
+    }
+
+    /**
+     * Возвращает сообщение от сокета вместе с его типом.
+     * <br>Необходим для получения бинарных данных, отправленных через {@link #sendBinary(byte[])}.
+     *
+     * <p>Блокирует поток так же, как {@link #receiveMessage()}.
+     *
+     * @return кадр, если сообщение успешно получено<br>
+     *         null, если клиент был отключен
+     * @throws IllegalStateException если сокет закрыт
+     */
+    public Frame receiveFrame() throws IllegalStateException {
+        if (peekFrame != null) {
+            var frame = peekFrame;
+            peekFrame = null;
+            return frame;
         }
 
         ensureOpen();
-        return rawGetMessage();
+        return rawGetFrame();
     }
 
-    private String rawGetMessage() {
+    private Frame rawGetFrame() {
+        synchronized (readLock) {
+            if (isClosed)
+                return null;
+            isReading = true;
+        }
+
         try {
-            return in.readLine();
+            while (true) {
+                if (isFramedRead) {
+                    var frame = FrameCodec.nextFrame(readBuffer);
+                    if (frame != null) {
+                        if (frame.isBinary() || !handleControlLine(frame.payload()))
+                            return frame;
+                        continue;
+                    }
+                } else {
+                    var line = LineCodec.nextLineBytes(readBuffer);
+                    if (line != null) {
+                        if (!handleControlLine(line))
+                            return new Frame(Frame.TEXT, line);
+                        continue;
+                    }
+                }
+
+                if (!fillBuffer())
+                    return null;
+            }
         } catch (IOException e) {
             close();
             return null;
+        } finally {
+            synchronized (readLock) {
+                isReading = false;
+                // Сокет закрыли во время чтения - close() оставил буфер нам
+                if (isClosed)
+                    releaseReadBuffer();
+            }
+        }
+    }
+
+    /**
+     * Обрабатывает служебные строки согласования режима кадров и проверки живости.
+     *
+     * @return true, если строка была служебной
+     */
+    private boolean handleControlLine(byte[] line) {
+        if (line.length == 0 || line[0] != 0)
+            return false;
+
+        var control = new String(line, StandardCharsets.UTF_8);
+        if (control.equals(FRAMING_REQUEST)) {
+            // Все, что другая сторона отправит после запроса, придет кадрами
+            isFramedRead = true;
+            writeLock.lock();
+            try {
+                if (!isFramedWrite) {
+                    sendControl(LineCodec.encode(FRAMING_ACCEPT));
+                    isFramedWrite = true;
+                }
+            } finally {
+                writeLock.unlock();
+            }
+            return true;
+        }
+        if (control.equals(FRAMING_ACCEPT)) {
+            isFramedRead = true;
+            return true;
+        }
+        if (control.equals(PING)) {
+            sendControl(PONG);
+            return true;
+        }
+        // Сам факт получения pong уже отмечен в fillBuffer()
+        return control.equals(PONG);
+    }
+
+    /**
+     * Отправляет служебную строку в текущем режиме. Закрытый сокет молча пропускается.
+     */
+    private void sendControl(String control) {
+        if (isClosed)
+            return;
+        writeLock.lock();
+        try {
+            sendControl(encode(control));
+        } finally {
+            writeLock.unlock();
         }
     }
 
+    /**
+     * Дочитывает данные из сокета в буфер, при необходимости увеличивая его.
+     *
+     * @return false, если достигнут конец потока
+     */
+    private boolean fillBuffer() throws IOException {
+        var channel = in;
+        if (channel == null)
+            return false;
+
+        int required = isFramedRead ? FrameCodec.frameLength(readBuffer) : -1;
+        readBuffer.compact();
+
+        if (!readBuffer.hasRemaining() || readBuffer.capacity() < required) {
+            if (readBuffer.capacity() >= MAX_BUFFER_SIZE)
+                throw new ProtocolException("Message is too long");
+
+            int capacity = readHandle == null
+                ? Math.max(INITIAL_BUFFER_SIZE, required)
+                : Math.max(readBuffer.capacity() * 2, required);
+            var grown = pool.acquire(Math.min(capacity, MAX_BUFFER_SIZE));
+            grown.buffer().put(readBuffer.flip());
+
+            if (readHandle != null)
+                readHandle.release();
+            readHandle = grown;
+            readBuffer = grown.buffer();
+        }
+
+        int read = channel.read(readBuffer);
+        readBuffer.flip();
+
+        var check = heartbeat;
+        if (check != null && read > 0)
+            check.onRead();
+        return read >= 0;
+    }
+
+    /**
+     * Возвращает буфер чтения в пул. Вызывается под {@code readLock},
+     * когда никто не читает.
+     */
+    private void releaseReadBuffer() {
+        if (readHandle == null)
+            return;
+        readHandle.release();
+        readHandle = null;
+        readBuffer = EMPTY_BUFFER;
+    }
+
     /**
      * Закрывает сокет и все необходимые стримы.<br>
      * После закрытия, экземпляр класса не может быть использован
      * и будет выбрасывать {@link IllegalStateException} при попытках использования.<br>
      * <br>
-     * Данный метод безопасен, и может быть вызван, даже если сокет закрыт.
+     * Данный метод безопасен, и может быть вызван, даже если сокет закрыт,
+     * в том числе из другого потока, ожидающего сообщение.
      */
     @Override
-    public void close() {
+    public synchronized void close() {
         isClosed = true;
 
+        var queue = sendQueue;
+        if (queue != null)
+            queue.close();
+
+        synchronized (readLock) {
+            if (!isReading)
+                releaseReadBuffer();
+        }
+
         if (socket == null)
             return;
 
         try {
             socket.close();
         } catch (IOException ignored) {}
-        out.close();
         try {
-            in.close();
+            if (out != null)
+                out.close();
+            if (in != null)
+                in.close();
         } catch (IOException ignored) {}
 
         socket = null;
@@ -0,0 +1,27 @@
+package network;
+
+/**
+ * Обработчик сессий блокирующего сервера {@link VirtualThreadServer}.
+ *
+ * <p>Каждая сессия обслуживается своим виртуальным потоком,
+ * поэтому обработчик может блокироваться (например, ждать ответа базы данных),
+ * не мешая остальным клиентам.
+ */
+@FunctionalInterface
+public interface SocketHandler {
+
+    /**
+     * Получено сообщение от клиента.
+     */
+    void onMessage(SimpleSocket socket, String message);
+
+    /**
+     * Клиент подключен, сессия начинается.
+     */
+    default void onConnect(SimpleSocket socket) {}
+
+    /**
+     * Сессия завершена, сокет уже закрыт.
+     */
+    default void onDisconnect(SimpleSocket socket) {}
+}
@@ -0,0 +1,204 @@
+package network;
+
+import java.io.Closeable;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Таймер "колесо": один поток обслуживает сроки сколь угодно большого числа задач.
+ *
+ * <p>Время делится на тики длиной {@code tickMillis}. Колесо - кольцо из
+ * {@code wheelSize} корзин, задача попадает в корзину своего тика, а если срок
+ * дальше одного оборота - еще и запоминает число оставшихся оборотов.
+ * Постановка и отмена задачи стоят O(1), а поток таймера на каждом тике
+ * просматривает только одну корзину. Поэтому сроки 100 тысяч соединений
+ * обслуживаются одним потоком, а не таймером на каждое соединение.
+ *
+ * <p>Задача выполняется не раньше своего срока, но может опоздать на один тик.
+ * Задачи выполняются в потоке таймера и должны быть короткими: долгую работу
+ * следует передавать в другие потоки.
+ */
+public final class TimerWheel implements Closeable {
+
+    public static final long DEFAULT_TICK_MILLIS = 100;
+    public static final int DEFAULT_WHEEL_SIZE = 512;
+
+    /**
+     * Запланированная задача.
+     */
+    public static final class Timeout {
+
+        private final Runnable task;
+        private final long deadlineNanos;
+        private volatile boolean isCancelled = false;
+
+        // Поля ниже меняются только потоком таймера
+        private long rounds;
+        private Timeout next;
+
+        private Timeout(Runnable task, long deadlineNanos) {
+            this.task = task;
+            this.deadlineNanos = deadlineNanos;
+        }
+
+        /**
+         * Отменяет задачу. Отмененная задача удаляется из колеса, когда до нее дойдет очередь.
+         */
+        public void cancel() {
+            isCancelled = true;
+        }
+
+        public boolean isCancelled() {
+            return isCancelled;
+        }
+    }
+
+    private static TimerWheel shared = null;
+
+    private final long tickNanos;
+    private final Timeout[] buckets;
+    private final int mask;
+    private final Queue<Timeout> incoming = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pending = new AtomicInteger(0);
+    private final Thread worker;
+    private final long startNanos;
+
+    private long tick = 0;
+    private volatile boolean isClosed = false;
+
+    public TimerWheel(String name) {
+        this(name, DEFAULT_TICK_MILLIS, DEFAULT_WHEEL_SIZE);
+    }
+
+    /**
+     * @param name       имя потока таймера
+     * @param tickMillis длина тика - точность срабатывания
+     * @param wheelSize  число корзин, степень двойки
+     */
+    public TimerWheel(String name, long tickMillis, int wheelSize) {
+        if (tickMillis < 1)
+            throw new IllegalArgumentException("Tick must be positive.");
+        if (wheelSize < 1 || Integer.bitCount(wheelSize) != 1)
+            throw new IllegalArgumentException("Wheel size must be a power of two.");
+
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+        this.buckets = new Timeout[wheelSize];
+        this.mask = wheelSize - 1;
+        this.startNanos = System.nanoTime();
+        this.worker = Thread.ofPlatform().name(name).daemon().start(this::run);
+    }
+
+    /**
+     * @return общий таймер сетевого слоя. Создается при первом обращении.
+     */
+    public static synchronized TimerWheel shared() {
+        if (shared == null)
+            shared = new TimerWheel("network-timer");
+        return shared;
+    }
+
+    /**
+     * Планирует выполнение задачи через {@code delayMillis} миллисекунд.
+     * Может вызываться из любого потока.
+     *
+     * @throws IllegalStateException если таймер остановлен
+     */
+    public Timeout schedule(Runnable task, long delayMillis) throws IllegalStateException {
+        if (isClosed)
+            throw new IllegalStateException("Timer is closed");
+
+        var timeout = new Timeout(task, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(Math.max(0, delayMillis)));
+        incoming.add(timeout);
+        pending.incrementAndGet();
+        return timeout;
+    }
+
+    /**
+     * @return число запланированных, еще не выполненных задач (включая отмененные,
+     *     но еще не удаленные).
+     */
+    public int pendingCount() {
+        return pending.get();
+    }
+
+    private void run() {
+        while (!isClosed) {
+            long deadline = startNanos + (tick + 1) * tickNanos;
+            long now;
+            while ((now = System.nanoTime()) < deadline && !isClosed)
+                LockSupport.parkNanos(deadline - now);
+
+            transferIncoming();
+            expire((int) (tick & mask));
+            tick++;
+        }
+    }
+
+    /**
+     * Раскладывает новые задачи по корзинам.
+     */
+    private void transferIncoming() {
+        Timeout timeout;
+        while ((timeout = incoming.poll()) != null) {
+            if (timeout.isCancelled) {
+                pending.decrementAndGet();
+                continue;
+            }
+
+            long target = (timeout.deadlineNanos - startNanos) / tickNanos;
+            // Просроченная задача выполняется на текущем тике
+            long ticks = Math.max(target, tick);
+            int index = (int) (ticks & mask);
+
+            timeout.rounds = (ticks - tick) / buckets.length;
+            timeout.next = buckets[index];
+            buckets[index] = timeout;
+        }
+    }
+
+    private void expire(int index) {
+        Timeout previous = null;
+        var timeout = buckets[index];
+
+        while (timeout != null) {
+            var next = timeout.next;
+            boolean remove = timeout.isCancelled || timeout.rounds == 0;
+
+            if (remove) {
+                if (previous == null)
+                    buckets[index] = next;
+                else
+                    previous.next = next;
+                timeout.next = null;
+                pending.decrementAndGet();
+
+                if (!timeout.isCancelled)
+                    runTask(timeout);
+            } else {
+                timeout.rounds--;
+                previous = timeout;
+            }
+            timeout = next;
+        }
+    }
+
+    private static void runTask(Timeout timeout) {
+        try {
+            timeout.task.run();
+        } catch (RuntimeException e) {
+            System.err.println("Timer task failed: " + e);
+        }
+    }
+
+    /**
+     * Останавливает таймер. Невыполненные задачи отбрасываются.
+     */
+    @Override
+    public void close() {
+        isClosed = true;
+        LockSupport.unpark(worker);
+    }
+}
@@ -0,0 +1,168 @@
+package network;
+
+import java.io.Closeable;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Сервер "виртуальный поток на соединение" поверх {@link SimpleServerSocket}.
+ *
+ * <p>Каждый принятый {@link SimpleSocket} обслуживается отдельным виртуальным потоком,
+ * в котором крутится обычный блокирующий цикл
+ * {@link SimpleSocket#hasNewMessage()}/{@link SimpleSocket#receiveMessage()}.
+ * Простаивающие соединения почти ничего не стоят, поэтому одна JVM
+ * держит десятки тысяч клиентов без переписывания обработчиков.
+ *
+ * <p>Число одновременных сессий ограничено: при достижении лимита
+ * новые клиенты ждут в очереди подключения, пока не освободится место.
+ *
+ * <p>После окончания работы с этим классом должен
+ * быть вызван метод {@link #close()}
+ */
+public class VirtualThreadServer implements Closeable {
+
+    /**
+     * Пауза после неудачного {@code accept} (например, кончились файловые дескрипторы).
+     * Удваивается при каждой следующей неудаче подряд, но не превышает {@link #MAX_ACCEPT_BACKOFF_MILLIS}.
+     */
+    static final long MIN_ACCEPT_BACKOFF_MILLIS = 10;
+    static final long MAX_ACCEPT_BACKOFF_MILLIS = 1000;
+
+    private final SimpleServerSocket serverSocket;
+    private final SocketHandler handler;
+    private final Semaphore sessionPermits;
+    private final Set<SimpleSocket> sessions = ConcurrentHashMap.newKeySet();
+    private final Thread acceptor;
+    private final Thread.Builder sessionThreads = Thread.ofVirtual().name("chat-session-", 0);
+
+    private volatile boolean isClosed = false;
+    private volatile HeartbeatSettings heartbeat = null;
+
+    public VirtualThreadServer(int port, SocketHandler handler) {
+        this(port, Integer.MAX_VALUE, handler);
+    }
+
+    /**
+     * @param port        порт сервера
+     * @param maxSessions максимальное число одновременно обслуживаемых клиентов
+     * @param handler     обработчик сообщений
+     */
+    public VirtualThreadServer(int port, int maxSessions, SocketHandler handler) {
+        if (maxSessions < 1)
+            throw new IllegalArgumentException("maxSessions must be positive.");
+
+        this.serverSocket = new SimpleServerSocket(port);
+        this.handler = handler;
+        this.sessionPermits = new Semaphore(maxSessions);
+        this.acceptor = new Thread(this::acceptLoop, "virtual-server-acceptor");
+
+        if (serverSocket.isClosed())
+            isClosed = true;
+    }
+
+    /**
+     * Запускает прием клиентов.
+     *
+     * @throws IllegalStateException если сервер закрыт
+     */
+    public void start() throws IllegalStateException {
+        if (isClosed)
+            throw new IllegalStateException("Server is closed");
+        acceptor.start();
+    }
+
+    public boolean isClosed() {
+        return isClosed;
+    }
+
+    /**
+     * Включает проверку живости для сессий, принятых после вызова.
+     * <br>Молчащий клиент закрывается, и его виртуальный поток освобождается,
+     * даже если TCP соединение "зависло" без явного разрыва.
+     *
+     * @param settings интервалы проверки, либо null, чтобы отключить проверку
+     * @see SimpleSocket#enableHeartbeat(HeartbeatSettings)
+     */
+    public void setHeartbeat(HeartbeatSettings settings) {
+        this.heartbeat = settings;
+    }
+
+    /**
+     * @return число активных сессий.
+     */
+    public int getSessionCount() {
+        return sessions.size();
+    }
+
+    private void acceptLoop() {
+        long backoff = MIN_ACCEPT_BACKOFF_MILLIS;
+        while (!isClosed) {
+            try {
+                sessionPermits.acquire();
+            } catch (InterruptedException e) {
+                return;
+            }
+
+            var socket = serverSocket.accept();
+            if (socket == null || socket.isClosed()) {
+                sessionPermits.release();
+                if (serverSocket.isClosed())
+                    return;
+
+                // Не крутим цикл вхолостую, пока accept продолжает падать
+                try {
+                    Thread.sleep(backoff);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                backoff = Math.min(backoff * 2, MAX_ACCEPT_BACKOFF_MILLIS);
+                continue;
+            }
+            backoff = MIN_ACCEPT_BACKOFF_MILLIS;
+
+            sessions.add(socket);
+            // Сервер мог закрыться, пока мы принимали клиента
+            if (isClosed) {
+                sessions.remove(socket);
+                socket.close();
+                sessionPermits.release();
+                return;
+            }
+
+            sessionThreads.start(() -> serve(socket));
+        }
+    }
+
+    private void serve(SimpleSocket socket) {
+        try {
+            var settings = heartbeat;
+            if (settings != null)
+                socket.enableHeartbeat(settings);
+            handler.onConnect(socket);
+            while (socket.hasNewMessage())
+                handler.onMessage(socket, socket.receiveMessage());
+        } catch (RuntimeException e) {
+            System.err.println("Session failed: " + e.getMessage());
+        } finally {
+            socket.close();
+            sessions.remove(socket);
+            sessionPermits.release();
+            handler.onDisconnect(socket);
+        }
+    }
+
+    /**
+     * Останавливает прием клиентов и закрывает все активные сессии.
+     * <br>Данный метод безопасен, и может быть вызван, даже если сервер закрыт.
+     */
+    @Override
+    public void close() {
+        isClosed = true;
+        serverSocket.close();
+        acceptor.interrupt();
+
+        for (var socket : sessions)
+            socket.close();
+    }
+}
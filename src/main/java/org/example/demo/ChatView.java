@@ -0,0 +1,126 @@
+package org.example.demo;
+
+import connection.ChatHistory;
+import connection.UiUpdateBatcher;
+import elements.Message;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import javafx.scene.control.ListCell;
+import javafx.scene.control.ListView;
+import utils.Utils;
+
+import java.util.List;
+
+/**
+ * Список сообщений открытого чата.
+ *
+ * <p>{@link ListView} создает ячейки только для видимых строк и переиспользует их
+ * при прокрутке, поэтому число узлов не зависит от длины истории. Фиксированная
+ * высота ячейки избавляет от измерения каждой строки при прокрутке.
+ *
+ * <p>Когда на экране появляется самое старое загруженное сообщение,
+ * запрашивается предыдущая страница истории ({@link ChatHistory#loadOlder()}),
+ * а когда самое новое, и более новые выгружены - следующая ({@link ChatHistory#loadNewer()}).
+ * Список повторяет окно истории: выгруженные из него сообщения убираются и из списка.
+ */
+public class ChatView {
+
+    static final double CELL_HEIGHT = 26;
+
+    /**
+     * Изменение списка.
+     *
+     * @param dropped сколько сообщений убрать с противоположного конца
+     * @param reset   true, если список нужно заменить целиком (открыт другой чат)
+     */
+    private record Update(ChatHistory history, List<Message> messages, boolean older, int dropped, boolean reset) {
+    }
+
+    private final ListView<Message> view;
+    private final ObservableList<Message> items = FXCollections.observableArrayList();
+    private final UiUpdateBatcher<Update> updates = new UiUpdateBatcher<>(this::apply);
+
+    private volatile ChatHistory history = null;
+
+    public ChatView(ListView<Message> view) {
+        this.view = view;
+        view.setItems(items);
+        view.setFixedCellSize(CELL_HEIGHT);
+        view.setCellFactory((it) -> new MessageCell());
+    }
+
+    /**
+     * Показывает историю чата. Может вызываться из любого потока.
+     */
+    public void show(ChatHistory history) {
+        this.history = history;
+        var loaded = history.subscribe((messages, older, dropped) ->
+            updates.submit(new Update(history, messages, older, dropped, false))
+        );
+        updates.submit(new Update(history, loaded, false, 0, true));
+    }
+
+    /**
+     * Применяет изменения, накопленные за кадр. Выполняется в потоке JavaFX.
+     */
+    private void apply(List<Update> batch) {
+        int scrollTo = -1;
+
+        for (var update : batch) {
+            // Изменения истории, которая уже не показывается
+            if (update.history != history)
+                continue;
+
+            if (update.reset) {
+                items.setAll(update.messages);
+                scrollTo = items.size() - 1;
+            } else if (update.older) {
+                items.remove(items.size() - update.dropped, items.size());
+                items.addAll(0, update.messages);
+                // Первое видимое сообщение остается на месте
+                scrollTo = update.messages.size();
+            } else {
+                items.remove(0, update.dropped);
+                items.addAll(update.messages);
+                // Следующая страница при прокрутке вниз: последнее видимое сообщение остается на месте
+                scrollTo = update.dropped > 0
+                    ? items.size() - update.messages.size() - 1
+                    : items.size() - 1;
+            }
+        }
+
+        if (scrollTo >= 0)
+            view.scrollTo(scrollTo);
+    }
+
+    private void loadOlder() {
+        var current = history;
+        if (current != null && current.hasOlder() && !current.isLoading())
+            Thread.startVirtualThread(current::loadOlder);
+    }
+
+    private void loadNewer() {
+        var current = history;
+        if (current != null && current.hasNewer() && !current.isLoading())
+            Thread.startVirtualThread(current::loadNewer);
+    }
+
+    private class MessageCell extends ListCell<Message> {
+
+        @Override
+        protected void updateItem(Message message, boolean empty) {
+            super.updateItem(message, empty);
+
+            if (empty || message == null) {
+                setText(null);
+                return;
+            }
+
+            setText(Utils.createChatMessage(message.getSenderId(), message.getContent()));
+            if (getIndex() == 0)
+                loadOlder();
+            else if (getIndex() == items.size() - 1)
+                loadNewer();
+        }
+    }
+}
@@ -3,12 +3,14 @@ package org.example.demo;
 import connection.Client;
 import connection.InputManager;
 import connection.ServerCommands;
+import elements.Message;
 import javafx.beans.property.SimpleStringProperty;
 import javafx.beans.property.StringProperty;
 import javafx.fxml.FXML;
 import javafx.fxml.Initializable;
 import javafx.scene.control.Button;
 import javafx.scene.control.Label;
+import javafx.scene.control.ListView;
 import javafx.scene.control.TextField;
 
 import java.net.URL;
@@ -26,7 +28,12 @@ public class HelloController implements Initializable {
     private TextField tf;
 
     @FXML
-    private TextField receivedMsg;
+    private Label receivedMsg;
+
+    @FXML
+    private ListView<Message> messageList;
+
+    private ChatView chatView;
 
     @FXML
     private Button serverButton;
@@ -64,6 +71,9 @@ public class HelloController implements Initializable {
         receivedMsg.textProperty().bind(MSGProperty());
         // Если через это поле можно менять значение MSG
 //        tf.textProperty().bindBidirectional(MSGProperty());
+
+        chatView = new ChatView(messageList);
+        Client.setOnChatOpened(chatView::show);
     }
 
     @FXML
@@ -0,0 +1,252 @@
+package server;
+
+import elements.AbstractGroup;
+import elements.GroupTypes;
+import elements.Message;
+import network.EncodedMessage;
+import utils.CompressedBitmap;
+import utils.IntSet;
+import utils.Utils;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ExecutionException;
+import java.util.function.IntFunction;
+
+/**
+ * Рассылка сообщения всем участникам группы.
+ *
+ * <p>Сообщение кодируется один раз в {@link EncodedMessage}, и все получатели
+ * пишут в свои сокеты одни и те же байты. Для больших групп (например,
+ * каналов {@link GroupTypes#Channel}) список участников делится на части,
+ * которые рассылаются параллельно на всех ядрах.
+ *
+ * <p>Сохраненное сообщение ({@link #broadcast(int, Message)}) рассылается командой
+ * {@code /chat message}, как и страницы истории ({@link HistoryService}): клиент добавляет его
+ * в историю открытого чата по id. Сообщение без id ({@link #broadcast(int, String, int)})
+ * рассылается командой {@code /chat fetch new <groupId> <message>} и показывается только как уведомление.
+ * Если задана {@link OfflineDelivery}, участники не в сети получат сообщение при входе.
+ * Исключение - каналы: их читают через историю, а не через уведомления.
+ * Участники, которым сообщение не удалось доставить, отбираются в том же проходе,
+ * что и рассылка, поэтому вошедший во время рассылки участник не остается без сообщения.
+ * Сохранение на диск выполняется фоновым потоком, чтобы не задерживать отправителя.
+ *
+ * <p>После окончания работы с этим классом должен
+ * быть вызван метод {@link #close()}
+ */
+public class BroadcastEngine implements Closeable {
+
+    /**
+     * Группы меньше этого размера рассылаются в вызывающем потоке:
+     * передача работы другим потокам обойдется дороже самой рассылки.
+     */
+    static final int SEQUENTIAL_THRESHOLD = 1024;
+
+    /**
+     * Значение отправителя, означающее, что исключать из рассылки некого.
+     */
+    public static final int NO_SENDER = -1;
+
+    private final IntFunction<? extends AbstractGroup> groups;
+    private final SessionRegistry sessions;
+    private final ExecutorService workers;
+    /**
+     * Один поток, чтобы уведомления попадали в очереди в порядке рассылки.
+     */
+    private final ExecutorService offlineWriter;
+    private final int parallelism;
+    private volatile OfflineDelivery offline = null;
+
+    public BroadcastEngine(IntFunction<? extends AbstractGroup> groups, SessionRegistry sessions) {
+        this(groups, sessions, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param groups      поиск группы по id. Возвращает null, если группы нет
+     * @param sessions    активные соединения пользователей
+     * @param parallelism число потоков рассылки
+     */
+    public BroadcastEngine(
+        IntFunction<? extends AbstractGroup> groups,
+        SessionRegistry sessions,
+        int parallelism
+    ) {
+        if (parallelism < 1)
+            throw new IllegalArgumentException("parallelism must be positive.");
+
+        this.groups = groups;
+        this.sessions = sessions;
+        this.parallelism = parallelism;
+        this.workers = Executors.newFixedThreadPool(parallelism, (runnable) -> {
+            var thread = new Thread(runnable, "broadcast-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.offlineWriter = Executors.newSingleThreadExecutor((runnable) -> {
+            var thread = new Thread(runnable, "broadcast-offline");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Задает доставку сообщений участникам не в сети, либо null, чтобы отключить ее.
+     */
+    public void setOfflineDelivery(OfflineDelivery offline) {
+        this.offline = offline;
+    }
+
+    /**
+     * Кодирует уведомление о новом сообщении группы в формате клиентской команды.
+     */
+    public static EncodedMessage encodeNewMessage(int groupId, String message) {
+        return new EncodedMessage("/chat fetch new " + groupId + " " + Utils.quoteArgument(message));
+    }
+
+    /**
+     * Рассылает новое сообщение всем участникам группы, находящимся в сети.
+     *
+     * @return число соединений, в которые было отправлено сообщение
+     * @throws NoSuchElementException если группа не найдена
+     */
+    public int broadcast(int groupId, String message) throws NoSuchElementException {
+        return broadcast(groupId, message, NO_SENDER);
+    }
+
+    /**
+     * Рассылает новое сообщение всем участникам группы, находящимся в сети,
+     * кроме его отправителя.
+     *
+     * @param senderId id отправителя, либо {@link #NO_SENDER}
+     * @return число соединений, в которые было отправлено сообщение
+     * @throws NoSuchElementException если группа не найдена
+     */
+    public int broadcast(int groupId, String message, int senderId) throws NoSuchElementException {
+        return broadcast(groupId, encodeNewMessage(groupId, message), message, senderId);
+    }
+
+    /**
+     * Рассылает сообщение, сохраненное в истории группы (например, {@link server.store.MessageLog}),
+     * всем участникам группы, находящимся в сети, кроме его отправителя.
+     *
+     * @return число соединений, в которые было отправлено сообщение
+     * @throws NoSuchElementException если группа не найдена
+     */
+    public int broadcast(int groupId, Message message) throws NoSuchElementException {
+        var encoded = new EncodedMessage(HistoryService.encodeMessage(groupId, message));
+        return broadcast(groupId, encoded, message.getContent(), message.getSenderId());
+    }
+
+    private int broadcast(int groupId, EncodedMessage encoded, String message, int senderId) {
+        var group = groups.apply(groupId);
+        if (group == null)
+            throw new NoSuchElementException("No group with id " + groupId + " found.");
+
+        var members = group.getMembers().toArray();
+        var offline = this.offline;
+        if (offline == null || group.getType() == GroupTypes.Channel)
+            return deliver(members, encoded, senderId);
+
+        var missed = new IntSet();
+        int delivered = deliver(members, encoded, senderId, missed);
+        if (!missed.isEmpty()) {
+            var recipients = missed.toArray();
+            offlineWriter.execute(() -> offline.enqueueMessage(recipients, groupId, senderId, message));
+        }
+        return delivered;
+    }
+
+    /**
+     * Отправляет закодированное сообщение всем соединениям перечисленных пользователей.
+     *
+     * @param recipients id получателей
+     * @param message    сообщение
+     * @param senderId   id пользователя, которому отправлять не нужно, либо {@link #NO_SENDER}
+     * @return число соединений, в которые было отправлено сообщение
+     */
+    public int deliver(int[] recipients, EncodedMessage message, int senderId) {
+        return deliver(recipients, message, senderId, null);
+    }
+
+    /**
+     * @param missed получатели, которым не удалось отправить сообщение ни в одно соединение,
+     *               либо null, если они не нужны
+     */
+    private int deliver(int[] recipients, EncodedMessage message, int senderId, IntSet missed) {
+        int total = recipients.length;
+        if (total <= SEQUENTIAL_THRESHOLD || parallelism == 1)
+            return deliverRange(recipients, 0, total, message, senderId, missed);
+
+        int chunkSize = Math.max(SEQUENTIAL_THRESHOLD / 4, (total + parallelism - 1) / parallelism);
+        var parts = new ArrayList<Future<Integer>>();
+        var partsMissed = new ArrayList<IntSet>();
+
+        // Первую часть рассылаем сами, пока остальные рассылаются рабочими потоками
+        for (int from = chunkSize; from < total; from += chunkSize) {
+            int start = from;
+            int end = Math.min(total, from + chunkSize);
+            var partMissed = missed == null ? null : new IntSet();
+            partsMissed.add(partMissed);
+            parts.add(workers.submit(() -> deliverRange(recipients, start, end, message, senderId, partMissed)));
+        }
+
+        int delivered = deliverRange(recipients, 0, chunkSize, message, senderId, missed);
+        for (int i = 0; i < parts.size(); i++) {
+            try {
+                delivered += parts.get(i).get();
+                if (missed != null)
+                    partsMissed.get(i).forEachInt(missed::add);
+            } catch (ExecutionException e) {
+                System.err.println("Broadcast part failed: " + e.getCause().getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        return delivered;
+    }
+
+    /**
+     * Отправляет закодированное сообщение всем соединениям пользователей множества,
+     * например, {@link MembershipIndex#fanOutTargets(int, int)}.
+     *
+     * @return число соединений, в которые было отправлено сообщение
+     */
+    public int deliver(CompressedBitmap recipients, EncodedMessage message, int senderId) {
+        return deliver(recipients.toArray(), message, senderId);
+    }
+
+    private int deliverRange(int[] recipients, int from, int to, EncodedMessage message, int senderId, IntSet missed) {
+        int delivered = 0;
+        for (int i = from; i < to; i++) {
+            int userId = recipients[i];
+            if (userId == senderId)
+                continue;
+
+            int before = delivered;
+            for (var connection : sessions.connectionsOf(userId)) {
+                if (connection.isClosed())
+                    continue;
+                try {
+                    connection.sendMessage(message);
+                    delivered++;
+                } catch (IllegalStateException ignored) {
+                    // Соединение закрылось во время рассылки
+                }
+            }
+            if (missed != null && delivered == before)
+                missed.add(userId);
+        }
+        return delivered;
+    }
+
+    @Override
+    public void close() {
+        workers.shutdown();
+        offlineWriter.shutdown();
+    }
+}
@@ -0,0 +1,64 @@
+package server;
+
+/**
+ * Группы команд клиента с раздельными лимитами частоты (см. {@link IngressLimiter}).
+ *
+ * <p>Поток сообщений чата не должен расходовать лимит заявок в друзья,
+ * а перебор паролей не должен мешать переписке.
+ */
+public enum CommandFamily {
+    /**
+     * Сообщения в чаты, в том числе строки без команды.
+     */
+    CHAT("chat", new RateLimiter.Limit(20, 10)),
+    /**
+     * Заявки в друзья и их отмена.
+     */
+    FRIENDS("friends", new RateLimiter.Limit(5, 0.2)),
+    /**
+     * Регистрация и вход.
+     */
+    REGISTRATION("registration", new RateLimiter.Limit(3, 0.05)),
+    /**
+     * Все остальные команды, например, загрузка истории.
+     */
+    GENERAL("general", new RateLimiter.Limit(50, 25));
+
+    private final String id;
+    private final RateLimiter.Limit defaultLimit;
+
+    CommandFamily(String id, RateLimiter.Limit defaultLimit) {
+        this.id = id;
+        this.defaultLimit = defaultLimit;
+    }
+
+    /**
+     * @return имя группы в ответах клиенту.
+     */
+    public String id() {
+        return id;
+    }
+
+    public RateLimiter.Limit defaultLimit() {
+        return defaultLimit;
+    }
+
+    /**
+     * Определяет группу сообщения по имени команды, не разбирая сообщение целиком.
+     */
+    public static CommandFamily of(String message) {
+        if (message.isEmpty() || message.charAt(0) != '/')
+            return CHAT;
+
+        int end = 1;
+        while (end < message.length() && !Character.isWhitespace(message.charAt(end)))
+            end++;
+
+        return switch (message.substring(1, end)) {
+            case "chat" -> CHAT;
+            case "friends" -> FRIENDS;
+            case "register", "login" -> REGISTRATION;
+            default -> GENERAL;
+        };
+    }
+}
@@ -0,0 +1,202 @@
+package server;
+
+import cli.Context;
+import cli.CustomCommandProcessor;
+import elements.Message;
+import network.Connection;
+import server.store.MessageLog;
+import utils.Utils;
+
+import java.util.List;
+
+/**
+ * Постраничная выдача истории сообщений группы.
+ *
+ * <p>Клиент запрашивает историю курсором - id сообщения, до или после которого
+ * нужна страница. Стоимость запроса зависит только от размера страницы,
+ * а не от длины истории, поэтому открытие чата с миллионом сообщений
+ * обходится так же, как открытие чата с десятью.
+ *
+ * <p>Запросы клиента:
+ * <pre>
+ * /history open &lt;groupId&gt; [size]               - последняя страница чата
+ * /history before &lt;groupId&gt; &lt;messageId&gt; [size]  - страница перед сообщением
+ * /history after &lt;groupId&gt; &lt;messageId&gt; [size]   - страница после сообщения
+ * </pre>
+ *
+ * <p>Ответ - по одной строке на сообщение, от старых к новым, и строка конца страницы:
+ * <pre>
+ * /chat open &lt;groupId&gt;                                          - только для open
+ * /chat message &lt;groupId&gt; &lt;messageId&gt; &lt;senderId&gt; &lt;millis&gt; "&lt;content&gt;"
+ * /chat page &lt;groupId&gt; &lt;before|after&gt; &lt;more|end&gt;
+ * </pre>
+ *
+ * <p>История группы выдается только ее участникам. На запрос соединения, не вошедшего
+ * в систему, или пользователя не из группы отвечается {@link #encodeForbidden(int)}.
+ */
+public class HistoryService {
+
+    public static final int DEFAULT_PAGE_SIZE = 50;
+    public static final int MAX_PAGE_SIZE = 200;
+
+    private final MessageLog log;
+    private final SessionRegistry sessions;
+    private final MembershipIndex groups;
+
+    /**
+     * @param log      история сообщений групп
+     * @param sessions пользователи соединений
+     * @param groups   участники групп
+     */
+    public HistoryService(MessageLog log, SessionRegistry sessions, MembershipIndex groups) {
+        this.log = log;
+        this.sessions = sessions;
+        this.groups = groups;
+    }
+
+    /**
+     * Кодирует отказ в выдаче истории группы.
+     */
+    public static String encodeForbidden(int groupId) {
+        return "/error forbidden history " + groupId;
+    }
+
+    /**
+     * Регистрирует команды запроса истории в серверном процессоре команд.
+     * <br>Данными контекста команды должно быть соединение, от которого пришел запрос.
+     */
+    public void register(CustomCommandProcessor<Connection> processor) {
+        processor.register("history", (it) -> it
+            .description("постраничная загрузка истории чата")
+            .subcommand("open", (open) -> open
+                .requireArgument("groupId")
+                .findArgument("size")
+                .executes((ctx) -> {
+                    var groupId = intArgument(ctx, "groupId");
+                    var size = pageSize(ctx);
+                    if (groupId != null && size != null)
+                        open(ctx.data, groupId, size);
+                })
+            )
+            .subcommand("before", (before) -> before
+                .requireArgument("groupId")
+                .requireArgument("messageId")
+                .findArgument("size")
+                .executes((ctx) -> {
+                    var groupId = intArgument(ctx, "groupId");
+                    var messageId = intArgument(ctx, "messageId");
+                    var size = pageSize(ctx);
+                    if (groupId != null && messageId != null && size != null)
+                        before(ctx.data, groupId, messageId, size);
+                })
+            )
+            .subcommand("after", (after) -> after
+                .requireArgument("groupId")
+                .requireArgument("messageId")
+                .findArgument("size")
+                .executes((ctx) -> {
+                    var groupId = intArgument(ctx, "groupId");
+                    var messageId = intArgument(ctx, "messageId");
+                    var size = pageSize(ctx);
+                    if (groupId != null && messageId != null && size != null)
+                        after(ctx.data, groupId, messageId, size);
+                })
+            )
+        );
+    }
+
+    /**
+     * @return значение числового аргумента, либо null, если аргумент не является числом.
+     */
+    private static Integer intArgument(Context<Connection> ctx, String name) {
+        try {
+            return Integer.parseInt(ctx.getString(name));
+        } catch (NumberFormatException e) {
+            ctx.out.println("Invalid number <" + name + ">.");
+            return null;
+        }
+    }
+
+    private static Integer pageSize(Context<Connection> ctx) {
+        if (!ctx.hasArgument("size"))
+            return DEFAULT_PAGE_SIZE;
+        return intArgument(ctx, "size");
+    }
+
+    private static int clampPageSize(int size) {
+        return Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+    }
+
+    /**
+     * Проверяет, что пользователь соединения состоит в группе. Иначе отвечает отказом.
+     *
+     * @return true, если историю можно выдавать
+     */
+    private boolean authorize(Connection connection, int groupId) {
+        int userId = sessions.userOf(connection);
+        if (userId != SessionRegistry.NO_USER && groups.isMember(groupId, userId))
+            return true;
+        connection.sendMessage(encodeForbidden(groupId));
+        return false;
+    }
+
+    /**
+     * Отправляет последнюю страницу чата.
+     */
+    public void open(Connection connection, int groupId, int pageSize) {
+        if (!authorize(connection, groupId))
+            return;
+        connection.sendMessage("/chat open " + groupId);
+        var page = log.readLast(groupId, clampPageSize(pageSize));
+        boolean hasOlder = !page.isEmpty() && page.getFirst().getId() > 0;
+        sendPage(connection, groupId, page, "before", hasOlder);
+    }
+
+    /**
+     * Отправляет страницу сообщений, предшествующих сообщению {@code beforeId}.
+     */
+    public void before(Connection connection, int groupId, int beforeId, int pageSize) {
+        if (!authorize(connection, groupId))
+            return;
+        int size = clampPageSize(pageSize);
+        int end = Math.min(beforeId, log.size(groupId));
+        int from = Math.max(0, end - size);
+
+        var page = end <= 0 ? List.<Message>of() : log.read(groupId, from, end - from);
+        sendPage(connection, groupId, page, "before", from > 0);
+    }
+
+    /**
+     * Отправляет страницу сообщений, следующих за сообщением {@code afterId}.
+     */
+    public void after(Connection connection, int groupId, int afterId, int pageSize) {
+        if (!authorize(connection, groupId))
+            return;
+        int size = clampPageSize(pageSize);
+        if (afterId == Integer.MAX_VALUE) {
+            sendPage(connection, groupId, List.of(), "after", false);
+            return;
+        }
+        int from = Math.max(0, afterId + 1);
+
+        var page = log.read(groupId, from, size);
+        sendPage(connection, groupId, page, "after", from + page.size() < log.size(groupId));
+    }
+
+    private void sendPage(Connection connection, int groupId, List<Message> page, String direction, boolean hasMore) {
+        for (var message : page)
+            connection.sendMessage(encodeMessage(groupId, message));
+        connection.sendMessage("/chat page " + groupId + " " + direction + " " + (hasMore ? "more" : "end"));
+    }
+
+    /**
+     * Кодирует сообщение истории в формате клиентской команды.
+     */
+    public static String encodeMessage(int groupId, Message message) {
+        return "/chat message " + groupId
+            + " " + message.getId()
+            + " " + message.getSenderId()
+            + " " + message.getTime().getTime()
+            + " " + Utils.quoteArgument(message.getContent());
+    }
+}
@@ -0,0 +1,146 @@
+package server;
+
+import network.Connection;
+import network.TimerWheel;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Ограничение частоты входящих команд клиентов.
+ *
+ * <p>Для каждой группы команд ({@link CommandFamily}) ведется два лимита:
+ * по соединению, чтобы ограничить еще не вошедших клиентов, и по пользователю,
+ * чтобы несколько устройств одного пользователя делили один лимит.
+ *
+ * <p>Сервер вызывает {@link #admit(Connection, int, String)} для каждого входящего
+ * сообщения до его разбора. Превысившему лимит клиенту отправляется ответ
+ * <pre>
+ * /error throttled &lt;family&gt; &lt;retryAfterMillis&gt;
+ * </pre>
+ * а само сообщение отбрасывается. Ответ отправляется не чаще одного раза
+ * на ключ и группу команд за время ожидания: остальные сообщения этого
+ * времени отбрасываются молча, и флуд не удваивается ответами.
+ */
+public class IngressLimiter {
+
+    /**
+     * Значение пользователя для соединений, еще не выполнивших вход.
+     */
+    public static final int NO_USER = -1;
+
+    public static final long SWEEP_INTERVAL_MILLIS = 60_000;
+
+    private final EnumMap<CommandFamily, RateLimiter<Connection>> byConnection = new EnumMap<>(CommandFamily.class);
+    private final EnumMap<CommandFamily, RateLimiter<Integer>> byUser = new EnumMap<>(CommandFamily.class);
+    private final AtomicLong rejected = new AtomicLong();
+
+    /**
+     * Создает ограничитель с лимитами {@link CommandFamily#defaultLimit()}.
+     */
+    public IngressLimiter() {
+        this(Map.of());
+    }
+
+    /**
+     * @param limits лимиты групп команд. Для отсутствующих групп используется
+     *               {@link CommandFamily#defaultLimit()}
+     */
+    public IngressLimiter(Map<CommandFamily, RateLimiter.Limit> limits) {
+        for (var family : CommandFamily.values()) {
+            var limit = limits.getOrDefault(family, family.defaultLimit());
+            byConnection.put(family, new RateLimiter<>(limit));
+            byUser.put(family, new RateLimiter<>(limit));
+        }
+    }
+
+    /**
+     * Кодирует ответ клиенту, превысившему лимит.
+     */
+    public static String encodeRejection(CommandFamily family, long retryAfterMillis) {
+        return "/error throttled " + family.id() + " " + retryAfterMillis;
+    }
+
+    /**
+     * Проверяет лимиты для входящего сообщения. Может вызываться из любого потока.
+     * <br>Если лимит превышен, отправляет клиенту {@link #encodeRejection(CommandFamily, long)},
+     * если еще не отправлял за текущее время ожидания.
+     *
+     * @param connection соединение, от которого пришло сообщение
+     * @param userId     id вошедшего пользователя, либо {@link #NO_USER}
+     * @param message    сообщение
+     * @return true, если сообщение можно обрабатывать
+     */
+    public boolean admit(Connection connection, int userId, String message) {
+        var family = CommandFamily.of(message);
+
+        boolean notify;
+        var connectionLimiter = byConnection.get(family);
+        long retryAfter = connectionLimiter.tryAcquire(connection);
+        if (retryAfter != RateLimiter.ALLOWED) {
+            notify = connectionLimiter.claimRejectionNotice(connection, retryAfter);
+        } else if (userId != NO_USER) {
+            var userLimiter = byUser.get(family);
+            retryAfter = userLimiter.tryAcquire(userId);
+            if (retryAfter == RateLimiter.ALLOWED)
+                return true;
+            // Сообщение не пройдет, и лимит соединения на него тратиться не должен:
+            // иначе ограниченный пользователь опустошал бы и лимиты всех своих устройств
+            connectionLimiter.release(connection);
+            notify = userLimiter.claimRejectionNotice(userId, retryAfter);
+        } else {
+            return true;
+        }
+
+        rejected.incrementAndGet();
+        if (!notify)
+            return false;
+        try {
+            connection.sendMessage(encodeRejection(family, retryAfter));
+        } catch (IllegalStateException ignored) {
+            // Соединение уже закрыто
+        }
+        return false;
+    }
+
+    /**
+     * Забывает лимиты соединения. Вызывается при его закрытии.
+     */
+    public void onDisconnect(Connection connection) {
+        for (var limiter : byConnection.values())
+            limiter.forget(connection);
+    }
+
+    /**
+     * Удаляет состояние ключей, лимиты которых полностью восстановились.
+     *
+     * @return число удаленных ключей
+     */
+    public int evictIdle() {
+        int evicted = 0;
+        for (var limiter : byConnection.values())
+            evicted += limiter.evictIdle();
+        for (var limiter : byUser.values())
+            evicted += limiter.evictIdle();
+        return evicted;
+    }
+
+    /**
+     * Запускает периодическую очистку {@link #evictIdle()} раз в {@value #SWEEP_INTERVAL_MILLIS} мс.
+     * Это единственный таймер ограничителя, сколько бы ни было пользователей.
+     */
+    public void scheduleSweeps(TimerWheel timer) {
+        timer.schedule(() -> {
+            evictIdle();
+            scheduleSweeps(timer);
+        }, SWEEP_INTERVAL_MILLIS);
+    }
+
+    /**
+     * @return число отклоненных сообщений.
+     */
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+}
@@ -0,0 +1,256 @@
+package server;
+
+import elements.AbstractGroup;
+import utils.CompressedBitmap;
+
+import java.util.HashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Индекс членства в группах на сжатых битовых картах ({@link CompressedBitmap}).
+ *
+ * <p>Для каждой группы хранятся множества участников, администраторов и пользователей,
+ * которым сообщения группы не доставляются (mute), для каждого пользователя - множество
+ * его групп, а также общее множество пользователей в сети. Вопросы вида
+ * "участники группы в сети, кроме заглушивших ее" решаются операциями над
+ * битовыми картами, а не вложенными циклами по спискам.
+ *
+ * <p>Все методы потокобезопасны. Чтения выполняются параллельно, изменения -
+ * под блокировкой записи. Возвращаемые множества - независимые копии.
+ */
+public class MembershipIndex {
+
+    private static final CompressedBitmap EMPTY = new CompressedBitmap();
+
+    private final HashMap<Integer, CompressedBitmap> members = new HashMap<>();
+    private final HashMap<Integer, CompressedBitmap> admins = new HashMap<>();
+    private final HashMap<Integer, CompressedBitmap> muted = new HashMap<>();
+    private final HashMap<Integer, CompressedBitmap> groupsOfUser = new HashMap<>();
+    private final CompressedBitmap online = new CompressedBitmap();
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * Добавляет в индекс участников и администраторов группы.
+     */
+    public void index(AbstractGroup group) {
+        int groupId = group.getIdGroup();
+        lock.writeLock().lock();
+        try {
+            group.getMembers().forEachInt((userId) -> addMemberLocked(groupId, userId));
+            group.getAdmins().forEachInt((userId) -> bitmap(admins, groupId).add(userId));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void addMember(int groupId, int userId) {
+        lock.writeLock().lock();
+        try {
+            addMemberLocked(groupId, userId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void addMemberLocked(int groupId, int userId) {
+        bitmap(members, groupId).add(userId);
+        bitmap(groupsOfUser, userId).add(groupId);
+    }
+
+    /**
+     * Удаляет пользователя из группы, в том числе из ее администраторов и заглушивших.
+     */
+    public void removeMember(int groupId, int userId) {
+        lock.writeLock().lock();
+        try {
+            unset(members, groupId, userId);
+            unset(admins, groupId, userId);
+            unset(muted, groupId, userId);
+            unset(groupsOfUser, userId, groupId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Удаляет группу целиком.
+     */
+    public void removeGroup(int groupId) {
+        lock.writeLock().lock();
+        try {
+            var removed = members.remove(groupId);
+            if (removed != null)
+                removed.forEach((userId) -> unset(groupsOfUser, userId, groupId));
+            admins.remove(groupId);
+            muted.remove(groupId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void setAdmin(int groupId, int userId, boolean isAdmin) {
+        set(admins, groupId, userId, isAdmin);
+    }
+
+    /**
+     * Отмечает, что пользователь заглушил группу и не получает ее сообщения.
+     */
+    public void setMuted(int groupId, int userId, boolean isMuted) {
+        set(muted, groupId, userId, isMuted);
+    }
+
+    public void setOnline(int userId, boolean isOnline) {
+        lock.writeLock().lock();
+        try {
+            if (isOnline)
+                online.add(userId);
+            else
+                online.remove(userId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void set(HashMap<Integer, CompressedBitmap> index, int groupId, int userId, boolean value) {
+        lock.writeLock().lock();
+        try {
+            if (value)
+                bitmap(index, groupId).add(userId);
+            else
+                unset(index, groupId, userId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private static CompressedBitmap bitmap(HashMap<Integer, CompressedBitmap> index, int key) {
+        return index.computeIfAbsent(key, (it) -> new CompressedBitmap());
+    }
+
+    private static void unset(HashMap<Integer, CompressedBitmap> index, int key, int value) {
+        var bitmap = index.get(key);
+        if (bitmap != null && bitmap.remove(value) && bitmap.isEmpty())
+            index.remove(key);
+    }
+
+    public boolean isMember(int groupId, int userId) {
+        lock.readLock().lock();
+        try {
+            return members.getOrDefault(groupId, EMPTY).contains(userId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public boolean isAdmin(int groupId, int userId) {
+        lock.readLock().lock();
+        try {
+            return admins.getOrDefault(groupId, EMPTY).contains(userId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public boolean isOnline(int userId) {
+        lock.readLock().lock();
+        try {
+            return online.contains(userId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return участники группы.
+     */
+    public CompressedBitmap membersOf(int groupId) {
+        lock.readLock().lock();
+        try {
+            return members.getOrDefault(groupId, EMPTY).copy();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return группы, в которых состоит пользователь.
+     */
+    public CompressedBitmap groupsOf(int userId) {
+        lock.readLock().lock();
+        try {
+            return groupsOfUser.getOrDefault(userId, EMPTY).copy();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return группы пользователя среди перечисленных.
+     */
+    public CompressedBitmap groupsOf(int userId, CompressedBitmap groupIds) {
+        lock.readLock().lock();
+        try {
+            return groupsOfUser.getOrDefault(userId, EMPTY).and(groupIds);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return участники группы, находящиеся в сети.
+     */
+    public CompressedBitmap onlineMembersOf(int groupId) {
+        lock.readLock().lock();
+        try {
+            return members.getOrDefault(groupId, EMPTY).and(online);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return пользователи, состоящие в обеих группах.
+     */
+    public CompressedBitmap commonMembers(int firstGroupId, int secondGroupId) {
+        lock.readLock().lock();
+        try {
+            return members.getOrDefault(firstGroupId, EMPTY).and(members.getOrDefault(secondGroupId, EMPTY));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Получатели нового сообщения группы: участники в сети, не заглушившие группу.
+     *
+     * @param senderId отправитель, которому сообщение не доставляется,
+     *                 либо {@link BroadcastEngine#NO_SENDER}
+     */
+    public CompressedBitmap fanOutTargets(int groupId, int senderId) {
+        lock.readLock().lock();
+        try {
+            var targets = members.getOrDefault(groupId, EMPTY)
+                .and(online)
+                .andNot(muted.getOrDefault(groupId, EMPTY));
+            if (senderId != BroadcastEngine.NO_SENDER)
+                targets.remove(senderId);
+            return targets;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return число пользователей в сети.
+     */
+    public int onlineCount() {
+        lock.readLock().lock();
+        try {
+            return online.cardinality();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+}
@@ -0,0 +1,243 @@
+package server;
+
+import cli.CustomCommandProcessor;
+import elements.RequestTypes;
+import network.Connection;
+import server.store.OfflineEntry;
+import server.store.OfflineQueue;
+import utils.Utils;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Доставка уведомлений пользователям, которых не было в сети.
+ *
+ * <p>Новые сообщения групп и адресованные пользователю запросы
+ * ({@link RequestTypes#Friend}, {@link RequestTypes#Join}, {@link RequestTypes#GroupInvitation})
+ * отправляются сразу, если пользователь в сети, и иначе сохраняются в его {@link OfflineQueue}.
+ *
+ * <p>При входе пользователя сервер сразу отправляет первую страницу очереди одной пачкой.
+ * Следующую страницу клиент запрашивает сам, обработав предыдущую, поэтому
+ * выдача недельной очереди не занимает ни поток сервера, ни соединение:
+ * между страницами соединение свободно для обычных сообщений.
+ * Страница удаляется из очереди, только когда клиент запросил следующую,
+ * и при обрыве соединения будет отправлена повторно.
+ * Очередь пользователя с несколькими устройствами выдается одному из них.
+ *
+ * <p>Сообщения клиенту:
+ * <pre>
+ * /inbox message &lt;groupId&gt; &lt;senderId&gt; &lt;millis&gt; "&lt;content&gt;"
+ * /inbox request &lt;Friend|Join|GroupInvitation&gt; &lt;fromId&gt; &lt;groupId&gt; &lt;millis&gt;
+ * /inbox page &lt;more|end&gt;                                  - конец страницы очереди
+ * </pre>
+ * Запросы, пришедшие в сети, отправляются тем же {@code /inbox request} без страницы.
+ *
+ * <p>Запрос клиента:
+ * <pre>
+ * /inbox next   - страница получена, нужна следующая
+ * </pre>
+ */
+public class OfflineDelivery {
+
+    public static final int DEFAULT_PAGE_SIZE = 100;
+
+    /**
+     * Страница, отправленная соединению и еще не подтвержденная клиентом.
+     */
+    private record Cursor(int userId, long nextSeq) {
+    }
+
+    private final OfflineQueue queue;
+    private final SessionRegistry sessions;
+    private final int pageSize;
+
+    private final ConcurrentHashMap<Connection, Cursor> cursors = new ConcurrentHashMap<>();
+    /**
+     * Соединение, которому сейчас выдается очередь пользователя.
+     */
+    private final ConcurrentHashMap<Integer, Connection> drains = new ConcurrentHashMap<>();
+
+    public OfflineDelivery(OfflineQueue queue, SessionRegistry sessions) {
+        this(queue, sessions, DEFAULT_PAGE_SIZE);
+    }
+
+    /**
+     * @param queue    очереди уведомлений
+     * @param sessions активные соединения пользователей
+     * @param pageSize число уведомлений в одной странице
+     */
+    public OfflineDelivery(OfflineQueue queue, SessionRegistry sessions, int pageSize) {
+        if (pageSize < 1)
+            throw new IllegalArgumentException("Page size must be positive.");
+
+        this.queue = queue;
+        this.sessions = sessions;
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * Регистрирует команду запроса следующей страницы в серверном процессоре команд.
+     * <br>Данными контекста команды должно быть соединение, от которого пришел запрос.
+     */
+    public void register(CustomCommandProcessor<Connection> processor) {
+        processor.register("inbox", (it) -> it
+            .description("получение уведомлений, пришедших не в сети")
+            .subcommand("next", (next) -> next
+                .executes((ctx) -> next(ctx.data))
+            )
+        );
+    }
+
+    // ======== Кодирование ========
+
+    public static String encodeMessage(int groupId, int senderId, long timeMillis, String content) {
+        return "/inbox message " + groupId + " " + senderId + " " + timeMillis + " " + Utils.quoteArgument(content);
+    }
+
+    public static String encodeRequest(OfflineEntry.Kind kind, int fromId, int groupId, long timeMillis) {
+        return "/inbox request " + kind + " " + fromId + " " + groupId + " " + timeMillis;
+    }
+
+    static String encode(OfflineEntry entry) {
+        if (entry.kind() == OfflineEntry.Kind.Message)
+            return encodeMessage(entry.groupId(), entry.fromId(), entry.timeMillis(), entry.content());
+        return encodeRequest(entry.kind(), entry.fromId(), entry.groupId(), entry.timeMillis());
+    }
+
+    // ======== Постановка в очередь ========
+
+    /**
+     * Отправляет запрос пользователю, либо сохраняет его, если пользователь не в сети.
+     *
+     * @throws IllegalArgumentException для {@link RequestTypes#Register}
+     */
+    public void sendRequest(int userId, RequestTypes type, int fromId, int groupId) {
+        var entry = OfflineEntry.request(type, fromId, groupId);
+        if (!sendNow(userId, encode(entry)))
+            enqueue(userId, entry);
+    }
+
+    private boolean sendNow(int userId, String message) {
+        boolean isSent = false;
+        for (var connection : sessions.connectionsOf(userId)) {
+            try {
+                connection.sendMessage(message);
+                isSent = true;
+            } catch (IllegalStateException ignored) {
+                // Соединение закрылось во время отправки
+            }
+        }
+        return isSent;
+    }
+
+    /**
+     * Сохраняет новое сообщение группы для получателей, которым его не удалось разослать
+     * (см. {@link BroadcastEngine}). Получатели не проверяются повторно: вошедший после рассылки
+     * получит сообщение из очереди, а не останется без него.
+     *
+     * @param recipients id получателей, не получивших сообщение рассылкой
+     * @param senderId   id отправителя, которому сохранять не нужно, либо {@link BroadcastEngine#NO_SENDER}
+     */
+    public void enqueueMessage(int[] recipients, int groupId, int senderId, String message) {
+        OfflineEntry entry = null;
+        for (int userId : recipients) {
+            if (userId == senderId)
+                continue;
+            if (entry == null)
+                entry = OfflineEntry.message(groupId, senderId, message);
+            enqueue(userId, entry);
+        }
+    }
+
+    private void enqueue(int userId, OfflineEntry entry) {
+        try {
+            queue.enqueue(userId, entry);
+        } catch (RuntimeException e) {
+            System.err.println("Error queueing notification for user " + userId + ": " + e.getMessage());
+            return;
+        }
+
+        // Пользователь мог войти, пока уведомление сохранялось, и уже не проверит очередь
+        if (sessions.isOnline(userId))
+            startOnAnyConnection(userId, null);
+    }
+
+    // ======== Выдача ========
+
+    /**
+     * Начинает выдачу очереди пользователю после входа.
+     * <br>Вызывается после {@link SessionRegistry#bind(int, Connection)}.
+     */
+    public void onConnect(int userId, Connection connection) {
+        if (queue.size(userId) == 0)
+            return;
+        if (drains.putIfAbsent(userId, connection) != null)
+            return;
+        sendPage(userId, connection);
+    }
+
+    /**
+     * Прекращает выдачу очереди отключившемуся соединению. Неподтвержденная страница
+     * остается в очереди и выдается другому устройству пользователя, если оно в сети.
+     * <br>Вызывается после {@link SessionRegistry#unbind(int, Connection)}.
+     */
+    public void onDisconnect(int userId, Connection connection) {
+        cursors.remove(connection);
+        if (drains.remove(userId, connection))
+            startOnAnyConnection(userId, connection);
+    }
+
+    private void startOnAnyConnection(int userId, Connection except) {
+        for (var connection : sessions.connectionsOf(userId)) {
+            if (connection != except && !connection.isClosed()) {
+                onConnect(userId, connection);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Подтверждает отправленную соединению страницу и отправляет следующую.
+     */
+    public void next(Connection connection) {
+        var cursor = cursors.remove(connection);
+        if (cursor == null)
+            return;
+
+        try {
+            queue.ack(cursor.userId, cursor.nextSeq);
+        } catch (RuntimeException e) {
+            System.err.println("Error acknowledging notifications of user " + cursor.userId + ": " + e.getMessage());
+        }
+        sendPage(cursor.userId, connection);
+    }
+
+    private void sendPage(int userId, Connection connection) {
+        OfflineQueue.Page page;
+        try {
+            page = queue.read(userId, pageSize);
+        } catch (RuntimeException e) {
+            System.err.println("Error reading notifications of user " + userId + ": " + e.getMessage());
+            page = null;
+        }
+
+        if (page == null || page.isEmpty()) {
+            drains.remove(userId, connection);
+            // Уведомление могло прийти между чтением и снятием отметки
+            if (page != null && queue.size(userId) > 0)
+                onConnect(userId, connection);
+            return;
+        }
+
+        cursors.put(connection, new Cursor(userId, page.nextSeq()));
+        try {
+            for (var entry : page.entries())
+                connection.sendMessage(encode(entry));
+            connection.sendMessage("/inbox page " + (page.hasMore() ? "more" : "end"));
+        } catch (IllegalStateException e) {
+            // Соединение закрылось: страница останется в очереди до следующего входа
+            cursors.remove(connection);
+            drains.remove(userId, connection);
+        }
+    }
+}
@@ -0,0 +1,376 @@
+package server;
+
+import cli.CustomCommandProcessor;
+import network.Connection;
+import utils.IntSet;
+import utils.Utils;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntFunction;
+
+/**
+ * Присутствие пользователей: в сети, не в сети, печатает в группе.
+ *
+ * <p>Изменения не рассылаются сразу. Они копятся {@value #COALESCE_WINDOW_MILLIS} мс,
+ * при этом повторные изменения одного пользователя схлопываются: если за окно
+ * пользователь отключился и снова подключился, не отправляется ничего. Затем
+ * каждый получатель получает одно сообщение со всеми изменениями, которые ему интересны:
+ * <ul>
+ *     <li> Друзья - о входе и выходе пользователя
+ *     <li> Участники группы в сети - о том, что пользователь печатает в ней
+ * </ul>
+ * Поэтому массовое переподключение 50 тысяч пользователей стоит одного сообщения
+ * на получателя за окно, а не сообщения на каждую пару друзей.
+ *
+ * <p>Вход и выход отмечает {@link SessionRegistry}, которому сервис задается через
+ * {@link SessionRegistry#setPresenceService(PresenceService)}. Изменения получают только
+ * пользователи в сети, поэтому каждое новое соединение получает снимок: кто из друзей
+ * сейчас в сети ({@link #sendSnapshot(int, Connection)}). Снимок отправляется тем же
+ * потоком, что и изменения, и после них, поэтому последующие изменения не могут его обогнать.
+ *
+ * <p>Клиент сообщает, что печатает, запросом {@code /presence typing <groupId>}
+ * (см. {@link #register(CustomCommandProcessor)}).
+ *
+ * <p>Формат сообщения:
+ * <pre>
+ * /presence update "&lt;diff&gt;,&lt;diff&gt;,..."
+ *
+ * diff: &lt;userId&gt;:online | &lt;userId&gt;:offline
+ *     | &lt;userId&gt;:typing:&lt;groupId&gt; | &lt;userId&gt;:stopped:&lt;groupId&gt;
+ * </pre>
+ *
+ * <p>Состояния хранятся в {@value #SHARD_COUNT} сегментах со своими блокировками,
+ * так что одновременные входы разных пользователей почти не конкурируют.
+ * Все методы потокобезопасны.
+ *
+ * <p>После окончания работы с этим классом должен
+ * быть вызван метод {@link #close()}
+ */
+public class PresenceService implements Closeable {
+
+    public static final long COALESCE_WINDOW_MILLIS = 100;
+    public static final long TYPING_TIMEOUT_MILLIS = 5000;
+
+    /**
+     * Наибольшее число изменений в одном сообщении.
+     */
+    static final int MAX_DIFFS_PER_MESSAGE = 1000;
+
+    static final int SHARD_COUNT = 64;
+
+    public enum State {
+        OFFLINE, ONLINE, TYPING
+    }
+
+    /**
+     * Состояние пользователя: текущее и последнее разосланное.
+     */
+    private static final class Entry {
+        State state = State.OFFLINE;
+        int typingGroup = 0;
+        long typingUntil = 0;
+
+        State published = State.OFFLINE;
+        int publishedGroup = 0;
+    }
+
+    private static final class Shard {
+        final HashMap<Integer, Entry> users = new HashMap<>();
+        final IntSet changed = new IntSet();
+        final IntSet typing = new IntSet();
+    }
+
+    private final Shard[] shards = new Shard[SHARD_COUNT];
+    private final IntFunction<IntSet> friendsOf;
+    private final MembershipIndex groups;
+    private final SessionRegistry sessions;
+
+    /**
+     * Соединения, ожидающие снимка присутствия друзей.
+     */
+    private record Snapshot(int userId, Connection connection) {
+    }
+
+    private final ConcurrentLinkedQueue<Snapshot> snapshots = new ConcurrentLinkedQueue<>();
+
+    private final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(
+        Thread.ofPlatform().name("presence-flusher").daemon().factory()
+    );
+    private boolean isScheduled = false;
+
+    /**
+     * @param friendsOf друзья пользователя по id. Может вернуть null, если друзей нет
+     * @param groups    индекс групп: кому рассылать, что пользователь печатает
+     * @param sessions  соединения получателей
+     */
+    public PresenceService(IntFunction<IntSet> friendsOf, MembershipIndex groups, SessionRegistry sessions) {
+        this.friendsOf = friendsOf;
+        this.groups = groups;
+        this.sessions = sessions;
+        for (int i = 0; i < SHARD_COUNT; i++)
+            shards[i] = new Shard();
+    }
+
+    private Shard shardOf(int userId) {
+        int h = userId * 0x9E3779B9;
+        return shards[(h ^ (h >>> 16)) & (SHARD_COUNT - 1)];
+    }
+
+    /**
+     * Регистрирует запрос {@code /presence typing <groupId>} в серверном процессоре команд.
+     * <br>Данными контекста команды должно быть соединение, от которого пришел запрос.
+     * Запросы соединений, не привязанных к пользователю, и запросы о группах,
+     * в которых пользователь не состоит, игнорируются.
+     */
+    public void register(CustomCommandProcessor<Connection> processor) {
+        processor.register("presence", (it) -> it
+            .description("присутствие пользователя")
+            .subcommand("typing", (typing) -> typing
+                .requireArgument("groupId")
+                .executes((ctx) -> {
+                    int userId = sessions.userOf(ctx.data);
+                    if (userId == SessionRegistry.NO_USER)
+                        return;
+                    int groupId;
+                    try {
+                        groupId = Integer.parseInt(ctx.getString("groupId"));
+                    } catch (NumberFormatException e) {
+                        ctx.out.println("Invalid number <groupId>.");
+                        return;
+                    }
+                    // Иначе кто угодно мог бы показывать, что печатает, в чужой группе
+                    if (groups.isMember(groupId, userId))
+                        setTyping(userId, groupId);
+                })
+            )
+        );
+    }
+
+    public void setOnline(int userId) {
+        update(userId, State.ONLINE, 0);
+    }
+
+    public void setOffline(int userId) {
+        update(userId, State.OFFLINE, 0);
+    }
+
+    /**
+     * Отмечает, что пользователь печатает в группе. Если отметка не повторяется
+     * {@value #TYPING_TIMEOUT_MILLIS} мс, пользователь снова считается просто в сети.
+     */
+    public void setTyping(int userId, int groupId) {
+        update(userId, State.TYPING, groupId);
+    }
+
+    private void update(int userId, State state, int groupId) {
+        var shard = shardOf(userId);
+        synchronized (shard) {
+            var entry = shard.users.get(userId);
+            if (entry == null) {
+                if (state == State.OFFLINE)
+                    return;
+                entry = new Entry();
+                shard.users.put(userId, entry);
+            }
+
+            entry.state = state;
+            entry.typingGroup = groupId;
+            if (state == State.TYPING) {
+                entry.typingUntil = System.currentTimeMillis() + TYPING_TIMEOUT_MILLIS;
+                shard.typing.add(userId);
+            } else {
+                shard.typing.remove(userId);
+            }
+            shard.changed.add(userId);
+        }
+        scheduleFlush();
+    }
+
+    /**
+     * Отправляет соединению, сколько бы изменений ни было в пути, кто из друзей
+     * пользователя сейчас в сети. Отправка выполняется потоком рассылки.
+     */
+    public void sendSnapshot(int userId, Connection connection) {
+        snapshots.add(new Snapshot(userId, connection));
+        scheduleFlush();
+    }
+
+    public State getState(int userId) {
+        var shard = shardOf(userId);
+        synchronized (shard) {
+            var entry = shard.users.get(userId);
+            return entry == null ? State.OFFLINE : entry.state;
+        }
+    }
+
+    private void scheduleFlush() {
+        synchronized (flusher) {
+            if (isScheduled)
+                return;
+            isScheduled = true;
+        }
+        try {
+            flusher.schedule(this::flush, COALESCE_WINDOW_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (RuntimeException e) {
+            // Сервис закрыт
+        }
+    }
+
+    /**
+     * Изменение, которое нужно разослать.
+     */
+    private record Change(int userId, State from, int fromGroup, State to, int toGroup) {
+    }
+
+    private void flush() {
+        synchronized (flusher) {
+            isScheduled = false;
+        }
+
+        var changes = new ArrayList<Change>();
+        boolean hasTyping = false;
+        long now = System.currentTimeMillis();
+
+        for (var shard : shards) {
+            synchronized (shard) {
+                expireTyping(shard, now);
+                shard.changed.forEachInt((userId) -> collect(shard, userId, changes));
+                shard.changed.clear();
+                hasTyping |= !shard.typing.isEmpty();
+            }
+        }
+
+        // Кто-то еще печатает - нужно вовремя снять отметку
+        if (hasTyping)
+            scheduleFlush();
+
+        if (!changes.isEmpty())
+            deliver(changes);
+        sendSnapshots();
+    }
+
+    /**
+     * Отправляет ожидающие снимки. Состояние друзей берется разосланное,
+     * поэтому снимок согласован с уже отправленными изменениями.
+     */
+    private void sendSnapshots() {
+        for (Snapshot snapshot; (snapshot = snapshots.poll()) != null; ) {
+            var friends = friendsOf.apply(snapshot.userId);
+            if (friends == null)
+                continue;
+
+            var diffs = new ArrayList<String>();
+            friends.forEachInt((friendId) -> {
+                var shard = shardOf(friendId);
+                synchronized (shard) {
+                    var entry = shard.users.get(friendId);
+                    if (entry != null && entry.published != State.OFFLINE)
+                        diffs.add(friendId + ":online");
+                }
+            });
+            if (!diffs.isEmpty())
+                send(List.of(snapshot.connection), diffs);
+        }
+    }
+
+    private static void expireTyping(Shard shard, long now) {
+        if (shard.typing.isEmpty())
+            return;
+
+        for (int userId : shard.typing.toArray()) {
+            var entry = shard.users.get(userId);
+            if (entry.typingUntil > now)
+                continue;
+
+            entry.state = State.ONLINE;
+            entry.typingGroup = 0;
+            shard.typing.remove(userId);
+            shard.changed.add(userId);
+        }
+    }
+
+    private static void collect(Shard shard, int userId, ArrayList<Change> changes) {
+        var entry = shard.users.get(userId);
+        if (entry == null)
+            return;
+
+        // Изменения, отмененные в пределах окна, не рассылаются
+        if (entry.state != entry.published || entry.typingGroup != entry.publishedGroup)
+            changes.add(new Change(userId, entry.published, entry.publishedGroup, entry.state, entry.typingGroup));
+
+        entry.published = entry.state;
+        entry.publishedGroup = entry.typingGroup;
+        if (entry.state == State.OFFLINE)
+            shard.users.remove(userId);
+    }
+
+    /**
+     * Раскладывает изменения по получателям и отправляет каждому одним сообщением.
+     */
+    private void deliver(ArrayList<Change> changes) {
+        var batches = new HashMap<Integer, ArrayList<String>>();
+
+        for (var change : changes) {
+            int userId = change.userId;
+            boolean wasOnline = change.from != State.OFFLINE;
+            boolean isOnline = change.to != State.OFFLINE;
+
+            if (wasOnline != isOnline) {
+                var friends = friendsOf.apply(userId);
+                if (friends != null) {
+                    var diff = userId + (isOnline ? ":online" : ":offline");
+                    friends.forEachInt((friendId) -> addDiff(batches, friendId, diff));
+                }
+            }
+
+            if (change.from == State.TYPING && (change.to != State.TYPING || change.fromGroup != change.toGroup))
+                addGroupDiff(batches, change.fromGroup, userId, userId + ":stopped:" + change.fromGroup);
+            if (change.to == State.TYPING)
+                addGroupDiff(batches, change.toGroup, userId, userId + ":typing:" + change.toGroup);
+        }
+
+        batches.forEach(this::send);
+    }
+
+    private void addGroupDiff(HashMap<Integer, ArrayList<String>> batches, int groupId, int userId, String diff) {
+        groups.fanOutTargets(groupId, userId).forEach((memberId) -> addDiff(batches, memberId, diff));
+    }
+
+    private void addDiff(HashMap<Integer, ArrayList<String>> batches, int recipientId, String diff) {
+        // Получатели не в сети узнают о друзьях при входе
+        if (!sessions.isOnline(recipientId))
+            return;
+        batches.computeIfAbsent(recipientId, (it) -> new ArrayList<>()).add(diff);
+    }
+
+    private void send(int recipientId, ArrayList<String> diffs) {
+        send(sessions.connectionsOf(recipientId), diffs);
+    }
+
+    private static void send(Iterable<Connection> connections, ArrayList<String> diffs) {
+        for (int from = 0; from < diffs.size(); from += MAX_DIFFS_PER_MESSAGE) {
+            var part = diffs.subList(from, Math.min(diffs.size(), from + MAX_DIFFS_PER_MESSAGE));
+            var message = "/presence update " + Utils.quoteArgument(String.join(",", part));
+
+            for (var connection : connections) {
+                try {
+                    connection.sendMessage(message);
+                } catch (IllegalStateException ignored) {
+                    // Соединение закрылось во время рассылки
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        flusher.shutdownNow();
+    }
+}
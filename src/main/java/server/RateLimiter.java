@@ -0,0 +1,173 @@
+package server;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+/**
+ * Ограничитель частоты запросов по ключу (соединению, пользователю и т.п.)
+ * по алгоритму "ведро токенов".
+ *
+ * <p>Ведро каждого ключа вмещает {@link Limit#burst()} токенов и пополняется
+ * со скоростью {@link Limit#perSecond()}. Вместо числа токенов хранится одно
+ * число - момент, когда ведро станет полным. Пополнение вычисляется лениво
+ * при запросе, поэтому таймеров на ключ нет, а запрос - это одна CAS операция
+ * без блокировок.
+ *
+ * <p>Рядом с ведром хранится момент, до которого отказ ключу уже сообщен
+ * ({@link #claimRejectionNotice(Object, long)}), чтобы поток отклоненных запросов
+ * не порождал такой же поток ответов.
+ *
+ * <p>Ключи с полным ведром ничем не отличаются от отсутствующих и удаляются
+ * {@link #evictIdle()}.
+ */
+public final class RateLimiter<K> {
+
+    /**
+     * @param burst     сколько запросов подряд можно выполнить после простоя
+     * @param perSecond скорость пополнения, запросов в секунду
+     */
+    public record Limit(int burst, double perSecond) {
+
+        public Limit {
+            if (burst < 1)
+                throw new IllegalArgumentException("Burst must be positive.");
+            if (!(perSecond > 0))
+                throw new IllegalArgumentException("Rate must be positive.");
+        }
+
+        long intervalNanos() {
+            return Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / perSecond));
+        }
+    }
+
+    /**
+     * Значение {@link #tryAcquire(Object)}, означающее, что запрос разрешен.
+     */
+    public static final long ALLOWED = 0;
+
+    private final Limit limit;
+    private final long intervalNanos;
+    private final long burstNanos;
+
+    /**
+     * Ведро ключа.
+     */
+    private static final class Bucket {
+
+        private static final AtomicLongFieldUpdater<Bucket> FULL_AT =
+            AtomicLongFieldUpdater.newUpdater(Bucket.class, "fullAt");
+        private static final AtomicLongFieldUpdater<Bucket> NOTICE_UNTIL =
+            AtomicLongFieldUpdater.newUpdater(Bucket.class, "noticeUntil");
+
+        /**
+         * Момент, когда ведро станет полным.
+         */
+        private volatile long fullAt;
+        /**
+         * До какого момента ключу не нужно сообщать об отказе повторно.
+         */
+        private volatile long noticeUntil;
+
+        Bucket(long now) {
+            fullAt = now;
+            noticeUntil = now;
+        }
+    }
+
+    private final ConcurrentHashMap<K, Bucket> fullAt = new ConcurrentHashMap<>();
+
+    public RateLimiter(Limit limit) {
+        this.limit = limit;
+        this.intervalNanos = limit.intervalNanos();
+        this.burstNanos = intervalNanos * limit.burst();
+    }
+
+    public Limit getLimit() {
+        return limit;
+    }
+
+    /**
+     * Забирает токен из ведра ключа.
+     *
+     * @return {@link #ALLOWED}, если токен был, иначе - через сколько миллисекунд
+     *         появится следующий токен (не меньше 1)
+     */
+    public long tryAcquire(K key) {
+        var state = fullAt.computeIfAbsent(key, (it) -> new Bucket(System.nanoTime()));
+
+        while (true) {
+            long now = System.nanoTime();
+            long current = state.fullAt;
+            // Ведро, ставшее полным в прошлом, не переполняется
+            long base = current - now < 0 ? now : current;
+            long next = base + intervalNanos;
+
+            if (next - now > burstNanos)
+                return Math.max(1, TimeUnit.NANOSECONDS.toMillis(next - now - burstNanos + 999_999));
+            if (Bucket.FULL_AT.compareAndSet(state, current, next))
+                return ALLOWED;
+        }
+    }
+
+    /**
+     * Возвращает в ведро ключа токен, взятый {@link #tryAcquire(Object)},
+     * если запрос так и не был выполнен.
+     */
+    public void release(K key) {
+        var state = fullAt.get(key);
+        // Ведро, ставшее полным в прошлом, остается полным: tryAcquire считает от текущего момента
+        if (state != null)
+            Bucket.FULL_AT.addAndGet(state, -intervalNanos);
+    }
+
+    /**
+     * Решает, нужно ли сообщать ключу об очередном отказе. Сообщение отправляется
+     * не чаще одного раза за время ожидания: до появления токена повторные отказы молчат.
+     *
+     * @param retryAfterMillis результат {@link #tryAcquire(Object)} для этого отказа
+     * @return true, если об отказе нужно сообщить
+     */
+    public boolean claimRejectionNotice(K key, long retryAfterMillis) {
+        var state = fullAt.get(key);
+        if (state == null)
+            return true;
+
+        long now = System.nanoTime();
+        long current = state.noticeUntil;
+        if (current - now > 0)
+            return false;
+        return Bucket.NOTICE_UNTIL.compareAndSet(state, current, now + TimeUnit.MILLISECONDS.toNanos(retryAfterMillis));
+    }
+
+    /**
+     * Удаляет ключ, например, при закрытии соединения.
+     */
+    public void forget(K key) {
+        fullAt.remove(key);
+    }
+
+    /**
+     * Удаляет ключи, ведра которых уже полны.
+     *
+     * @return число удаленных ключей
+     */
+    public int evictIdle() {
+        long now = System.nanoTime();
+        int evicted = 0;
+
+        for (var entry : fullAt.entrySet()) {
+            long current = entry.getValue().fullAt;
+            if (current - now <= 0 && fullAt.remove(entry.getKey(), entry.getValue()))
+                evicted++;
+        }
+        return evicted;
+    }
+
+    /**
+     * @return число отслеживаемых ключей.
+     */
+    public int size() {
+        return fullAt.size();
+    }
+}
@@ -0,0 +1,182 @@
+package server;
+
+import elements.AbstractGroup;
+import elements.AbstractUser;
+import utils.IntObjectMap;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+/**
+ * Реестр объектов сервера по id и по уникальному имени:
+ * пользователей ({@link #ofUsers()}) и групп ({@link #ofGroups()}).
+ *
+ * <p>Поиск по id - самая частая операция сервера, поэтому объекты разложены
+ * по {@value #SHARD_COUNT} сегментам, каждый из которых - {@link IntObjectMap}
+ * под своей {@link StampedLock}. Чтение не берет блокировку вовсе: оно проверяет,
+ * не менялся ли сегмент во время поиска, и лишь в этом случае повторяется под блокировкой
+ * чтения. Запись блокирует только свой сегмент. Id при этом не упаковываются в {@link Integer}.
+ *
+ * <p>Имена хранятся в {@link ConcurrentHashMap}, чтение из которой тоже не блокируется.
+ *
+ * <p>Все методы потокобезопасны.
+ *
+ * @param <T> тип объектов
+ */
+public class Registry<T> {
+
+    static final int SHARD_COUNT = 64;
+
+    private static final class Shard<T> {
+        final StampedLock lock = new StampedLock();
+        final IntObjectMap<T> objects = new IntObjectMap<>();
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private final Shard<T>[] shards = new Shard[SHARD_COUNT];
+    private final ConcurrentHashMap<String, T> byName = new ConcurrentHashMap<>();
+    private final AtomicInteger size = new AtomicInteger();
+
+    private final ToIntFunction<T> idOf;
+    private final Function<T, String> nameOf;
+
+    /**
+     * @param idOf   id объекта
+     * @param nameOf уникальное имя объекта. Не должно изменяться, пока объект в реестре
+     */
+    public Registry(ToIntFunction<T> idOf, Function<T, String> nameOf) {
+        this.idOf = idOf;
+        this.nameOf = nameOf;
+        for (int i = 0; i < SHARD_COUNT; i++)
+            shards[i] = new Shard<>();
+    }
+
+    /**
+     * Реестр пользователей по id и {@link AbstractUser#getUserName()}.
+     */
+    public static <U extends AbstractUser> Registry<U> ofUsers() {
+        return new Registry<>(AbstractUser::getUserId, AbstractUser::getUserName);
+    }
+
+    /**
+     * Реестр групп по id и {@link AbstractGroup#getGroupName()}.
+     */
+    public static <G extends AbstractGroup> Registry<G> ofGroups() {
+        return new Registry<>(AbstractGroup::getIdGroup, AbstractGroup::getGroupName);
+    }
+
+    private Shard<T> shardOf(int id) {
+        int h = id * 0x9E3779B9;
+        return shards[(h ^ (h >>> 16)) & (SHARD_COUNT - 1)];
+    }
+
+    /**
+     * @return объект по id, либо null.
+     */
+    public T get(int id) {
+        var shard = shardOf(id);
+        var lock = shard.lock;
+
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            var result = shard.objects.get(id);
+            if (lock.validate(stamp))
+                return result;
+        }
+
+        // Сегмент менялся во время поиска
+        stamp = lock.readLock();
+        try {
+            return shard.objects.get(id);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * @return объект по имени, либо null.
+     */
+    public T find(String name) {
+        return byName.get(name);
+    }
+
+    public boolean contains(int id) {
+        return get(id) != null;
+    }
+
+    /**
+     * Добавляет объект в реестр.
+     *
+     * @throws IllegalStateException если id или имя уже заняты
+     */
+    public void register(T object) throws IllegalStateException {
+        int id = idOf.applyAsInt(object);
+        var name = nameOf.apply(object);
+
+        if (byName.putIfAbsent(name, object) != null)
+            throw new IllegalStateException("Name " + name + " is already taken.");
+
+        var shard = shardOf(id);
+        T previous;
+        long stamp = shard.lock.writeLock();
+        try {
+            previous = shard.objects.putIfAbsent(id, object);
+        } finally {
+            shard.lock.unlockWrite(stamp);
+        }
+
+        if (previous != null) {
+            byName.remove(name, object);
+            throw new IllegalStateException("Id " + id + " is already taken.");
+        }
+        size.incrementAndGet();
+    }
+
+    /**
+     * Удаляет объект из реестра.
+     *
+     * @return удаленный объект, либо null, если его не было
+     */
+    public T remove(int id) {
+        var shard = shardOf(id);
+        T removed;
+        long stamp = shard.lock.writeLock();
+        try {
+            removed = shard.objects.remove(id);
+        } finally {
+            shard.lock.unlockWrite(stamp);
+        }
+
+        if (removed != null) {
+            byName.remove(nameOf.apply(removed), removed);
+            size.decrementAndGet();
+        }
+        return removed;
+    }
+
+    public int size() {
+        return size.get();
+    }
+
+    /**
+     * @return все объекты реестра. Объекты, добавленные или удаленные во время вызова,
+     *     могут как попасть, так и не попасть в результат.
+     */
+    public List<T> values() {
+        var result = new ArrayList<T>(size());
+        for (var shard : shards) {
+            long stamp = shard.lock.readLock();
+            try {
+                shard.objects.forEach((id, object) -> result.add(object));
+            } finally {
+                shard.lock.unlockRead(stamp);
+            }
+        }
+        return result;
+    }
+}
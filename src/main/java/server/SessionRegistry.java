@@ -0,0 +1,116 @@
+package server;
+
+import network.Connection;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Соответствие пользователей и их активных соединений.
+ *
+ * <p>Один пользователь может быть подключен с нескольких устройств,
+ * поэтому ему соответствует множество соединений.
+ * Все методы потокобезопасны.
+ *
+ * <p>Реестр - единственный источник присутствия: пользователь в сети, пока у него
+ * есть хотя бы одно соединение. Если задан {@link MembershipIndex}, в нем отмечается,
+ * кто находится в сети. Если задан {@link PresenceService}, ему сообщается о входе
+ * и выходе, а каждое новое соединение получает снимок присутствия друзей.
+ */
+public class SessionRegistry {
+
+    /**
+     * Значение {@link #userOf(Connection)} для соединения, не привязанного к пользователю.
+     */
+    public static final int NO_USER = -1;
+
+    private final ConcurrentHashMap<Integer, Set<Connection>> sessions = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Connection, Integer> users = new ConcurrentHashMap<>();
+    private final MembershipIndex presence;
+    private volatile PresenceService presenceService = null;
+
+    public SessionRegistry() {
+        this(null);
+    }
+
+    /**
+     * @param presence индекс, в котором отмечаются пользователи в сети, либо null
+     */
+    public SessionRegistry(MembershipIndex presence) {
+        this.presence = presence;
+    }
+
+    /**
+     * Задает рассылку присутствия, либо null, чтобы отключить ее.
+     */
+    public void setPresenceService(PresenceService presenceService) {
+        this.presenceService = presenceService;
+    }
+
+    /**
+     * Привязывает соединение к пользователю после успешного входа.
+     */
+    public void bind(int userId, Connection connection) {
+        var service = presenceService;
+        users.put(connection, userId);
+        sessions.compute(userId, (id, connections) -> {
+            if (connections == null) {
+                connections = ConcurrentHashMap.newKeySet();
+                if (presence != null)
+                    presence.setOnline(id, true);
+                if (service != null)
+                    service.setOnline(id);
+            }
+            connections.add(connection);
+            return connections;
+        });
+
+        // Изменения рассылаются только тем, кто в сети: о текущем состоянии друзей нужно узнать сейчас
+        if (service != null)
+            service.sendSnapshot(userId, connection);
+    }
+
+    /**
+     * Отвязывает соединение от пользователя при выходе или отключении.
+     */
+    public void unbind(int userId, Connection connection) {
+        var service = presenceService;
+        users.remove(connection, userId);
+        sessions.computeIfPresent(userId, (id, connections) -> {
+            connections.remove(connection);
+            if (!connections.isEmpty())
+                return connections;
+
+            if (presence != null)
+                presence.setOnline(id, false);
+            if (service != null)
+                service.setOffline(id);
+            return null;
+        });
+    }
+
+    /**
+     * @return пользователь, к которому привязано соединение, либо {@link #NO_USER}.
+     */
+    public int userOf(Connection connection) {
+        return users.getOrDefault(connection, NO_USER);
+    }
+
+    /**
+     * @return активные соединения пользователя, либо пустое множество, если он не в сети.
+     */
+    public Set<Connection> connectionsOf(int userId) {
+        return sessions.getOrDefault(userId, Set.of());
+    }
+
+    public boolean isOnline(int userId) {
+        return sessions.containsKey(userId);
+    }
+
+    /**
+     * @return число пользователей в сети.
+     */
+    public int onlineCount() {
+        return sessions.size();
+    }
+}
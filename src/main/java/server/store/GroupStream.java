@@ -0,0 +1,162 @@
+package server.store;
+
+import elements.Message;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Журнал сообщений одной группы: упорядоченный набор сегментов,
+ * из которых дописывается только последний.
+ *
+ * <p>Id сообщения совпадает с его порядковым номером в группе.
+ *
+ * <p>Дописывание идет под блокировкой объекта. Чтение берет ее только
+ * для активного сегмента: закрытые сегменты больше не меняются,
+ * а их список заменяется целиком при открытии нового сегмента.
+ *
+ * <p>Закрытый через {@link #close()} журнал можно читать, но не дописывать:
+ * дописывать в группу должен новый экземпляр.
+ */
+final class GroupStream {
+
+    private final Path directory;
+    private final int segmentSize;
+    private volatile LogSegment[] segments;
+
+    private LogSegment active;
+    private volatile int size;
+    private boolean isClosed = false;
+
+    /**
+     * Время последнего обращения по {@link System#nanoTime()}, для вытеснения давно не используемых журналов.
+     */
+    volatile long lastUsed = System.nanoTime();
+
+    GroupStream(Path directory, int segmentSize) throws IOException {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+
+        Files.createDirectories(directory);
+        var segments = new ArrayList<LogSegment>();
+        try (var files = Files.list(directory)) {
+            var logs = files
+                .filter((it) -> it.getFileName().toString().endsWith(".log"))
+                .sorted()
+                .toList();
+
+            for (int i = 0; i < logs.size() - 1; i++)
+                segments.add(LogSegment.openSealed(logs.get(i), LogSegment.parseBaseId(logs.get(i))));
+
+            if (logs.isEmpty())
+                active = LogSegment.openActive(LogSegment.logPath(directory, 0), 0, segmentSize);
+            else {
+                var last = logs.getLast();
+                active = LogSegment.openActive(last, LogSegment.parseBaseId(last), segmentSize);
+            }
+        }
+        segments.add(active);
+        this.segments = segments.toArray(LogSegment[]::new);
+        size = active.baseId + active.count();
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return сохраненное сообщение, либо null, если журнал закрыт
+     */
+    synchronized Message append(int senderId, String content, Timestamp time) throws IOException {
+        if (isClosed)
+            return null;
+
+        var bytes = content.getBytes(StandardCharsets.UTF_8);
+        if (LogSegment.HEADER_SIZE + LogSegment.BODY_PREFIX_SIZE + bytes.length > segmentSize)
+            throw new IllegalArgumentException("Message is too long: " + bytes.length);
+
+        if (!active.append(senderId, time.getTime(), bytes)) {
+            active.seal();
+            active = LogSegment.openActive(LogSegment.logPath(directory, size), size, segmentSize);
+            var grown = Arrays.copyOf(segments, segments.length + 1);
+            grown[grown.length - 1] = active;
+            segments = grown;
+            active.append(senderId, time.getTime(), bytes);
+        }
+
+        int id = size;
+        size = id + 1;
+        return new Message(id, content, senderId, time);
+    }
+
+    /**
+     * Читает до {@code limit} сообщений, начиная с id {@code fromId}.
+     */
+    List<Message> read(int fromId, int limit) throws IOException {
+        var segments = this.segments;
+        int size = this.size;
+        var result = new ArrayList<Message>(Math.max(0, Math.min(limit, size - fromId)));
+        if (fromId < 0 || fromId >= size)
+            return result;
+
+        int first = findSegment(segments, fromId);
+        int id = fromId;
+        for (int i = first; i < segments.length && result.size() < limit; i++) {
+            int read;
+            if (i < segments.length - 1) {
+                read = segments[i].read(id, limit - result.size(), result);
+            } else {
+                // Последний сегмент мог быть активным: в него сейчас дописывают
+                synchronized (this) {
+                    read = segments[i].read(id, limit - result.size(), result);
+                }
+            }
+            id += read;
+        }
+        return result;
+    }
+
+    /**
+     * Двоичный поиск сегмента, содержащего сообщение с данным id.
+     */
+    private static int findSegment(LogSegment[] segments, int id) {
+        int low = 0;
+        int high = segments.length - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (segments[middle].baseId <= id)
+                low = middle;
+            else
+                high = middle - 1;
+        }
+        return low;
+    }
+
+    /**
+     * Сбрасывает на диск активный сегмент. Не блокирует дописывание в группу.
+     */
+    void force() {
+        LogSegment segment;
+        synchronized (this) {
+            segment = active;
+        }
+        segment.force();
+    }
+
+    /**
+     * Запрещает дописывание и сбрасывает активный сегмент на диск.
+     * Дожидается дописывания, начатого до вызова. Повторный вызов ничего не делает.
+     */
+    synchronized void close() {
+        if (isClosed)
+            return;
+        isClosed = true;
+        active.force();
+    }
+}
@@ -0,0 +1,311 @@
+package server.store;
+
+import elements.Message;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.zip.CRC32C;
+
+/**
+ * Один файл журнала сообщений группы.
+ *
+ * <p>Формат записи:
+ * <pre>
+ * +--------------+-------------+---------------+-------------+------------------+
+ * | length (4)   | crc32c (4)  | senderId (4)  | time (8)    | content (UTF-8)  |
+ * +--------------+-------------+---------------+-------------+------------------+
+ * </pre>
+ * {@code length} - длина записи без заголовка, {@code crc32c} считается по ней же.
+ * Нулевая длина означает конец записей: файл заранее расширяется
+ * и отображается в память целиком. Расширение идет удвоением, начиная
+ * с {@value #INITIAL_MAP_SIZE} байт, чтобы журналы маленьких групп
+ * не занимали на диске полный размер сегмента.
+ *
+ * <p>Для быстрого поиска сегмент хранит разреженный индекс: позицию каждой
+ * {@value #INDEX_INTERVAL}-й записи. При закрытии сегмента индекс
+ * сохраняется рядом в файл {@code .idx}, поэтому закрытые сегменты
+ * при запуске не перечитываются.
+ *
+ * <p>Дописывает в сегмент один поток за раз. Закрытый сегмент можно читать
+ * из нескольких потоков одновременно.
+ */
+final class LogSegment {
+
+    static final int HEADER_SIZE = 2 * Integer.BYTES;
+    static final int BODY_PREFIX_SIZE = Integer.BYTES + Long.BYTES;
+    static final int INDEX_INTERVAL = 64;
+    static final int INITIAL_MAP_SIZE = 64 * 1024;
+
+    final int baseId;
+    private final Path path;
+    private final int maxSize;
+
+    private volatile MappedByteBuffer buffer = null;
+    /**
+     * Отображения, замененные при расширении файла и еще не сброшенные на диск.
+     * Их сбрасывает {@link #force()} в фоновом потоке, а не дописывающий поток.
+     */
+    private final ConcurrentLinkedQueue<MappedByteBuffer> retired = new ConcurrentLinkedQueue<>();
+    private volatile boolean isLoaded = false;
+    private int[] index = new int[16];
+    private int indexSize = 0;
+    private int count = 0;
+    private int end = 0;
+    private boolean isActive;
+
+    private LogSegment(Path path, int baseId, int maxSize, boolean isActive) {
+        this.path = path;
+        this.baseId = baseId;
+        this.maxSize = maxSize;
+        this.isActive = isActive;
+    }
+
+    static Path logPath(Path directory, int baseId) {
+        return directory.resolve("%010d.log".formatted(baseId));
+    }
+
+    static int parseBaseId(Path path) {
+        var name = path.getFileName().toString();
+        return Integer.parseInt(name.substring(0, name.length() - ".log".length()));
+    }
+
+    /**
+     * Открывает сегмент для дописывания. Если файл уже существует,
+     * восстанавливает его состояние, отбрасывая недописанную запись.
+     */
+    static LogSegment openActive(Path path, int baseId, int maxSize) throws IOException {
+        var segment = new LogSegment(path, baseId, maxSize, true);
+        segment.map(Math.min(INITIAL_MAP_SIZE, maxSize));
+        segment.recover();
+        segment.isLoaded = true;
+        return segment;
+    }
+
+    /**
+     * Открывает закрытый сегмент. Файл отображается и индекс загружается
+     * только при первом чтении.
+     */
+    static LogSegment openSealed(Path path, int baseId) {
+        return new LogSegment(path, baseId, 0, false);
+    }
+
+    int count() throws IOException {
+        ensureLoaded();
+        return count;
+    }
+
+    /**
+     * Отображает в память первые {@code size} байт файла (или весь файл, если он больше),
+     * при необходимости расширяя его.
+     */
+    private void map(int size) throws IOException {
+        try (var channel = FileChannel.open(path,
+            StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(size, channel.size()));
+        }
+    }
+
+    /**
+     * Дописывает сообщение в конец сегмента.
+     *
+     * @return false, если сообщение не помещается в сегмент
+     */
+    boolean append(int senderId, long time, byte[] content) throws IOException {
+        int length = BODY_PREFIX_SIZE + content.length;
+        int required = end + HEADER_SIZE + length;
+
+        if (required > buffer.capacity()) {
+            if (required > maxSize)
+                return false;
+
+            retired.add(buffer);
+            int size = buffer.capacity();
+            while (size < required)
+                size *= 2;
+            map(Math.min(size, maxSize));
+        }
+
+        if (count % INDEX_INTERVAL == 0)
+            addIndex(end);
+
+        int body = end + HEADER_SIZE;
+        buffer.putInt(body, senderId);
+        buffer.putLong(body + Integer.BYTES, time);
+        buffer.put(body + BODY_PREFIX_SIZE, content);
+        buffer.putInt(end + Integer.BYTES, checksum(body, length));
+        // Длина пишется последней: до этого момента запись не видна при восстановлении
+        buffer.putInt(end, length);
+
+        end = body + length;
+        count++;
+        return true;
+    }
+
+    /**
+     * Читает до {@code limit} сообщений, начиная с {@code fromId}, в список {@code out}.
+     *
+     * @return число прочитанных сообщений
+     */
+    int read(int fromId, int limit, List<Message> out) throws IOException {
+        ensureLoaded();
+
+        int relative = fromId - baseId;
+        if (relative < 0 || relative >= count || limit <= 0)
+            return 0;
+
+        int position = index[relative / INDEX_INTERVAL];
+        for (int skip = relative % INDEX_INTERVAL; skip > 0; skip--)
+            position += HEADER_SIZE + buffer.getInt(position);
+
+        int read = 0;
+        for (int id = fromId; read < limit && id < baseId + count; id++, read++) {
+            int length = buffer.getInt(position);
+            int body = position + HEADER_SIZE;
+
+            var content = new byte[length - BODY_PREFIX_SIZE];
+            buffer.get(body + BODY_PREFIX_SIZE, content);
+            out.add(new Message(
+                id,
+                new String(content, StandardCharsets.UTF_8),
+                buffer.getInt(body),
+                new Timestamp(buffer.getLong(body + Integer.BYTES))
+            ));
+            position = body + length;
+        }
+        return read;
+    }
+
+    /**
+     * Сбрасывает изменения на диск.
+     */
+    void force() {
+        forceRetired();
+        if (isActive)
+            buffer.force();
+    }
+
+    private void forceRetired() {
+        for (MappedByteBuffer old; (old = retired.poll()) != null; )
+            old.force();
+    }
+
+    /**
+     * Закрывает сегмент для записи и сохраняет его индекс.
+     */
+    void seal() throws IOException {
+        forceRetired();
+        buffer.force();
+        isActive = false;
+
+        var data = ByteBuffer.allocate(3 * Integer.BYTES + indexSize * Integer.BYTES)
+            .putInt(count)
+            .putInt(end)
+            .putInt(indexSize);
+        for (int i = 0; i < indexSize; i++)
+            data.putInt(index[i]);
+
+        var indexPath = indexPath();
+        var temporary = indexPath.resolveSibling(indexPath.getFileName() + ".tmp");
+        try (var channel = FileChannel.open(temporary,
+            StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            channel.write(data.flip());
+            channel.force(true);
+        }
+        Files.move(temporary, indexPath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private Path indexPath() {
+        var name = path.getFileName().toString();
+        return path.resolveSibling(name.substring(0, name.length() - ".log".length()) + ".idx");
+    }
+
+    /**
+     * Загружает закрытый сегмент при первом обращении.
+     * Флаг {@code isLoaded} выставляется последним, поэтому читатель,
+     * увидевший его, видит и индекс.
+     */
+    private void ensureLoaded() throws IOException {
+        if (isLoaded)
+            return;
+
+        synchronized (this) {
+            if (isLoaded)
+                return;
+            load();
+            isLoaded = true;
+        }
+    }
+
+    private void load() throws IOException {
+        try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        var indexPath = indexPath();
+        if (!Files.exists(indexPath)) {
+            recover();
+            return;
+        }
+
+        var data = ByteBuffer.wrap(Files.readAllBytes(indexPath));
+        count = data.getInt();
+        end = data.getInt();
+        indexSize = data.getInt();
+        index = new int[Math.max(indexSize, 1)];
+        for (int i = 0; i < indexSize; i++)
+            index[i] = data.getInt();
+    }
+
+    /**
+     * Перечитывает сегмент с начала, строит индекс и находит конец последней целой записи.
+     */
+    private void recover() {
+        int capacity = buffer.capacity();
+        int position = 0;
+
+        while (position + HEADER_SIZE <= capacity) {
+            int length = buffer.getInt(position);
+            int body = position + HEADER_SIZE;
+
+            if (length < BODY_PREFIX_SIZE || body + length > capacity)
+                break;
+            if (buffer.getInt(position + Integer.BYTES) != checksum(body, length))
+                break;
+
+            if (count % INDEX_INTERVAL == 0)
+                addIndex(position);
+            position = body + length;
+            count++;
+        }
+        end = position;
+
+        // Остатки недописанной записи не должны "ожить" при следующем восстановлении
+        if (isActive && end + Integer.BYTES <= capacity && buffer.getInt(end) != 0) {
+            for (int i = end; i < capacity; i++)
+                buffer.put(i, (byte) 0);
+        }
+    }
+
+    private void addIndex(int position) {
+        if (indexSize == index.length)
+            index = Arrays.copyOf(index, indexSize * 2);
+        index[indexSize++] = position;
+    }
+
+    private int checksum(int position, int length) {
+        var crc = new CRC32C();
+        crc.update(buffer.slice(position, length));
+        return (int) crc.getValue();
+    }
+}
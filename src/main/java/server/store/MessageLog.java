@@ -0,0 +1,264 @@
+package server.store;
+
+import elements.Message;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Постоянное хранилище истории сообщений групп.
+ *
+ * <p>Каждая группа хранится отдельным журналом в папке {@code <root>/<groupId>/},
+ * состоящим из сегментов фиксированного размера, которые пишутся через
+ * отображение файла в память. Запись не ждет диска: изменения сбрасываются
+ * фоновым потоком пачками раз в {@code syncIntervalMillis} миллисекунд.
+ *
+ * <p>Id сообщений назначаются хранилищем и идут по порядку внутри группы, начиная с 0.
+ * Чтение последних сообщений использует разреженный индекс сегментов
+ * и не перечитывает журнал целиком. Чтение группы, в которую ничего не писали,
+ * возвращает пустой результат и не создает для нее файлов.
+ *
+ * <p>Одновременно открыто не более {@code maxOpenStreams} журналов групп:
+ * при превышении закрывается тот, к которому дольше всего не обращались.
+ *
+ * <p>После окончания работы с этим классом должен
+ * быть вызван метод {@link #close()}
+ */
+public class MessageLog implements Closeable {
+
+    public static final int DEFAULT_SEGMENT_SIZE = 8 * 1024 * 1024;
+    public static final long DEFAULT_SYNC_INTERVAL_MILLIS = 50;
+    public static final int DEFAULT_MAX_OPEN_STREAMS = 1024;
+
+    private final Path root;
+    private final int segmentSize;
+    private final int maxOpenStreams;
+    private final ConcurrentHashMap<Integer, GroupStream> streams = new ConcurrentHashMap<>();
+    /**
+     * Вытесненные журналы, которые еще могут дописываться. Новый журнал группы
+     * открывается только после закрытия вытесненного, иначе в один файл писали бы двое.
+     */
+    private final ConcurrentHashMap<Integer, GroupStream> evicted = new ConcurrentHashMap<>();
+    private final Set<GroupStream> dirty = ConcurrentHashMap.newKeySet();
+    private final ScheduledExecutorService syncer;
+
+    private volatile boolean isClosed = false;
+
+    public MessageLog(Path root) {
+        this(root, DEFAULT_SEGMENT_SIZE, DEFAULT_SYNC_INTERVAL_MILLIS);
+    }
+
+    /**
+     * @param root               папка хранилища
+     * @param segmentSize        размер одного файла журнала в байтах
+     * @param syncIntervalMillis период сброса изменений на диск
+     */
+    public MessageLog(Path root, int segmentSize, long syncIntervalMillis) {
+        this(root, segmentSize, syncIntervalMillis, DEFAULT_MAX_OPEN_STREAMS);
+    }
+
+    /**
+     * @param root               папка хранилища
+     * @param segmentSize        размер одного файла журнала в байтах
+     * @param syncIntervalMillis период сброса изменений на диск
+     * @param maxOpenStreams     сколько журналов групп держать открытыми одновременно
+     */
+    public MessageLog(Path root, int segmentSize, long syncIntervalMillis, int maxOpenStreams) {
+        if (maxOpenStreams < 1)
+            throw new IllegalArgumentException("At least one stream must be allowed to stay open.");
+
+        this.root = root;
+        this.segmentSize = segmentSize;
+        this.maxOpenStreams = maxOpenStreams;
+        this.syncer = Executors.newSingleThreadScheduledExecutor((runnable) -> {
+            var thread = new Thread(runnable, "message-log-sync");
+            thread.setDaemon(true);
+            return thread;
+        });
+        syncer.scheduleWithFixedDelay(this::sync, syncIntervalMillis, syncIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void ensureOpen() throws IllegalStateException {
+        if (isClosed)
+            throw new IllegalStateException("Message log is closed");
+    }
+
+    private Path groupPath(int groupId) {
+        return root.resolve(Integer.toString(groupId));
+    }
+
+    /**
+     * Возвращает журнал группы, открывая его при необходимости.
+     *
+     * @param create создать ли журнал, если у группы еще нет истории
+     * @return журнал группы, либо null, если истории нет и {@code create == false}
+     */
+    private GroupStream stream(int groupId, boolean create) {
+        var stream = streams.get(groupId);
+        if (stream == null) {
+            if (!create && !Files.isDirectory(groupPath(groupId)))
+                return null;
+
+            stream = streams.computeIfAbsent(groupId, (id) -> {
+                var previous = evicted.remove(id);
+                if (previous != null)
+                    previous.close();
+                try {
+                    return new GroupStream(groupPath(id), segmentSize);
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Error opening history of group " + id, e);
+                }
+            });
+            if (streams.size() > maxOpenStreams)
+                evictLeastRecentlyUsed();
+        }
+        stream.lastUsed = System.nanoTime();
+        return stream;
+    }
+
+    /**
+     * Закрывает журналы, к которым дольше всего не обращались, пока их не станет
+     * не больше {@code maxOpenStreams}. Поиск линейный, но выполняется лишь
+     * при открытии журнала, которое и так обходится в несколько обращений к диску.
+     */
+    private void evictLeastRecentlyUsed() {
+        while (streams.size() > maxOpenStreams) {
+            int eldestId = 0;
+            GroupStream eldest = null;
+            for (var entry : streams.entrySet()) {
+                var candidate = entry.getValue();
+                if (eldest == null || candidate.lastUsed < eldest.lastUsed) {
+                    eldestId = entry.getKey();
+                    eldest = candidate;
+                }
+            }
+            if (eldest == null)
+                return;
+
+            // Сначала в evicted: открывающий группу заново должен увидеть, что ждать
+            evicted.put(eldestId, eldest);
+            if (streams.remove(eldestId, eldest)) {
+                dirty.remove(eldest);
+                eldest.close();
+            }
+            evicted.remove(eldestId, eldest);
+        }
+    }
+
+    /**
+     * Сохраняет новое сообщение группы с текущим временем.
+     *
+     * @return сохраненное сообщение с назначенным id
+     * @throws IllegalStateException если хранилище закрыто
+     * @throws UncheckedIOException  при ошибке записи на диск
+     */
+    public Message append(int groupId, int senderId, String content) {
+        return append(groupId, senderId, content, new Timestamp(System.currentTimeMillis()));
+    }
+
+    /**
+     * Сохраняет новое сообщение группы.
+     *
+     * @return сохраненное сообщение с назначенным id
+     * @throws IllegalStateException если хранилище закрыто
+     * @throws UncheckedIOException  при ошибке записи на диск
+     */
+    public Message append(int groupId, int senderId, String content, Timestamp time) {
+        ensureOpen();
+        try {
+            while (true) {
+                var stream = stream(groupId, true);
+                var message = stream.append(senderId, content, time);
+                // Журнал вытеснили между поиском и записью - пишем в новый
+                if (message == null)
+                    continue;
+                dirty.add(stream);
+                return message;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return число сообщений группы. Оно же - id следующего сообщения.
+     */
+    public int size(int groupId) {
+        ensureOpen();
+        var stream = stream(groupId, false);
+        return stream == null ? 0 : stream.size();
+    }
+
+    /**
+     * Читает до {@code count} сообщений группы, начиная с сообщения {@code fromId}, по порядку.
+     *
+     * @throws UncheckedIOException при ошибке чтения с диска
+     */
+    public List<Message> read(int groupId, int fromId, int count) {
+        ensureOpen();
+        var stream = stream(groupId, false);
+        if (stream == null)
+            return List.of();
+        try {
+            return stream.read(fromId, count);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Читает последние {@code count} сообщений группы, по порядку.
+     *
+     * @throws UncheckedIOException при ошибке чтения с диска
+     */
+    public List<Message> readLast(int groupId, int count) {
+        ensureOpen();
+        var stream = stream(groupId, false);
+        if (stream == null)
+            return List.of();
+        try {
+            return stream.read(Math.max(0, stream.size() - count), count);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Сбрасывает на диск все изменения, накопленные с прошлого вызова.
+     */
+    public void sync() {
+        for (var stream : dirty) {
+            dirty.remove(stream);
+            stream.force();
+        }
+    }
+
+    /**
+     * Сбрасывает все изменения на диск и останавливает фоновый поток.
+     * <br>Данный метод безопасен, и может быть вызван, даже если хранилище закрыто.
+     */
+    @Override
+    public void close() {
+        if (isClosed)
+            return;
+        isClosed = true;
+
+        syncer.shutdown();
+        try {
+            syncer.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        sync();
+    }
+}
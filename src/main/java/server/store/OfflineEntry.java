@@ -0,0 +1,53 @@
+package server.store;
+
+import elements.RequestTypes;
+
+/**
+ * Уведомление, ожидающее пользователя в {@link OfflineQueue}.
+ *
+ * @param kind       тип уведомления
+ * @param fromId     id отправителя сообщения или автора запроса
+ * @param groupId    id группы, к которой относится уведомление, либо 0
+ * @param timeMillis время создания уведомления
+ * @param content    текст сообщения. Для запросов - пустая строка
+ */
+public record OfflineEntry(Kind kind, int fromId, int groupId, long timeMillis, String content) {
+
+    public enum Kind {
+        Message,
+        Friend,
+        Join,
+        GroupInvitation;
+
+        /**
+         * @throws IllegalArgumentException для запросов, которые не доставляются пользователям
+         */
+        public static Kind of(RequestTypes type) throws IllegalArgumentException {
+            return switch (type) {
+                case Friend -> Friend;
+                case Join -> Join;
+                case GroupInvitation -> GroupInvitation;
+                default -> throw new IllegalArgumentException("Request " + type + " is not queued for users");
+            };
+        }
+    }
+
+    public OfflineEntry {
+        if (kind == null || content == null)
+            throw new IllegalArgumentException("Kind and content must not be null");
+    }
+
+    /**
+     * Новое сообщение группы, пришедшее, пока пользователь не в сети.
+     */
+    public static OfflineEntry message(int groupId, int senderId, String content) {
+        return new OfflineEntry(Kind.Message, senderId, groupId, System.currentTimeMillis(), content);
+    }
+
+    /**
+     * Запрос, адресованный пользователю: в друзья, на вступление в группу или приглашение в нее.
+     */
+    public static OfflineEntry request(RequestTypes type, int fromId, int groupId) {
+        return new OfflineEntry(Kind.of(type), fromId, groupId, System.currentTimeMillis(), "");
+    }
+}
@@ -0,0 +1,346 @@
+package server.store;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Постоянные очереди уведомлений для пользователей не в сети.
+ *
+ * <p>Очередь каждого пользователя хранится отдельным файлом
+ * {@code <root>/<последний байт id>/<userId>.queue}. Файл существует, только
+ * пока очередь не пуста, поэтому миллионы пользователей без уведомлений
+ * не занимают ни места на диске, ни открытых файлов.
+ *
+ * <p>Очередь ограничена {@code maxEntries} записями и {@code maxBytes} байтами:
+ * при переполнении отбрасываются самые старые записи. Поэтому пользователь,
+ * вернувшийся через неделю, получит последние уведомления, а не все,
+ * и ни его файл, ни его выдача не растут без предела.
+ *
+ * <p>Записи читаются страницами с начала очереди и удаляются, только когда
+ * получатель подтвердит страницу (см. {@link #ack(int, long)}), так что уведомления
+ * не теряются, если соединение оборвется во время выдачи. Как и в {@link MessageLog},
+ * запись не ждет диска: изменения сбрасываются фоновым потоком раз в {@code syncIntervalMillis}.
+ *
+ * <p>Одновременно открыто не более {@value #MAX_OPEN_QUEUES} файлов, давно не использованные закрываются.
+ * Все методы потокобезопасны.
+ *
+ * <p>После окончания работы с этим классом должен
+ * быть вызван метод {@link #close()}
+ */
+public class OfflineQueue implements Closeable {
+
+    public static final int DEFAULT_MAX_ENTRIES = 1000;
+    public static final int DEFAULT_MAX_BYTES = 1024 * 1024;
+    public static final long DEFAULT_SYNC_INTERVAL_MILLIS = 50;
+
+    static final int MAX_OPEN_QUEUES = 256;
+
+    /**
+     * Страница записей очереди.
+     *
+     * @param entries записи от старых к новым
+     * @param nextSeq номер записи, следующей за страницей. Передается в {@link #ack(int, long)}
+     * @param hasMore есть ли в очереди записи после страницы
+     */
+    public record Page(List<OfflineEntry> entries, long nextSeq, boolean hasMore) {
+
+        static final Page EMPTY = new Page(List.of(), 0, false);
+
+        public boolean isEmpty() {
+            return entries.isEmpty();
+        }
+    }
+
+    private final Path root;
+    private final int maxEntries;
+    private final int maxBytes;
+
+    /**
+     * Открытые очереди в порядке использования. Под его блокировкой не выполняется
+     * работа с файлами и не берутся блокировки очередей, кроме неблокирующей попытки при вытеснении.
+     */
+    private final LinkedHashMap<Integer, UserQueue> open = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, UserQueue> eldest) {
+            if (size() <= MAX_OPEN_QUEUES)
+                return false;
+            var queue = eldest.getValue();
+            // Очередь, с которой сейчас работают, вытесним позже
+            if (!queue.lock.tryLock())
+                return false;
+            // Файл закроет вытеснивший поток, когда отпустит блокировку хранилища.
+            // До тех пор очередь остается заблокированной, чтобы с ней никто не работал
+            evicted.add(queue);
+            return true;
+        }
+    };
+
+    /**
+     * Вытесненные очереди, которые нужно закрыть. Заполняется под блокировкой {@link #open}.
+     */
+    private final ArrayList<UserQueue> evicted = new ArrayList<>();
+
+    private final Set<UserQueue> dirty = ConcurrentHashMap.newKeySet();
+    private final ScheduledExecutorService syncer;
+    private final AtomicLong dropped = new AtomicLong();
+
+    private volatile boolean isClosed = false;
+
+    public OfflineQueue(Path root) {
+        this(root, DEFAULT_MAX_ENTRIES, DEFAULT_MAX_BYTES, DEFAULT_SYNC_INTERVAL_MILLIS);
+    }
+
+    /**
+     * @param root               папка хранилища
+     * @param maxEntries         наибольшее число записей в очереди одного пользователя
+     * @param maxBytes           наибольший размер очереди одного пользователя в байтах
+     * @param syncIntervalMillis период сброса изменений на диск
+     */
+    public OfflineQueue(Path root, int maxEntries, int maxBytes, long syncIntervalMillis) {
+        if (maxEntries < 1 || maxBytes < 1)
+            throw new IllegalArgumentException("Queue limits must be positive.");
+
+        this.root = root;
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+        this.syncer = Executors.newSingleThreadScheduledExecutor((runnable) -> {
+            var thread = new Thread(runnable, "offline-queue-sync");
+            thread.setDaemon(true);
+            return thread;
+        });
+        syncer.scheduleWithFixedDelay(this::sync, syncIntervalMillis, syncIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void ensureOpen() throws IllegalStateException {
+        if (isClosed)
+            throw new IllegalStateException("Offline queue is closed");
+    }
+
+    private Path pathOf(int userId) {
+        return root.resolve("%02x".formatted(userId & 0xFF)).resolve(userId + ".queue");
+    }
+
+    @FunctionalInterface
+    private interface QueueAction<T> {
+        T apply(UserQueue queue) throws IOException;
+    }
+
+    /**
+     * Выполняет действие над очередью пользователя под ее блокировкой.
+     * <br>Файл открывается уже под блокировкой очереди, поэтому открытие
+     * и восстановление одной очереди не задерживают работу с остальными.
+     *
+     * @param create создать очередь, если ее нет. Иначе для пустой очереди возвращается {@code absent}
+     */
+    private <T> T withQueue(int userId, boolean create, T absent, QueueAction<T> action) {
+        ensureOpen();
+        while (true) {
+            UserQueue queue;
+            synchronized (open) {
+                queue = open.get(userId);
+            }
+            if (queue == null) {
+                var path = pathOf(userId);
+                if (!create && UserQueue.isAbsent(path))
+                    return absent;
+                queue = putIfAbsent(userId, new UserQueue(path));
+            }
+
+            queue.lock.lock();
+            try {
+                try {
+                    queue.open(create);
+                } catch (NoSuchFileException e) {
+                    // Очередь опустела и удалена после проверки: файл без записей не создается
+                    forget(userId, queue);
+                    return absent;
+                }
+                // Очередь успели вытеснить или удалить - открываем заново
+                if (!queue.isClosed())
+                    return action.apply(queue);
+            } catch (IOException e) {
+                if (queue.isClosed())
+                    forget(userId, queue);
+                throw new UncheckedIOException("Error accessing offline queue of user " + userId, e);
+            } finally {
+                queue.lock.unlock();
+            }
+            forget(userId, queue);
+        }
+    }
+
+    private void forget(int userId, UserQueue queue) {
+        synchronized (open) {
+            open.remove(userId, queue);
+        }
+    }
+
+    /**
+     * Добавляет еще не открытую очередь в список открытых и закрывает вытесненные ею.
+     *
+     * @return очередь пользователя из списка: добавленная, либо добавленная ранее другим потоком
+     */
+    private UserQueue putIfAbsent(int userId, UserQueue queue) {
+        List<UserQueue> toClose;
+        synchronized (open) {
+            var current = open.putIfAbsent(userId, queue);
+            if (current != null)
+                return current;
+            if (evicted.isEmpty())
+                return queue;
+            toClose = List.copyOf(evicted);
+            evicted.clear();
+        }
+
+        for (var old : toClose) {
+            try {
+                old.close();
+            } catch (IOException e) {
+                System.err.println("Error closing offline queue: " + e.getMessage());
+            } finally {
+                old.lock.unlock();
+            }
+        }
+        return queue;
+    }
+
+    /**
+     * Добавляет уведомление в очередь пользователя. Если очередь переполнена,
+     * из нее удаляются самые старые записи.
+     *
+     * @throws IllegalArgumentException если запись больше {@code maxBytes}
+     * @throws IllegalStateException    если хранилище закрыто
+     * @throws UncheckedIOException     при ошибке записи на диск
+     */
+    public void enqueue(int userId, OfflineEntry entry) {
+        int size = UserQueue.recordSize(entry);
+        if (size > maxBytes)
+            throw new IllegalArgumentException("Offline entry is too long: " + size + " bytes");
+
+        withQueue(userId, true, null, (queue) -> {
+            queue.append(entry);
+
+            int excess = 0;
+            while (queue.size() > maxEntries || queue.liveBytes() > maxBytes)
+                excess += queue.removeBefore(queue.headSeq() + 1);
+            if (excess > 0)
+                dropped.addAndGet(excess);
+
+            dirty.add(queue);
+            return null;
+        });
+    }
+
+    /**
+     * @return число записей в очереди пользователя.
+     */
+    public int size(int userId) {
+        return withQueue(userId, false, 0, UserQueue::size);
+    }
+
+    /**
+     * Читает до {@code limit} самых старых записей очереди, не удаляя их.
+     *
+     * @throws UncheckedIOException при ошибке чтения с диска
+     */
+    public Page read(int userId, int limit) {
+        return withQueue(userId, false, Page.EMPTY, (queue) -> {
+            var entries = new ArrayList<OfflineEntry>(Math.min(limit, queue.size()));
+            queue.read(limit, entries);
+            long nextSeq = queue.headSeq() + entries.size();
+            return new Page(entries, nextSeq, nextSeq < queue.tailSeq());
+        });
+    }
+
+    /**
+     * Удаляет из очереди записи, полученные пользователем: все записи до {@code nextSeq}
+     * прочитанной страницы. Опустевшая очередь удаляется с диска.
+     *
+     * @return число удаленных записей
+     * @throws UncheckedIOException при ошибке записи на диск
+     */
+    public int ack(int userId, long nextSeq) {
+        return withQueue(userId, false, 0, (queue) -> {
+            int removed = queue.removeBefore(nextSeq);
+            if (queue.size() == 0) {
+                dirty.remove(queue);
+                queue.delete();
+            } else if (removed > 0) {
+                dirty.add(queue);
+            }
+            return removed;
+        });
+    }
+
+    /**
+     * @return число уведомлений, отброшенных из-за переполнения очередей.
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * Сбрасывает на диск все изменения, накопленные с прошлого вызова.
+     */
+    public void sync() {
+        for (var queue : dirty) {
+            dirty.remove(queue);
+            queue.lock.lock();
+            try {
+                queue.force();
+            } catch (IOException e) {
+                System.err.println("Error syncing offline queue: " + e.getMessage());
+            } finally {
+                queue.lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Сбрасывает все изменения на диск, закрывает файлы и останавливает фоновый поток.
+     * <br>Данный метод безопасен, и может быть вызван, даже если хранилище закрыто.
+     */
+    @Override
+    public void close() {
+        if (isClosed)
+            return;
+        isClosed = true;
+
+        syncer.shutdown();
+        try {
+            syncer.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        List<UserQueue> queues;
+        synchronized (open) {
+            queues = List.copyOf(open.values());
+            open.clear();
+        }
+        for (var queue : queues) {
+            queue.lock.lock();
+            try {
+                queue.close();
+            } catch (IOException e) {
+                System.err.println("Error closing offline queue: " + e.getMessage());
+            } finally {
+                queue.lock.unlock();
+            }
+        }
+        dirty.clear();
+    }
+}
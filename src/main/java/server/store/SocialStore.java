@@ -0,0 +1,753 @@
+package server.store;
+
+import elements.AbstractGroup;
+import elements.AbstractUser;
+import elements.GroupTypes;
+import elements.SocialJournal;
+import utils.IntObjectMap;
+import utils.IntSet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Постоянное хранилище пользователей, их друзей и групп с отложенной записью.
+ *
+ * <p>Изменения, о которых сообщают объекты через {@link SocialJournal},
+ * только добавляются в очередь в памяти и не ждут диска. Фоновый поток раз
+ * в {@code flushIntervalMillis} забирает накопленные изменения и дописывает их
+ * одной пачкой в журнал {@code journal-<N>.log}, после чего сбрасывает его на диск.
+ * Каждая пачка защищена контрольной суммой, поэтому недописанная при сбое пачка
+ * при запуске отбрасывается, а не портит данные.
+ *
+ * <p>Когда журнал вырастает больше {@code snapshotThreshold} байт, хранилище
+ * записывает полный снимок состояния {@code snapshot-<N>.bin} и удаляет старые журналы.
+ * Снимок пишется во временный файл и атомарно переименовывается, так что на диске
+ * всегда есть целый снимок и журналы, которые нужно проиграть поверх него:
+ * снимок N содержит все изменения журналов с номерами меньше N.
+ *
+ * <p>Запуск читает снимок одним последовательным проходом и проигрывает журналы,
+ * которые не длиннее {@code snapshotThreshold}, поэтому его время определяется
+ * размером данных, а не историей изменений.
+ *
+ * <p>Изменения, сделанные за последние {@code flushIntervalMillis} перед сбоем, теряются.
+ *
+ * <p>После окончания работы с этим классом должен
+ * быть вызван метод {@link #close()}
+ */
+public class SocialStore implements SocialJournal, Closeable {
+
+    public static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 100;
+    public static final long DEFAULT_SNAPSHOT_THRESHOLD = 64L * 1024 * 1024;
+
+    static final int SNAPSHOT_MAGIC = 0x4E4D5853; // "NMXS"
+    static final int SNAPSHOT_VERSION = 1;
+    static final int FRAME_HEADER_SIZE = 2 * Integer.BYTES;
+
+    private static final int IO_BUFFER_SIZE = 1024 * 1024;
+
+    /**
+     * Наибольшее число изменений в одной пачке журнала.
+     */
+    static final int MAX_BATCH_SIZE = 64 * 1024;
+
+    // ======== Сохраненное состояние ========
+
+    /**
+     * Пользователь, восстановленный из хранилища.
+     */
+    public record StoredUser(int id, String userName, String name, String password, int[] friends) {
+    }
+
+    /**
+     * Группа, восстановленная из хранилища.
+     *
+     * @param type тип группы, либо null, если он не был задан
+     */
+    public record StoredGroup(
+        int id, String groupName, String name, GroupTypes type, int owner, int[] members, int[] admins
+    ) {
+    }
+
+    private static final class UserState {
+        String userName;
+        String name;
+        String password;
+        IntSet friends = new IntSet(0);
+    }
+
+    private static final class GroupState {
+        String groupName;
+        String name;
+        GroupTypes type;
+        int owner;
+        IntSet members = new IntSet(0);
+        IntSet admins = new IntSet(0);
+    }
+
+    // ======== Изменения ========
+
+    private static final byte USER = 1;
+    private static final byte FRIEND_ADDED = 2;
+    private static final byte GROUP = 3;
+    private static final byte MEMBER_ADDED = 4;
+    private static final byte MEMBER_REMOVED = 5;
+    private static final byte ADMIN_ADDED = 6;
+
+    private sealed interface Change {
+    }
+
+    private record UserChange(int id, String userName, String name, String password) implements Change {
+    }
+
+    private record GroupChange(int id, String groupName, String name, GroupTypes type, int owner) implements Change {
+    }
+
+    /**
+     * Изменение связи двух объектов: дружбы, участия в группе или прав администратора.
+     */
+    private record LinkChange(byte kind, int id, int otherId) implements Change {
+    }
+
+    private static final GroupTypes[] GROUP_TYPES = GroupTypes.values();
+
+    private final Path root;
+    private final long snapshotThreshold;
+
+    private final ConcurrentLinkedQueue<Change> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pendingCount = new AtomicInteger();
+
+    /**
+     * Состояние, уже записанное в журнал. Изменяется только под блокировкой this.
+     */
+    private final IntObjectMap<UserState> users = new IntObjectMap<>();
+    private final IntObjectMap<GroupState> groups = new IntObjectMap<>();
+
+    /**
+     * Изменения, забранные из очереди, но еще не записанные: при ошибке записи они повторяются.
+     */
+    private final ArrayList<Change> batch = new ArrayList<>();
+
+    private FileChannel journal;
+    private long generation;
+    private long journalSize = 0;
+
+    private final ScheduledExecutorService flusher;
+    private volatile boolean isClosed = false;
+
+    public SocialStore(Path root) throws IOException {
+        this(root, DEFAULT_FLUSH_INTERVAL_MILLIS, DEFAULT_SNAPSHOT_THRESHOLD);
+    }
+
+    /**
+     * Открывает хранилище, восстанавливая состояние из последнего снимка и журналов.
+     *
+     * @param root                папка хранилища
+     * @param flushIntervalMillis период записи накопленных изменений на диск
+     * @param snapshotThreshold   размер журнала в байтах, после которого записывается снимок
+     * @throws IOException при ошибке чтения или поврежденном снимке
+     */
+    public SocialStore(Path root, long flushIntervalMillis, long snapshotThreshold) throws IOException {
+        this.root = root;
+        this.snapshotThreshold = snapshotThreshold;
+
+        Files.createDirectories(root);
+        recover();
+
+        this.flusher = Executors.newSingleThreadScheduledExecutor((runnable) -> {
+            var thread = new Thread(runnable, "social-store-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flushQuietly, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private Path snapshotPath(long generation) {
+        return root.resolve("snapshot-%010d.bin".formatted(generation));
+    }
+
+    private Path journalPath(long generation) {
+        return root.resolve("journal-%010d.log".formatted(generation));
+    }
+
+    private static long parseGeneration(Path path) {
+        var name = path.getFileName().toString();
+        return Long.parseLong(name.substring(name.indexOf('-') + 1, name.lastIndexOf('.')));
+    }
+
+    private List<Path> listFiles(String prefix, String suffix) throws IOException {
+        try (var files = Files.list(root)) {
+            return files
+                .filter((it) -> {
+                    var name = it.getFileName().toString();
+                    return name.startsWith(prefix) && name.endsWith(suffix);
+                })
+                .sorted()
+                .toList();
+        }
+    }
+
+    // ======== SocialJournal ========
+
+    private void submit(Change change) {
+        if (isClosed)
+            throw new IllegalStateException("Social store is closed");
+        pending.add(change);
+        pendingCount.incrementAndGet();
+    }
+
+    @Override
+    public void userChanged(AbstractUser user) {
+        submit(new UserChange(user.getUserId(), user.getUserName(), user.getName(), user.getPassword()));
+    }
+
+    @Override
+    public void friendAdded(int userId, int friendId) {
+        submit(new LinkChange(FRIEND_ADDED, userId, friendId));
+    }
+
+    @Override
+    public void groupChanged(AbstractGroup group) {
+        submit(new GroupChange(group.getIdGroup(), group.getGroupName(), group.getName(), group.getType(), group.getOwner()));
+    }
+
+    @Override
+    public void memberAdded(int groupId, int userId) {
+        submit(new LinkChange(MEMBER_ADDED, groupId, userId));
+    }
+
+    @Override
+    public void adminAdded(int groupId, int userId) {
+        submit(new LinkChange(ADMIN_ADDED, groupId, userId));
+    }
+
+    @Override
+    public void memberRemoved(int groupId, int userId) {
+        submit(new LinkChange(MEMBER_REMOVED, groupId, userId));
+    }
+
+    /**
+     * @return число изменений, еще не записанных в журнал.
+     */
+    public int getPendingCount() {
+        return pendingCount.get();
+    }
+
+    // ======== Чтение ========
+
+    public synchronized int userCount() {
+        return users.size();
+    }
+
+    public synchronized int groupCount() {
+        return groups.size();
+    }
+
+    /**
+     * Передает действию каждого сохраненного пользователя, например, чтобы создать объекты сервера при запуске.
+     * <br>Изменения, еще не записанные в журнал, не учитываются.
+     */
+    public synchronized void forEachUser(Consumer<StoredUser> action) {
+        users.forEach((id, user) ->
+            action.accept(new StoredUser(id, user.userName, user.name, user.password, user.friends.toArray())));
+    }
+
+    /**
+     * Передает действию каждую сохраненную группу.
+     * <br>Изменения, еще не записанные в журнал, не учитываются.
+     */
+    public synchronized void forEachGroup(Consumer<StoredGroup> action) {
+        groups.forEach((id, group) -> action.accept(new StoredGroup(
+            id, group.groupName, group.name, group.type, group.owner, group.members.toArray(), group.admins.toArray()
+        )));
+    }
+
+    // ======== Применение изменений ========
+
+    private void apply(Change change) {
+        switch (change) {
+            case UserChange it -> {
+                var user = users.get(it.id);
+                if (user == null) {
+                    user = new UserState();
+                    users.put(it.id, user);
+                }
+                user.userName = it.userName;
+                user.name = it.name;
+                user.password = it.password;
+            }
+            case GroupChange it -> {
+                var group = groupState(it.id);
+                group.groupName = it.groupName;
+                group.name = it.name;
+                group.type = it.type;
+                group.owner = it.owner;
+            }
+            case LinkChange it -> {
+                switch (it.kind) {
+                    case FRIEND_ADDED -> {
+                        var user = users.get(it.id);
+                        if (user == null) {
+                            // Дружба сохраняется и для пользователя, о создании которого не сообщили
+                            user = new UserState();
+                            users.put(it.id, user);
+                        }
+                        user.friends.add(it.otherId);
+                    }
+                    case MEMBER_ADDED -> groupState(it.id).members.add(it.otherId);
+                    case ADMIN_ADDED -> groupState(it.id).admins.add(it.otherId);
+                    case MEMBER_REMOVED -> {
+                        var group = groups.get(it.id);
+                        if (group != null) {
+                            group.members.remove(it.otherId);
+                            group.admins.remove(it.otherId);
+                        }
+                    }
+                    default -> throw new IllegalArgumentException("Unknown change: " + it.kind);
+                }
+            }
+        }
+    }
+
+    private GroupState groupState(int id) {
+        var group = groups.get(id);
+        if (group == null) {
+            group = new GroupState();
+            groups.put(id, group);
+        }
+        return group;
+    }
+
+    // ======== Журнал ========
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        var bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0)
+            return null;
+        return new String(in.readNBytes(length), StandardCharsets.UTF_8);
+    }
+
+    private static void encode(Change change, DataOutputStream out) throws IOException {
+        switch (change) {
+            case UserChange it -> {
+                out.writeByte(USER);
+                out.writeInt(it.id);
+                writeString(out, it.userName);
+                writeString(out, it.name);
+                writeString(out, it.password);
+            }
+            case GroupChange it -> {
+                out.writeByte(GROUP);
+                out.writeInt(it.id);
+                writeString(out, it.groupName);
+                writeString(out, it.name);
+                out.writeByte(it.type == null ? -1 : it.type.ordinal());
+                out.writeInt(it.owner);
+            }
+            case LinkChange it -> {
+                out.writeByte(it.kind);
+                out.writeInt(it.id);
+                out.writeInt(it.otherId);
+            }
+        }
+    }
+
+    private static Change decode(DataInputStream in) throws IOException {
+        byte kind = in.readByte();
+        return switch (kind) {
+            case USER -> new UserChange(in.readInt(), readString(in), readString(in), readString(in));
+            case GROUP -> {
+                int id = in.readInt();
+                var groupName = readString(in);
+                var name = readString(in);
+                int type = in.readByte();
+                yield new GroupChange(id, groupName, name, type < 0 ? null : GROUP_TYPES[type], in.readInt());
+            }
+            case FRIEND_ADDED, MEMBER_ADDED, MEMBER_REMOVED, ADMIN_ADDED -> new LinkChange(kind, in.readInt(), in.readInt());
+            default -> throw new IOException("Unknown change in journal: " + kind);
+        };
+    }
+
+    /**
+     * Записывает накопленные изменения в журнал и сбрасывает его на диск.
+     * При необходимости записывает снимок.
+     * <br>Вызывается фоновым потоком, но может быть вызван и явно, чтобы дождаться записи.
+     *
+     * @throws UncheckedIOException при ошибке записи на диск
+     */
+    public synchronized void flush() {
+        if (journal == null)
+            return;
+
+        try {
+            // Пачек не больше, чем накоплено сейчас: под постоянной нагрузкой поток должен дойти до снимка
+            for (int frames = pendingCount.get() / MAX_BATCH_SIZE + 1; frames > 0; frames--) {
+                for (Change change; batch.size() < MAX_BATCH_SIZE && (change = pending.poll()) != null; )
+                    batch.add(change);
+                if (batch.isEmpty())
+                    break;
+
+                writeFrame(batch);
+                pendingCount.addAndGet(-batch.size());
+                for (var change : batch)
+                    apply(change);
+                batch.clear();
+            }
+
+            if (journalSize >= snapshotThreshold)
+                snapshot();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            System.err.println("Error flushing social store: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Формат пачки:
+     * <pre>
+     * +------------+-------------+---------------------------+
+     * | length (4) | crc32c (4)  | изменения (length байт)   |
+     * +------------+-------------+---------------------------+
+     * </pre>
+     */
+    private void writeFrame(List<Change> batch) throws IOException {
+        var bytes = new ByteArrayOutputStream(64 + batch.size() * 16);
+        var out = new DataOutputStream(bytes);
+        out.writeInt(0);
+        out.writeInt(0);
+        for (var change : batch)
+            encode(change, out);
+        out.flush();
+
+        var frame = ByteBuffer.wrap(bytes.toByteArray());
+        int length = frame.capacity() - FRAME_HEADER_SIZE;
+        var crc = new CRC32C();
+        crc.update(frame.slice(FRAME_HEADER_SIZE, length));
+        frame.putInt(0, length).putInt(Integer.BYTES, (int) crc.getValue());
+
+        long start = journalSize;
+        try {
+            while (frame.hasRemaining())
+                journalSize += journal.write(frame);
+            journal.force(false);
+        } catch (IOException e) {
+            // Обрывок пачки остановил бы проигрывание всех следующих
+            journalSize = start;
+            journal.truncate(start);
+            throw e;
+        }
+    }
+
+    /**
+     * Проигрывает журнал поверх текущего состояния.
+     *
+     * @param truncate обрезать файл после последней целой пачки
+     */
+    private long replay(Path path, boolean truncate) throws IOException {
+        long valid = 0;
+        var crc = new CRC32C();
+
+        try (var in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), IO_BUFFER_SIZE))) {
+            while (true) {
+                int length;
+                int checksum;
+                byte[] payload;
+                try {
+                    length = in.readInt();
+                    checksum = in.readInt();
+                    if (length < 0)
+                        break;
+                    payload = in.readNBytes(length);
+                } catch (EOFException e) {
+                    break;
+                }
+                if (payload.length < length)
+                    break;
+
+                crc.reset();
+                crc.update(payload);
+                if ((int) crc.getValue() != checksum)
+                    break;
+
+                var changes = new DataInputStream(new ByteArrayInputStream(payload));
+                while (changes.available() > 0)
+                    apply(decode(changes));
+                valid += FRAME_HEADER_SIZE + length;
+            }
+        }
+
+        if (truncate && valid < Files.size(path)) {
+            System.err.println("Social store journal " + path.getFileName() + " is truncated at " + valid);
+            try (var channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                channel.truncate(valid);
+            }
+        }
+        return valid;
+    }
+
+    // ======== Снимок ========
+
+    /**
+     * Переключается на новый журнал, записывает снимок текущего состояния
+     * и удаляет файлы, которые им заменены.
+     */
+    private void snapshot() throws IOException {
+        long next = generation + 1;
+        openJournal(next);
+
+        var path = snapshotPath(next);
+        var temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        var crc = new CRC32C();
+        try (var file = FileChannel.open(temporary,
+            StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            var channel = Channels.newOutputStream(file);
+            // Сумма считается под буфером: большими блоками, а не по каждому числу
+            var out = new DataOutputStream(new BufferedOutputStream(new CheckedOutputStream(channel, crc), IO_BUFFER_SIZE));
+            writeSnapshot(out, next);
+            out.flush();
+            // Контрольная сумма дописывается в конец и сама в нее не входит
+            channel.write(ByteBuffer.allocate(Integer.BYTES).putInt((int) crc.getValue()).array());
+            file.force(true);
+        }
+        Files.move(temporary, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+        for (var old : listFiles("snapshot-", ".bin")) {
+            if (parseGeneration(old) < next)
+                Files.deleteIfExists(old);
+        }
+        for (var old : listFiles("journal-", ".log")) {
+            if (parseGeneration(old) < next)
+                Files.deleteIfExists(old);
+        }
+    }
+
+    private void writeSnapshot(DataOutputStream out, long generation) throws IOException {
+        out.writeInt(SNAPSHOT_MAGIC);
+        out.writeInt(SNAPSHOT_VERSION);
+        out.writeLong(generation);
+
+        out.writeInt(users.size());
+        for (int id : users.keys()) {
+            var user = users.get(id);
+            out.writeInt(id);
+            writeString(out, user.userName);
+            writeString(out, user.name);
+            writeString(out, user.password);
+            writeInts(out, user.friends);
+        }
+
+        out.writeInt(groups.size());
+        for (int id : groups.keys()) {
+            var group = groups.get(id);
+            out.writeInt(id);
+            writeString(out, group.groupName);
+            writeString(out, group.name);
+            out.writeByte(group.type == null ? -1 : group.type.ordinal());
+            out.writeInt(group.owner);
+            writeInts(out, group.members);
+            writeInts(out, group.admins);
+        }
+    }
+
+    private static void writeInts(DataOutputStream out, IntSet values) throws IOException {
+        out.writeInt(values.size());
+        for (int value : values.toArray())
+            out.writeInt(value);
+    }
+
+    /**
+     * Загружает снимок.
+     *
+     * @return номер снимка
+     * @throws IOException если снимок поврежден
+     */
+    private long loadSnapshot(Path path) throws IOException {
+        ByteBuffer in;
+        try (var file = FileChannel.open(path, StandardOpenOption.READ)) {
+            in = file.map(FileChannel.MapMode.READ_ONLY, 0, file.size());
+        }
+        if (in.capacity() < 4 * Integer.BYTES + Long.BYTES)
+            throw new IOException("Snapshot is truncated: " + path);
+
+        // Последние 4 байта - контрольная сумма всего остального
+        int end = in.capacity() - Integer.BYTES;
+        var crc = new CRC32C();
+        crc.update(in.slice(0, end));
+        if ((int) crc.getValue() != in.getInt(end))
+            throw new IOException("Snapshot checksum mismatch: " + path);
+        in.limit(end);
+
+        try {
+            if (in.getInt() != SNAPSHOT_MAGIC || in.getInt() != SNAPSHOT_VERSION)
+                throw new IOException("Not a snapshot: " + path);
+            long generation = in.getLong();
+
+            int userCount = in.getInt();
+            users.ensureCapacity(userCount);
+            for (int i = 0; i < userCount; i++) {
+                int id = in.getInt();
+                var user = new UserState();
+                user.userName = getString(in);
+                user.name = getString(in);
+                user.password = getString(in);
+                user.friends = getInts(in);
+                users.put(id, user);
+            }
+
+            int groupCount = in.getInt();
+            groups.ensureCapacity(groupCount);
+            for (int i = 0; i < groupCount; i++) {
+                int id = in.getInt();
+                var group = new GroupState();
+                group.groupName = getString(in);
+                group.name = getString(in);
+                int type = in.get();
+                group.type = type < 0 ? null : GROUP_TYPES[type];
+                group.owner = in.getInt();
+                group.members = getInts(in);
+                group.admins = getInts(in);
+                groups.put(id, group);
+            }
+
+            if (in.hasRemaining())
+                throw new IOException("Invalid snapshot: trailing data in " + path);
+            return generation;
+        } catch (BufferUnderflowException | IllegalArgumentException | IndexOutOfBoundsException e) {
+            throw new IOException("Invalid snapshot: " + path, e);
+        }
+    }
+
+    private static String getString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0)
+            return null;
+        var bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static IntSet getInts(ByteBuffer in) {
+        int count = in.getInt();
+        if (count < 0 || count > in.remaining() / Integer.BYTES)
+            throw new IllegalArgumentException("Invalid count: " + count);
+        var result = new IntSet(count);
+        for (int i = 0; i < count; i++)
+            result.add(in.getInt());
+        return result;
+    }
+
+    // ======== Восстановление ========
+
+    private void recover() throws IOException {
+        for (var temporary : listFiles("snapshot-", ".tmp"))
+            Files.deleteIfExists(temporary);
+
+        // Снимок переименовывается только целым, поэтому берем последний
+        long snapshotGeneration = 0;
+        var snapshots = listFiles("snapshot-", ".bin");
+        if (!snapshots.isEmpty())
+            snapshotGeneration = loadSnapshot(snapshots.getLast());
+
+        var journals = listFiles("journal-", ".log");
+        long last = snapshotGeneration;
+        long replayed = 0;
+        for (int i = 0; i < journals.size(); i++) {
+            var path = journals.get(i);
+            long journalGeneration = parseGeneration(path);
+            last = Math.max(last, journalGeneration);
+            if (journalGeneration < snapshotGeneration)
+                continue;
+            replayed += replay(path, i == journals.size() - 1);
+        }
+
+        // Дописываем всегда в новый журнал: старый мог оборваться на середине пачки
+        openJournal(last + 1);
+        journalSize = replayed;
+    }
+
+    private void openJournal(long generation) throws IOException {
+        if (journal != null)
+            journal.close();
+        this.generation = generation;
+        journal = FileChannel.open(journalPath(generation),
+            StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        journalSize = journal.size();
+    }
+
+    /**
+     * Записывает оставшиеся изменения и снимок, закрывает журнал и останавливает фоновый поток.
+     * <br>Данный метод безопасен, и может быть вызван, даже если хранилище закрыто.
+     */
+    @Override
+    public void close() {
+        if (isClosed)
+            return;
+        isClosed = true;
+
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        synchronized (this) {
+            try {
+                flush();
+                if (journalSize > 0)
+                    snapshot();
+                journal.close();
+                // Пустой журнал не нужен: иначе каждый запуск оставлял бы по файлу
+                Files.deleteIfExists(journalPath(generation));
+            } catch (IOException | UncheckedIOException e) {
+                System.err.println("Error closing social store: " + e.getMessage());
+            } finally {
+                journal = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,358 @@
+package server.store;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32C;
+
+/**
+ * Файл очереди уведомлений одного пользователя.
+ *
+ * <p>Формат файла:
+ * <pre>
+ * +---------------+-----------------+----------+----------+-----
+ * | headSeq (8)   | headOffset (8)  | запись   | запись   | ...
+ * +---------------+-----------------+----------+----------+-----
+ *
+ * запись:
+ * +------------+-------------+----------+------------+-------------+----------+------------------+
+ * | length (4) | crc32c (4)  | kind (1) | fromId (4) | groupId (4) | time (8) | content (UTF-8)  |
+ * +------------+-------------+----------+------------+-------------+----------+------------------+
+ * </pre>
+ * Записи только дописываются в конец. Удаление из начала очереди лишь сдвигает
+ * {@code headOffset} в заголовке, а место освобождается сжатием файла, когда
+ * удаленные записи занимают больше места, чем живые.
+ *
+ * <p>Каждая запись имеет порядковый номер: у первой живой записи он равен {@code headSeq}.
+ * Номера не переиспользуются, пока файл существует.
+ *
+ * <p>Все операции выполняются под {@link #lock}.
+ */
+final class UserQueue {
+
+    static final int FILE_HEADER_SIZE = 2 * Long.BYTES;
+    static final int HEADER_SIZE = 2 * Integer.BYTES;
+    static final int BODY_PREFIX_SIZE = 1 + 2 * Integer.BYTES + Long.BYTES;
+
+    /**
+     * Сжатие не выполняется, пока удаленные записи занимают меньше этого размера.
+     */
+    static final int COMPACT_THRESHOLD = 256 * 1024;
+
+    /**
+     * Размер блока, которым читаются записи.
+     */
+    static final int READ_CHUNK_SIZE = 64 * 1024;
+
+    private static final OfflineEntry.Kind[] KINDS = OfflineEntry.Kind.values();
+
+    final ReentrantLock lock = new ReentrantLock();
+    private final Path path;
+    private FileChannel channel;
+
+    private long headSeq;
+    private long headOffset;
+    private long tailSeq;
+    private long tailOffset;
+
+    private boolean isDirty = false;
+    private boolean isClosed = false;
+
+    /**
+     * Создает очередь, не открывая файл: он открывается при первом вызове {@link #open(boolean)}.
+     */
+    UserQueue(Path path) {
+        this.path = path;
+    }
+
+    /**
+     * Открывает файл очереди, если он еще не открыт. Если файл уже существует,
+     * восстанавливает состояние очереди, отбрасывая недописанную запись.
+     * <br>Если открыть файл не удалось, очередь закрывается.
+     *
+     * @param create создать файл, если его нет
+     * @throws NoSuchFileException если файла нет, а {@code create} равен false
+     */
+    void open(boolean create) throws IOException {
+        if (channel != null || isClosed)
+            return;
+        try {
+            if (create) {
+                Files.createDirectories(path.getParent());
+                channel = FileChannel.open(path,
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            } else {
+                channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            }
+            recover();
+        } catch (IOException | RuntimeException e) {
+            isClosed = true;
+            if (channel != null)
+                channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return true, если файла очереди нет, то есть она пуста.
+     */
+    static boolean isAbsent(Path path) {
+        return !Files.exists(path);
+    }
+
+    private void recover() throws IOException {
+        long fileSize = channel.size();
+        if (fileSize < FILE_HEADER_SIZE) {
+            headSeq = 0;
+            headOffset = tailOffset = FILE_HEADER_SIZE;
+            tailSeq = 0;
+            channel.truncate(0);
+            writeFileHeader();
+            return;
+        }
+
+        var header = ByteBuffer.allocate(FILE_HEADER_SIZE);
+        readFully(header, 0);
+        headSeq = header.getLong(0);
+        headOffset = header.getLong(Long.BYTES);
+        if (headSeq < 0 || headOffset < FILE_HEADER_SIZE || headOffset > fileSize)
+            throw new IOException("Corrupted offline queue header: " + path);
+
+        tailSeq = headSeq;
+        tailOffset = headOffset;
+        var buffer = ByteBuffer.allocate(READ_CHUNK_SIZE);
+        var crc = new CRC32C();
+
+        while (tailOffset + HEADER_SIZE <= fileSize) {
+            buffer.clear().limit(HEADER_SIZE);
+            readFully(buffer, tailOffset);
+            int length = buffer.getInt(0);
+            int checksum = buffer.getInt(Integer.BYTES);
+            if (length < BODY_PREFIX_SIZE || tailOffset + HEADER_SIZE + length > fileSize)
+                break;
+
+            if (buffer.capacity() < length)
+                buffer = ByteBuffer.allocate(length);
+            buffer.clear().limit(length);
+            readFully(buffer, tailOffset + HEADER_SIZE);
+            crc.reset();
+            crc.update(buffer);
+            if ((int) crc.getValue() != checksum)
+                break;
+
+            tailOffset += HEADER_SIZE + length;
+            tailSeq++;
+        }
+
+        // Недописанная запись не должна "ожить" после следующей дописанной
+        if (tailOffset < fileSize)
+            channel.truncate(tailOffset);
+    }
+
+    int size() {
+        return (int) (tailSeq - headSeq);
+    }
+
+    long headSeq() {
+        return headSeq;
+    }
+
+    long tailSeq() {
+        return tailSeq;
+    }
+
+    /**
+     * @return суммарный размер живых записей в байтах.
+     */
+    long liveBytes() {
+        return tailOffset - headOffset;
+    }
+
+    boolean isClosed() {
+        return isClosed;
+    }
+
+    static int recordSize(OfflineEntry entry) {
+        return HEADER_SIZE + BODY_PREFIX_SIZE + entry.content().getBytes(StandardCharsets.UTF_8).length;
+    }
+
+    /**
+     * Дописывает запись в конец очереди.
+     */
+    void append(OfflineEntry entry) throws IOException {
+        var content = entry.content().getBytes(StandardCharsets.UTF_8);
+        int length = BODY_PREFIX_SIZE + content.length;
+
+        var record = ByteBuffer.allocate(HEADER_SIZE + length);
+        record.position(HEADER_SIZE);
+        record.put((byte) entry.kind().ordinal())
+            .putInt(entry.fromId())
+            .putInt(entry.groupId())
+            .putLong(entry.timeMillis())
+            .put(content);
+
+        var crc = new CRC32C();
+        crc.update(record.slice(HEADER_SIZE, length));
+        record.putInt(0, length).putInt(Integer.BYTES, (int) crc.getValue());
+
+        writeFully(record.flip(), tailOffset);
+        tailOffset += record.capacity();
+        tailSeq++;
+        isDirty = true;
+    }
+
+    /**
+     * Читает до {@code limit} первых записей очереди в список {@code out}.
+     */
+    void read(int limit, List<OfflineEntry> out) throws IOException {
+        long position = headOffset;
+        var buffer = ByteBuffer.allocate((int) Math.min(READ_CHUNK_SIZE, Math.max(liveBytes(), HEADER_SIZE)));
+        long bufferStart = position;
+        buffer.limit(0);
+
+        for (int read = 0; read < limit && position < tailOffset; read++) {
+            // Заголовок или тело записи не поместились в прочитанный блок - читаем следующий
+            if (position + HEADER_SIZE > bufferStart + buffer.limit()
+                || position + HEADER_SIZE + buffer.getInt((int) (position - bufferStart)) > bufferStart + buffer.limit()) {
+                int length = recordLength(position);
+                int size = (int) Math.min(tailOffset - position, Math.max(READ_CHUNK_SIZE, HEADER_SIZE + length));
+                if (buffer.capacity() < size)
+                    buffer = ByteBuffer.allocate(size);
+                buffer.clear().limit(size);
+                readFully(buffer, position);
+                bufferStart = position;
+            }
+
+            int at = (int) (position - bufferStart);
+            int length = buffer.getInt(at);
+            int body = at + HEADER_SIZE;
+
+            var content = new byte[length - BODY_PREFIX_SIZE];
+            buffer.get(body + BODY_PREFIX_SIZE, content);
+            out.add(new OfflineEntry(
+                KINDS[buffer.get(body)],
+                buffer.getInt(body + 1),
+                buffer.getInt(body + 1 + Integer.BYTES),
+                buffer.getLong(body + 1 + 2 * Integer.BYTES),
+                new String(content, StandardCharsets.UTF_8)
+            ));
+            position += HEADER_SIZE + length;
+        }
+    }
+
+    /**
+     * Удаляет из начала очереди записи с номерами меньше {@code seq}.
+     *
+     * @return число удаленных записей
+     */
+    int removeBefore(long seq) throws IOException {
+        int removed = 0;
+        while (headSeq < Math.min(seq, tailSeq)) {
+            headOffset += HEADER_SIZE + recordLength(headOffset);
+            headSeq++;
+            removed++;
+        }
+        if (removed == 0)
+            return 0;
+
+        if (headOffset - FILE_HEADER_SIZE >= COMPACT_THRESHOLD && headOffset - FILE_HEADER_SIZE > liveBytes())
+            compact();
+        else
+            writeFileHeader();
+        isDirty = true;
+        return removed;
+    }
+
+    /**
+     * Переписывает живые записи в новый файл и атомарно заменяет им старый.
+     */
+    private void compact() throws IOException {
+        var temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        try (var target = FileChannel.open(temporary,
+            StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            var header = ByteBuffer.allocate(FILE_HEADER_SIZE).putLong(headSeq).putLong(FILE_HEADER_SIZE).flip();
+            while (header.hasRemaining())
+                target.write(header);
+
+            long live = liveBytes();
+            for (long copied = 0; copied < live; )
+                copied += channel.transferTo(headOffset + copied, live - copied, target.position(FILE_HEADER_SIZE + copied));
+            target.force(true);
+        }
+
+        Files.move(temporary, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        channel.close();
+        channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        tailOffset = FILE_HEADER_SIZE + liveBytes();
+        headOffset = FILE_HEADER_SIZE;
+    }
+
+    private int recordLength(long position) throws IOException {
+        var length = ByteBuffer.allocate(Integer.BYTES);
+        readFully(length, position);
+        return length.getInt(0);
+    }
+
+    private void writeFileHeader() throws IOException {
+        writeFully(ByteBuffer.allocate(FILE_HEADER_SIZE).putLong(headSeq).putLong(headOffset).flip(), 0);
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0)
+                throw new IOException("Unexpected end of offline queue: " + path);
+            position += read;
+        }
+        buffer.flip();
+    }
+
+    private void writeFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining())
+            position += channel.write(buffer, position);
+    }
+
+    /**
+     * Сбрасывает изменения на диск, если они есть.
+     */
+    void force() throws IOException {
+        if (isClosed || !isDirty)
+            return;
+        isDirty = false;
+        channel.force(false);
+    }
+
+    /**
+     * Сбрасывает изменения на диск и закрывает файл.
+     */
+    void close() throws IOException {
+        if (isClosed)
+            return;
+        try {
+            force();
+        } finally {
+            isClosed = true;
+            if (channel != null)
+                channel.close();
+        }
+    }
+
+    /**
+     * Закрывает и удаляет файл пустой очереди.
+     */
+    void delete() throws IOException {
+        isClosed = true;
+        if (channel != null)
+            channel.close();
+        Files.deleteIfExists(path);
+    }
+}
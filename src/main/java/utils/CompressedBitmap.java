@@ -0,0 +1,653 @@
+package utils;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * Сжатое множество чисел {@code int} (например, id пользователей) по схеме Roaring bitmap.
+ *
+ * <p>Число делится на старшие и младшие 16 бит. Старшие выбирают контейнер,
+ * а в контейнере хранятся младшие биты одним из двух способов:
+ * <ul>
+ *     <li> До {@value #ARRAY_MAX_SIZE} чисел - отсортированный массив {@code char} (2 байта на число)
+ *     <li> Больше - битовая карта из 1024 {@code long} (8 КБ на 65536 возможных чисел)
+ * </ul>
+ * Поэтому и разреженные, и плотные множества занимают мало памяти, а операции
+ * {@link #and}, {@link #or} и {@link #andNot} идут по контейнерам: слиянием
+ * массивов либо по 64 бита за операцию над словами битовых карт.
+ * Пересечение двух каналов по сотне тысяч участников занимает микросекунды.
+ *
+ * <p>Порядок обхода - по возрастанию. Отрицательные числа допускаются,
+ * но обходятся после положительных, как беззнаковые.
+ *
+ * <p>Класс не потокобезопасен. Операции {@link #and}, {@link #or} и {@link #andNot}
+ * не изменяют аргументы и возвращают новое множество.
+ */
+public class CompressedBitmap {
+
+    static final int ARRAY_MAX_SIZE = 4096;
+    private static final int BITMAP_WORDS = 1 << 16 >>> 6;
+
+    private char[] keys = new char[4];
+    private Container[] containers = new Container[4];
+    private int size = 0;
+
+    public CompressedBitmap() {}
+
+    private CompressedBitmap(char[] keys, Container[] containers, int size) {
+        this.keys = keys;
+        this.containers = containers;
+        this.size = size;
+    }
+
+    /**
+     * @return множество из перечисленных чисел.
+     */
+    public static CompressedBitmap of(int... values) {
+        var bitmap = new CompressedBitmap();
+        for (int value : values)
+            bitmap.add(value);
+        return bitmap;
+    }
+
+    private static char high(int value) {
+        return (char) (value >>> 16);
+    }
+
+    private static char low(int value) {
+        return (char) value;
+    }
+
+    private int indexOf(char key) {
+        return Arrays.binarySearch(keys, 0, size, key);
+    }
+
+    public boolean contains(int value) {
+        int index = indexOf(high(value));
+        return index >= 0 && containers[index].contains(low(value));
+    }
+
+    /**
+     * @return true, если числа еще не было в множестве
+     */
+    public boolean add(int value) {
+        char key = high(value);
+        int index = indexOf(key);
+
+        if (index < 0) {
+            insert(-index - 1, key, new ArrayContainer().add(low(value)));
+            return true;
+        }
+
+        var container = containers[index];
+        int before = container.cardinality();
+        containers[index] = container.add(low(value));
+        return containers[index].cardinality() > before;
+    }
+
+    /**
+     * @return true, если число было в множестве
+     */
+    public boolean remove(int value) {
+        int index = indexOf(high(value));
+        if (index < 0)
+            return false;
+
+        var container = containers[index];
+        int before = container.cardinality();
+        var updated = container.remove(low(value));
+
+        if (updated.cardinality() == 0)
+            delete(index);
+        else
+            containers[index] = updated;
+        return updated.cardinality() < before;
+    }
+
+    private void insert(int index, char key, Container container) {
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+            containers = Arrays.copyOf(containers, size * 2);
+        }
+        System.arraycopy(keys, index, keys, index + 1, size - index);
+        System.arraycopy(containers, index, containers, index + 1, size - index);
+        keys[index] = key;
+        containers[index] = container;
+        size++;
+    }
+
+    private void delete(int index) {
+        System.arraycopy(keys, index + 1, keys, index, size - index - 1);
+        System.arraycopy(containers, index + 1, containers, index, size - index - 1);
+        size--;
+        containers[size] = null;
+    }
+
+    /**
+     * @return число элементов. Вычисляется по контейнерам, без обхода чисел.
+     */
+    public int cardinality() {
+        int result = 0;
+        for (int i = 0; i < size; i++)
+            result += containers[i].cardinality();
+        return result;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        Arrays.fill(containers, 0, size, null);
+        size = 0;
+    }
+
+    /**
+     * @return пересечение множеств.
+     */
+    public CompressedBitmap and(CompressedBitmap other) {
+        var result = new Builder(Math.min(size, other.size));
+        int i = 0, j = 0;
+        while (i < size && j < other.size) {
+            char a = keys[i], b = other.keys[j];
+            if (a < b) {
+                i++;
+            } else if (a > b) {
+                j++;
+            } else {
+                result.append(a, containers[i].and(other.containers[j]));
+                i++;
+                j++;
+            }
+        }
+        return result.build();
+    }
+
+    /**
+     * @return объединение множеств.
+     */
+    public CompressedBitmap or(CompressedBitmap other) {
+        var result = new Builder(size + other.size);
+        int i = 0, j = 0;
+        while (i < size || j < other.size) {
+            if (j == other.size || i < size && keys[i] < other.keys[j]) {
+                result.append(keys[i], containers[i].copy());
+                i++;
+            } else if (i == size || keys[i] > other.keys[j]) {
+                result.append(other.keys[j], other.containers[j].copy());
+                j++;
+            } else {
+                result.append(keys[i], containers[i].or(other.containers[j]));
+                i++;
+                j++;
+            }
+        }
+        return result.build();
+    }
+
+    /**
+     * @return элементы этого множества, которых нет в {@code other}.
+     */
+    public CompressedBitmap andNot(CompressedBitmap other) {
+        var result = new Builder(size);
+        int j = 0;
+        for (int i = 0; i < size; i++) {
+            char key = keys[i];
+            while (j < other.size && other.keys[j] < key)
+                j++;
+
+            if (j < other.size && other.keys[j] == key)
+                result.append(key, containers[i].andNot(other.containers[j]));
+            else
+                result.append(key, containers[i].copy());
+        }
+        return result.build();
+    }
+
+    /**
+     * @return размер пересечения множеств. Результат не собирается в новое множество.
+     */
+    public int andCardinality(CompressedBitmap other) {
+        int result = 0;
+        int i = 0, j = 0;
+        while (i < size && j < other.size) {
+            char a = keys[i], b = other.keys[j];
+            if (a < b) {
+                i++;
+            } else if (a > b) {
+                j++;
+            } else {
+                result += containers[i].and(other.containers[j]).cardinality();
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    public CompressedBitmap copy() {
+        var copied = new Container[Math.max(4, size)];
+        for (int i = 0; i < size; i++)
+            copied[i] = containers[i].copy();
+        return new CompressedBitmap(Arrays.copyOf(keys, copied.length), copied, size);
+    }
+
+    /**
+     * Выполняет действие для каждого числа по возрастанию без упаковки.
+     */
+    public void forEach(IntConsumer action) {
+        for (int i = 0; i < size; i++)
+            containers[i].forEach(keys[i] << 16, action);
+    }
+
+    /**
+     * @return новый массив с числами множества по возрастанию.
+     */
+    public int[] toArray() {
+        int[] result = new int[cardinality()];
+        int offset = 0;
+        for (int i = 0; i < size; i++)
+            offset = containers[i].fill(keys[i] << 16, result, offset);
+        return result;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj)
+            return true;
+        if (!(obj instanceof CompressedBitmap other) || other.size != size)
+            return false;
+        for (int i = 0; i < size; i++) {
+            if (keys[i] != other.keys[i] || !Arrays.equals(containers[i].toArray(), other.containers[i].toArray()))
+                return false;
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(toArray());
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(toArray());
+    }
+
+    /**
+     * Собирает результат операции, пропуская пустые контейнеры.
+     */
+    private static final class Builder {
+        private final char[] keys;
+        private final Container[] containers;
+        private int size = 0;
+
+        Builder(int capacity) {
+            keys = new char[Math.max(4, capacity)];
+            containers = new Container[keys.length];
+        }
+
+        void append(char key, Container container) {
+            if (container.cardinality() == 0)
+                return;
+            keys[size] = key;
+            containers[size] = container;
+            size++;
+        }
+
+        CompressedBitmap build() {
+            return new CompressedBitmap(keys, containers, size);
+        }
+    }
+
+    /**
+     * Младшие 16 бит чисел с одинаковыми старшими битами.
+     * <br>Изменяющие операции могут вернуть контейнер другого вида.
+     */
+    private abstract static sealed class Container permits ArrayContainer, BitmapContainer {
+
+        abstract int cardinality();
+
+        abstract boolean contains(char value);
+
+        abstract Container add(char value);
+
+        abstract Container remove(char value);
+
+        abstract Container and(Container other);
+
+        abstract Container or(Container other);
+
+        abstract Container andNot(Container other);
+
+        abstract Container copy();
+
+        abstract void forEach(int high, IntConsumer action);
+
+        abstract int fill(int high, int[] out, int offset);
+
+        char[] toArray() {
+            int[] values = new int[cardinality()];
+            fill(0, values, 0);
+            char[] result = new char[values.length];
+            for (int i = 0; i < values.length; i++)
+                result[i] = (char) values[i];
+            return result;
+        }
+    }
+
+    /**
+     * Разреженный контейнер: отсортированный массив.
+     */
+    private static final class ArrayContainer extends Container {
+
+        private char[] values;
+        private int size;
+
+        ArrayContainer() {
+            this(new char[4], 0);
+        }
+
+        ArrayContainer(char[] values, int size) {
+            this.values = values;
+            this.size = size;
+        }
+
+        @Override
+        int cardinality() {
+            return size;
+        }
+
+        @Override
+        boolean contains(char value) {
+            return Arrays.binarySearch(values, 0, size, value) >= 0;
+        }
+
+        @Override
+        Container add(char value) {
+            int index = Arrays.binarySearch(values, 0, size, value);
+            if (index >= 0)
+                return this;
+
+            if (size == ARRAY_MAX_SIZE)
+                return toBitmap().add(value);
+
+            index = -index - 1;
+            if (size == values.length)
+                values = Arrays.copyOf(values, Math.min(ARRAY_MAX_SIZE, Math.max(4, size * 2)));
+            System.arraycopy(values, index, values, index + 1, size - index);
+            values[index] = value;
+            size++;
+            return this;
+        }
+
+        @Override
+        Container remove(char value) {
+            int index = Arrays.binarySearch(values, 0, size, value);
+            if (index < 0)
+                return this;
+
+            System.arraycopy(values, index + 1, values, index, size - index - 1);
+            size--;
+            return this;
+        }
+
+        BitmapContainer toBitmap() {
+            var bitmap = new BitmapContainer();
+            for (int i = 0; i < size; i++)
+                bitmap.set(values[i]);
+            return bitmap;
+        }
+
+        @Override
+        Container and(Container other) {
+            var result = new char[size];
+            int n = 0;
+
+            if (other instanceof ArrayContainer array) {
+                int i = 0, j = 0;
+                while (i < size && j < array.size) {
+                    char a = values[i], b = array.values[j];
+                    if (a < b) {
+                        i++;
+                    } else if (a > b) {
+                        j++;
+                    } else {
+                        result[n++] = a;
+                        i++;
+                        j++;
+                    }
+                }
+            } else {
+                var bitmap = (BitmapContainer) other;
+                for (int i = 0; i < size; i++) {
+                    if (bitmap.contains(values[i]))
+                        result[n++] = values[i];
+                }
+            }
+            return new ArrayContainer(result, n);
+        }
+
+        @Override
+        Container or(Container other) {
+            if (other instanceof BitmapContainer bitmap)
+                return bitmap.or(this);
+
+            var array = (ArrayContainer) other;
+            var result = new char[size + array.size];
+            int n = 0, i = 0, j = 0;
+            while (i < size || j < array.size) {
+                if (j == array.size || i < size && values[i] < array.values[j]) {
+                    result[n++] = values[i++];
+                } else if (i == size || values[i] > array.values[j]) {
+                    result[n++] = array.values[j++];
+                } else {
+                    result[n++] = values[i];
+                    i++;
+                    j++;
+                }
+            }
+
+            var union = new ArrayContainer(result, n);
+            return n > ARRAY_MAX_SIZE ? union.toBitmap() : union;
+        }
+
+        @Override
+        Container andNot(Container other) {
+            var result = new char[size];
+            int n = 0;
+
+            if (other instanceof ArrayContainer array) {
+                int j = 0;
+                for (int i = 0; i < size; i++) {
+                    while (j < array.size && array.values[j] < values[i])
+                        j++;
+                    if (j == array.size || array.values[j] != values[i])
+                        result[n++] = values[i];
+                }
+            } else {
+                var bitmap = (BitmapContainer) other;
+                for (int i = 0; i < size; i++) {
+                    if (!bitmap.contains(values[i]))
+                        result[n++] = values[i];
+                }
+            }
+            return new ArrayContainer(result, n);
+        }
+
+        @Override
+        Container copy() {
+            return new ArrayContainer(Arrays.copyOf(values, Math.max(4, size)), size);
+        }
+
+        @Override
+        void forEach(int high, IntConsumer action) {
+            for (int i = 0; i < size; i++)
+                action.accept(high | values[i]);
+        }
+
+        @Override
+        int fill(int high, int[] out, int offset) {
+            for (int i = 0; i < size; i++)
+                out[offset++] = high | values[i];
+            return offset;
+        }
+    }
+
+    /**
+     * Плотный контейнер: битовая карта на все 65536 значений.
+     */
+    private static final class BitmapContainer extends Container {
+
+        private final long[] words;
+        private int cardinality;
+
+        BitmapContainer() {
+            this(new long[BITMAP_WORDS], 0);
+        }
+
+        BitmapContainer(long[] words, int cardinality) {
+            this.words = words;
+            this.cardinality = cardinality;
+        }
+
+        void set(char value) {
+            long word = words[value >>> 6];
+            long updated = word | 1L << value;
+            if (updated != word) {
+                words[value >>> 6] = updated;
+                cardinality++;
+            }
+        }
+
+        @Override
+        int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        boolean contains(char value) {
+            return (words[value >>> 6] & 1L << value) != 0;
+        }
+
+        @Override
+        Container add(char value) {
+            set(value);
+            return this;
+        }
+
+        @Override
+        Container remove(char value) {
+            long word = words[value >>> 6];
+            long updated = word & ~(1L << value);
+            if (updated == word)
+                return this;
+
+            words[value >>> 6] = updated;
+            cardinality--;
+            return cardinality <= ARRAY_MAX_SIZE ? toArrayContainer() : this;
+        }
+
+        ArrayContainer toArrayContainer() {
+            var values = new char[Math.max(4, cardinality)];
+            int n = 0;
+            for (int w = 0; w < words.length; w++) {
+                long word = words[w];
+                while (word != 0) {
+                    values[n++] = (char) (w << 6 | Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+            return new ArrayContainer(values, n);
+        }
+
+        /**
+         * Приводит результат операции к подходящему виду.
+         */
+        private static Container result(long[] words) {
+            int cardinality = 0;
+            for (long word : words)
+                cardinality += Long.bitCount(word);
+
+            var bitmap = new BitmapContainer(words, cardinality);
+            return cardinality <= ARRAY_MAX_SIZE ? bitmap.toArrayContainer() : bitmap;
+        }
+
+        @Override
+        Container and(Container other) {
+            if (other instanceof ArrayContainer array)
+                return array.and(this);
+
+            var bitmap = (BitmapContainer) other;
+            var result = new long[BITMAP_WORDS];
+            for (int i = 0; i < BITMAP_WORDS; i++)
+                result[i] = words[i] & bitmap.words[i];
+            return result(result);
+        }
+
+        @Override
+        Container or(Container other) {
+            var result = words.clone();
+
+            if (other instanceof ArrayContainer array) {
+                var union = new BitmapContainer(result, cardinality);
+                for (int i = 0; i < array.size; i++)
+                    union.set(array.values[i]);
+                return union;
+            }
+
+            var bitmap = (BitmapContainer) other;
+            int cardinality = 0;
+            for (int i = 0; i < BITMAP_WORDS; i++) {
+                result[i] |= bitmap.words[i];
+                cardinality += Long.bitCount(result[i]);
+            }
+            return new BitmapContainer(result, cardinality);
+        }
+
+        @Override
+        Container andNot(Container other) {
+            var result = words.clone();
+
+            if (other instanceof ArrayContainer array) {
+                for (int i = 0; i < array.size; i++) {
+                    char value = array.values[i];
+                    result[value >>> 6] &= ~(1L << value);
+                }
+            } else {
+                var bitmap = (BitmapContainer) other;
+                for (int i = 0; i < BITMAP_WORDS; i++)
+                    result[i] &= ~bitmap.words[i];
+            }
+            return result(result);
+        }
+
+        @Override
+        Container copy() {
+            return new BitmapContainer(words.clone(), cardinality);
+        }
+
+        @Override
+        void forEach(int high, IntConsumer action) {
+            for (int w = 0; w < words.length; w++) {
+                long word = words[w];
+                while (word != 0) {
+                    action.accept(high | w << 6 | Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+        }
+
+        @Override
+        int fill(int high, int[] out, int offset) {
+            for (int w = 0; w < words.length; w++) {
+                long word = words[w];
+                while (word != 0) {
+                    out[offset++] = high | w << 6 | Long.numberOfTrailingZeros(word);
+                    word &= word - 1;
+                }
+            }
+            return offset;
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package utils;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+/**
+ * Список чисел {@code int} без упаковки в {@link Integer}.
+ * <br>Числа хранятся в одном массиве, который растет в полтора раза при заполнении.
+ *
+ * <p>Класс не потокобезопасен.
+ */
+public class IntList implements Iterable<Integer> {
+
+    private static final int MIN_CAPACITY = 8;
+
+    private int[] values;
+    private int size = 0;
+
+    public IntList() {
+        this(MIN_CAPACITY);
+    }
+
+    public IntList(int capacity) {
+        if (capacity < 0)
+            throw new IllegalArgumentException("Capacity must not be negative.");
+        values = new int[capacity];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int get(int index) {
+        checkIndex(index);
+        return values[index];
+    }
+
+    public int set(int index, int value) {
+        checkIndex(index);
+        int previous = values[index];
+        values[index] = value;
+        return previous;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for size " + size);
+    }
+
+    public void add(int value) {
+        if (size == values.length)
+            values = Arrays.copyOf(values, Math.max(MIN_CAPACITY, size + (size >> 1)));
+        values[size++] = value;
+    }
+
+    /**
+     * @return индекс первого вхождения числа, либо -1.
+     */
+    public int indexOf(int value) {
+        for (int i = 0; i < size; i++) {
+            if (values[i] == value)
+                return i;
+        }
+        return -1;
+    }
+
+    public boolean contains(int value) {
+        return indexOf(value) >= 0;
+    }
+
+    /**
+     * Удаляет число по индексу.
+     *
+     * @return удаленное число
+     */
+    public int removeAt(int index) {
+        checkIndex(index);
+        int removed = values[index];
+        System.arraycopy(values, index + 1, values, index, size - index - 1);
+        size--;
+        return removed;
+    }
+
+    /**
+     * Удаляет первое вхождение числа.
+     * <br>В отличие от {@code List<Integer>.remove(int)}, аргумент - всегда значение, а не индекс.
+     *
+     * @return true, если число было в списке
+     */
+    public boolean removeValue(int value) {
+        int index = indexOf(value);
+        if (index < 0)
+            return false;
+        removeAt(index);
+        return true;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * Выполняет действие для каждого числа по порядку без создания итератора и упаковки.
+     */
+    public void forEachInt(IntConsumer action) {
+        for (int i = 0; i < size; i++)
+            action.accept(values[i]);
+    }
+
+    /**
+     * @return новый массив с числами списка.
+     */
+    public int[] toArray() {
+        return Arrays.copyOf(values, size);
+    }
+
+    public IntStream stream() {
+        return Arrays.stream(values, 0, size);
+    }
+
+    @Override
+    public PrimitiveIterator.OfInt iterator() {
+        return new PrimitiveIterator.OfInt() {
+            private int index = 0;
+
+            @Override
+            public boolean hasNext() {
+                return index < size;
+            }
+
+            @Override
+            public int nextInt() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                return values[index++];
+            }
+        };
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj)
+            return true;
+        return obj instanceof IntList other
+            && Arrays.equals(values, 0, size, other.values, 0, other.size);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = 1;
+        for (int i = 0; i < size; i++)
+            result = 31 * result + values[i];
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(toArray());
+    }
+}
@@ -0,0 +1,292 @@
+package utils;
+
+import java.util.Arrays;
+
+/**
+ * Отображение из чисел {@code int} в объекты без упаковки ключей в {@link Integer}.
+ *
+ * <p>Устроено так же, как {@link IntSet}: открытая адресация с линейным пробированием,
+ * ключ ноль хранится отдельно, удаление сдвигает цепочку назад. Ключи и значения
+ * лежат в двух параллельных массивах.
+ *
+ * <p>Класс не потокобезопасен. Однако {@link #get(int)} можно вызывать одновременно
+ * с изменением отображения: он никогда не бросает исключений и всегда завершается,
+ * хотя его результат в этом случае бессмыслен. Это позволяет читать под оптимистичной
+ * блокировкой ({@link java.util.concurrent.locks.StampedLock#tryOptimisticRead()}),
+ * проверяя результат после чтения.
+ *
+ * @param <V> тип значений. Значение null не допускается
+ */
+public class IntObjectMap<V> {
+
+    private static final int MIN_CAPACITY = 8;
+    private static final float LOAD_FACTOR = 0.6f;
+
+    private int[] keys;
+    private Object[] values;
+    private int size = 0;
+    private Object zeroValue = null;
+    private int resizeAt;
+
+    public IntObjectMap() {
+        this(MIN_CAPACITY);
+    }
+
+    /**
+     * @param expectedSize ожидаемое число элементов. Отображение такого размера
+     *                     не будет перестраиваться
+     */
+    public IntObjectMap(int expectedSize) {
+        if (expectedSize < 0)
+            throw new IllegalArgumentException("Expected size must not be negative.");
+        allocate(capacityFor(expectedSize));
+    }
+
+    private static int capacityFor(int size) {
+        long required = (long) Math.ceil(size / LOAD_FACTOR) + 1;
+        if (required > 1 << 30)
+            throw new IllegalArgumentException("Map is too large: " + size);
+        return Math.max(MIN_CAPACITY, Integer.highestOneBit((int) required - 1) << 1);
+    }
+
+    private void allocate(int capacity) {
+        values = new Object[capacity];
+        keys = new int[capacity];
+        resizeAt = (int) (capacity * LOAD_FACTOR);
+    }
+
+    private static int hash(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Заранее расширяет отображение, чтобы в нем поместилось {@code expectedSize} элементов без перестроения.
+     */
+    public void ensureCapacity(int expectedSize) {
+        int capacity = capacityFor(expectedSize);
+        if (capacity > keys.length)
+            rehash(capacity);
+    }
+
+    /**
+     * @return значение по ключу, либо null.
+     */
+    @SuppressWarnings("unchecked")
+    public V get(int key) {
+        if (key == 0)
+            return (V) zeroValue;
+
+        int[] keys = this.keys;
+        Object[] values = this.values;
+        // Массивы разных поколений: отображение перестраивается прямо сейчас
+        if (keys.length != values.length)
+            return null;
+
+        int mask = keys.length - 1;
+        int i = hash(key) & mask;
+        // Число шагов ограничено, чтобы не зациклиться на изменяемом массиве
+        for (int step = 0; step < keys.length; step++, i = (i + 1) & mask) {
+            int slot = keys[i];
+            if (slot == key)
+                return (V) values[i];
+            if (slot == 0)
+                return null;
+        }
+        return null;
+    }
+
+    public boolean containsKey(int key) {
+        return get(key) != null;
+    }
+
+    /**
+     * @return предыдущее значение по ключу, либо null
+     */
+    public V put(int key, V value) {
+        return put(key, value, false);
+    }
+
+    /**
+     * Добавляет значение, только если ключа еще нет.
+     *
+     * @return текущее значение по ключу, либо null, если значение было добавлено
+     */
+    public V putIfAbsent(int key, V value) {
+        return put(key, value, true);
+    }
+
+    @SuppressWarnings("unchecked")
+    private V put(int key, V value, boolean onlyIfAbsent) {
+        if (value == null)
+            throw new IllegalArgumentException("Value must not be null.");
+
+        if (key == 0) {
+            var previous = (V) zeroValue;
+            if (previous == null) {
+                size++;
+                zeroValue = value;
+            } else if (!onlyIfAbsent) {
+                zeroValue = value;
+            }
+            return previous;
+        }
+
+        int mask = keys.length - 1;
+        int i = hash(key) & mask;
+        for (int slot; (slot = keys[i]) != 0; i = (i + 1) & mask) {
+            if (slot == key) {
+                var previous = (V) values[i];
+                if (!onlyIfAbsent)
+                    values[i] = value;
+                return previous;
+            }
+        }
+
+        values[i] = value;
+        keys[i] = key;
+        if (++size > resizeAt)
+            rehash(keys.length << 1);
+        return null;
+    }
+
+    /**
+     * @return удаленное значение, либо null, если ключа не было
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(int key) {
+        if (key == 0) {
+            var previous = (V) zeroValue;
+            if (previous != null) {
+                zeroValue = null;
+                size--;
+            }
+            return previous;
+        }
+
+        int mask = keys.length - 1;
+        int i = hash(key) & mask;
+        for (int slot; (slot = keys[i]) != key; i = (i + 1) & mask) {
+            if (slot == 0)
+                return null;
+        }
+
+        var previous = (V) values[i];
+        shiftBack(i);
+        size--;
+        return previous;
+    }
+
+    /**
+     * Освобождает ячейку {@code free}, перенося в нее элементы цепочки,
+     * которые иначе стали бы недостижимы.
+     */
+    private void shiftBack(int free) {
+        int mask = keys.length - 1;
+        int i = free;
+        while (true) {
+            i = (i + 1) & mask;
+            int slot = keys[i];
+            if (slot == 0)
+                break;
+
+            int home = hash(slot) & mask;
+            // Элемент можно перенести, если его домашняя ячейка не лежит между free и i
+            boolean movable = free <= i
+                ? home <= free || home > i
+                : home <= free && home > i;
+            if (movable) {
+                values[free] = values[i];
+                keys[free] = slot;
+                free = i;
+            }
+        }
+        keys[free] = 0;
+        values[free] = null;
+    }
+
+    private void rehash(int capacity) {
+        int[] oldKeys = keys;
+        Object[] oldValues = values;
+
+        int[] newKeys = new int[capacity];
+        Object[] newValues = new Object[capacity];
+        int mask = capacity - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            int key = oldKeys[j];
+            if (key == 0)
+                continue;
+            int i = hash(key) & mask;
+            while (newKeys[i] != 0)
+                i = (i + 1) & mask;
+            newKeys[i] = key;
+            newValues[i] = oldValues[j];
+        }
+
+        values = newValues;
+        keys = newKeys;
+        resizeAt = (int) (capacity * LOAD_FACTOR);
+    }
+
+    public void clear() {
+        Arrays.fill(keys, 0);
+        Arrays.fill(values, null);
+        zeroValue = null;
+        size = 0;
+    }
+
+    /**
+     * Действие над парой ключ-значение без упаковки ключа.
+     */
+    @FunctionalInterface
+    public interface EntryConsumer<V> {
+        void accept(int key, V value);
+    }
+
+    /**
+     * Выполняет действие для каждой пары. Порядок обхода не определен.
+     */
+    @SuppressWarnings("unchecked")
+    public void forEach(EntryConsumer<? super V> action) {
+        if (zeroValue != null)
+            action.accept(0, (V) zeroValue);
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != 0)
+                action.accept(keys[i], (V) values[i]);
+        }
+    }
+
+    /**
+     * @return новый массив с ключами отображения.
+     */
+    public int[] keys() {
+        int[] result = new int[size];
+        int n = 0;
+        if (zeroValue != null)
+            result[n++] = 0;
+        for (int key : keys) {
+            if (key != 0)
+                result[n++] = key;
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        var result = new StringBuilder("{");
+        forEach((key, value) -> {
+            if (result.length() > 1)
+                result.append(", ");
+            result.append(key).append('=').append(value);
+        });
+        return result.append('}').toString();
+    }
+}
@@ -0,0 +1,269 @@
+package utils;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+/**
+ * Множество чисел {@code int} без упаковки в {@link Integer}.
+ *
+ * <p>Числа хранятся в одном массиве с открытой адресацией (линейное пробирование),
+ * поэтому {@link #add(int)}, {@link #remove(int)} и {@link #contains(int)}
+ * выполняются в среднем за O(1), а на одно число приходится 4-8 байт
+ * вместо ~20 байт у {@code ArrayList<Integer>} и ~50 байт у {@code HashSet<Integer>}.
+ *
+ * <p>Свободная ячейка обозначается нулем, а сам ноль хранится отдельным флагом.
+ * Удаление сдвигает следующие элементы цепочки назад, так что "надгробий"
+ * не остается и поиск не деградирует после множества удалений.
+ *
+ * <p>Класс не потокобезопасен. Порядок обхода не определен.
+ */
+public class IntSet implements Iterable<Integer> {
+
+    private static final int MIN_CAPACITY = 8;
+    private static final float LOAD_FACTOR = 0.6f;
+
+    private int[] slots;
+    private int mask;
+    private int size = 0;
+    private boolean hasZero = false;
+    private int resizeAt;
+
+    public IntSet() {
+        this(MIN_CAPACITY);
+    }
+
+    /**
+     * @param expectedSize ожидаемое число элементов. Множество такого размера
+     *                     не будет перестраиваться
+     */
+    public IntSet(int expectedSize) {
+        if (expectedSize < 0)
+            throw new IllegalArgumentException("Expected size must not be negative.");
+        allocate(capacityFor(expectedSize));
+    }
+
+    private static int capacityFor(int size) {
+        long required = (long) Math.ceil(size / LOAD_FACTOR) + 1;
+        if (required > 1 << 30)
+            throw new IllegalArgumentException("Set is too large: " + size);
+        return Math.max(MIN_CAPACITY, Integer.highestOneBit((int) required - 1) << 1);
+    }
+
+    private void allocate(int capacity) {
+        slots = new int[capacity];
+        mask = capacity - 1;
+        resizeAt = (int) (capacity * LOAD_FACTOR);
+    }
+
+    /**
+     * Перемешивает биты, чтобы последовательные id не образовывали длинных цепочек.
+     */
+    private static int hash(int value) {
+        int h = value * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean contains(int value) {
+        if (value == 0)
+            return hasZero;
+
+        int[] slots = this.slots;
+        for (int i = hash(value) & mask; ; i = (i + 1) & mask) {
+            int slot = slots[i];
+            if (slot == value)
+                return true;
+            if (slot == 0)
+                return false;
+        }
+    }
+
+    /**
+     * @return true, если числа еще не было в множестве
+     */
+    public boolean add(int value) {
+        if (value == 0) {
+            if (hasZero)
+                return false;
+            hasZero = true;
+            size++;
+            return true;
+        }
+
+        int i = hash(value) & mask;
+        for (int slot; (slot = slots[i]) != 0; i = (i + 1) & mask) {
+            if (slot == value)
+                return false;
+        }
+
+        slots[i] = value;
+        if (++size > resizeAt)
+            rehash(slots.length << 1);
+        return true;
+    }
+
+    /**
+     * @return true, если число было в множестве
+     */
+    public boolean remove(int value) {
+        if (value == 0) {
+            if (!hasZero)
+                return false;
+            hasZero = false;
+            size--;
+            return true;
+        }
+
+        int i = hash(value) & mask;
+        for (int slot; (slot = slots[i]) != value; i = (i + 1) & mask) {
+            if (slot == 0)
+                return false;
+        }
+
+        shiftBack(i);
+        size--;
+        return true;
+    }
+
+    /**
+     * Освобождает ячейку {@code free}, перенося в нее элементы цепочки,
+     * которые иначе стали бы недостижимы.
+     */
+    private void shiftBack(int free) {
+        int i = free;
+        while (true) {
+            i = (i + 1) & mask;
+            int slot = slots[i];
+            if (slot == 0)
+                break;
+
+            int home = hash(slot) & mask;
+            // Элемент можно перенести, если его домашняя ячейка не лежит между free и i
+            boolean movable = free <= i
+                ? home <= free || home > i
+                : home <= free && home > i;
+            if (movable) {
+                slots[free] = slot;
+                free = i;
+            }
+        }
+        slots[free] = 0;
+    }
+
+    private void rehash(int capacity) {
+        int[] old = slots;
+        allocate(capacity);
+        for (int value : old) {
+            if (value == 0)
+                continue;
+            int i = hash(value) & mask;
+            while (slots[i] != 0)
+                i = (i + 1) & mask;
+            slots[i] = value;
+        }
+    }
+
+    public void clear() {
+        Arrays.fill(slots, 0);
+        hasZero = false;
+        size = 0;
+    }
+
+    /**
+     * Выполняет действие для каждого числа без создания итератора и упаковки.
+     */
+    public void forEachInt(IntConsumer action) {
+        if (hasZero)
+            action.accept(0);
+        for (int value : slots) {
+            if (value != 0)
+                action.accept(value);
+        }
+    }
+
+    /**
+     * @return новый массив с числами множества.
+     */
+    public int[] toArray() {
+        int[] result = new int[size];
+        int n = 0;
+        if (hasZero)
+            result[n++] = 0;
+        for (int value : slots) {
+            if (value != 0)
+                result[n++] = value;
+        }
+        return result;
+    }
+
+    public IntStream stream() {
+        return IntStream.of(toArray());
+    }
+
+    @Override
+    public PrimitiveIterator.OfInt iterator() {
+        return new PrimitiveIterator.OfInt() {
+            private int index = hasZero ? -1 : nextIndex(0);
+
+            private int nextIndex(int from) {
+                while (from < slots.length && slots[from] == 0)
+                    from++;
+                return from;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return index < slots.length;
+            }
+
+            @Override
+            public int nextInt() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                if (index < 0) {
+                    index = nextIndex(0);
+                    return 0;
+                }
+                int value = slots[index];
+                index = nextIndex(index + 1);
+                return value;
+            }
+        };
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj)
+            return true;
+        if (!(obj instanceof IntSet other) || other.size != size || other.hasZero != hasZero)
+            return false;
+        for (int value : slots) {
+            if (value != 0 && !other.contains(value))
+                return false;
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = 0;
+        for (int value : slots)
+            result += value;
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(toArray());
+    }
+}
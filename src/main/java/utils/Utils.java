@@ -9,4 +9,33 @@ public class Utils {
     public static String createChatMessage(Object name, Object message) {
         return "[" + name + "] " + message;
     }
+
+    /**
+     * Оборачивает значение в кавычки так, чтобы командный процессор
+     * распознал его как один аргумент.<br>
+     * Кавычки и обратные слеши внутри значения экранируются, а переводы строк
+     * заменяются на {@code \n}, {@code \r} и {@code \}{@code uXXXX}, чтобы аргумент
+     * оставался одной строкой протокола.
+     * <br>
+     * <br>{@code Группа "[ССЫЛКА\ЗАБЛОКИРОВАНА]"} превращается в
+     * <br>{@code "Группа \"[ССЫЛКА\\ЗАБЛОКИРОВАНА]\""}
+     */
+    public static String quoteArgument(Object value) {
+        var string = value.toString();
+        var result = new StringBuilder(string.length() + 2);
+
+        result.append('"');
+        for (int i = 0; i < string.length(); i++) {
+            char c = string.charAt(i);
+            switch (c) {
+                case '"', '\\' -> result.append('\\').append(c);
+                case '\n' -> result.append("\\n");
+                case '\r' -> result.append("\\r");
+                case '\u0085', '\u2028', '\u2029' -> result.append(String.format("\\u%04x", (int) c));
+                default -> result.append(c);
+            }
+        }
+        result.append('"');
+        return result.toString();
+    }
 }
@@ -0,0 +1,170 @@
+package elements;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MessageCodecTest {
+
+    private static Message message(int id, int senderId, long timeMillis, String content) {
+        return new Message(id, content, senderId, new Timestamp(timeMillis));
+    }
+
+    private static ByteBuffer encode(Message message) {
+        var buffer = ByteBuffer.allocate(MessageCodec.encodedLength(message));
+        MessageCodec.encode(message, buffer);
+        assertFalse(buffer.hasRemaining(), "encodedLength() must match the bytes written");
+        return buffer.flip();
+    }
+
+    private static void assertRoundTrip(Message expected) {
+        var decoded = MessageCodec.decode(encode(expected));
+        assertEquals(expected.getId(), decoded.getId());
+        assertEquals(expected.getSenderId(), decoded.getSenderId());
+        assertEquals(expected.getTime().getTime(), decoded.getTime().getTime());
+        assertEquals(expected.getContent(), decoded.getContent());
+    }
+
+    @Test
+    void roundTripsExtremeNumbers() {
+        int[] ints = {0, 1, -1, 63, -64, 64, Integer.MAX_VALUE, Integer.MIN_VALUE};
+        long[] longs = {0, -1, System.currentTimeMillis(), Long.MAX_VALUE, Long.MIN_VALUE};
+
+        for (int id : ints) {
+            for (int senderId : ints) {
+                for (long time : longs)
+                    assertRoundTrip(message(id, senderId, time, "x"));
+            }
+        }
+    }
+
+    @Test
+    void smallValuesTakeOneByte() {
+        // id, отправитель, время и длина - по байту, плюс один байт текста
+        assertEquals(5, MessageCodec.encodedLength(message(-1, 5, 0, "a")));
+    }
+
+    @Test
+    void roundTripsSurrogatePairs() {
+        var content = "emoji 😀 и кириллица, 漢字";
+        var encoded = encode(message(1, 2, 3, content));
+
+        assertEquals(content, MessageCodec.decode(encoded.duplicate()).getContent());
+        assertEquals(content.getBytes(StandardCharsets.UTF_8).length,
+            new MessageView().wrap(encoded, 0).contentLength());
+    }
+
+    @Test
+    void encodesLoneSurrogatesLikeString() {
+        for (var content : new String[]{"\uD83D", "a\uDE00b", "\uDE00\uD83D", "x\uD83D"}) {
+            var expected = new String(content.getBytes(StandardCharsets.UTF_8), StandardCharsets.UTF_8);
+            var decoded = MessageCodec.decode(encode(message(1, 2, 3, content)));
+            assertEquals(expected, decoded.getContent());
+        }
+    }
+
+    @Test
+    void overflowLeavesBufferUnchanged() {
+        var message = message(100_000, 42, System.currentTimeMillis(), "не помещается");
+        int length = MessageCodec.encodedLength(message);
+
+        var buffer = ByteBuffer.allocate(length + 2);
+        buffer.position(3);
+        for (int i = 0; i < buffer.capacity(); i++)
+            buffer.put(i, (byte) 0x55);
+
+        assertThrows(BufferOverflowException.class, () -> MessageCodec.encode(message, buffer));
+        assertEquals(3, buffer.position());
+        for (int i = 0; i < buffer.capacity(); i++)
+            assertEquals((byte) 0x55, buffer.get(i), "byte " + i + " was modified");
+    }
+
+    @Test
+    void rejectsTooLongContent() {
+        var content = "x".repeat(MessageCodec.MAX_CONTENT_LENGTH + 1);
+        var buffer = ByteBuffer.allocate(MessageCodec.MAX_CONTENT_LENGTH + 16);
+        assertThrows(IllegalArgumentException.class,
+            () -> MessageCodec.encode(message(1, 1, 1, content), buffer));
+        assertEquals(0, buffer.position());
+    }
+
+    @Test
+    void rejectsTruncatedRecords() {
+        var encoded = encode(message(Integer.MAX_VALUE, -7, Long.MIN_VALUE, "обрезано"));
+
+        for (int cut = 0; cut < encoded.limit(); cut++) {
+            var truncated = encoded.duplicate().limit(cut);
+            assertThrows(IllegalArgumentException.class, () -> MessageCodec.decode(truncated), "cut at " + cut);
+            assertEquals(0, truncated.position());
+        }
+    }
+
+    @Test
+    void rejectsNonMinimalHeader() {
+        // id 0, записанный двумя байтами вместо одного
+        var buffer = ByteBuffer.wrap(new byte[]{(byte) 0x80, 0x00, 0x02, 0x00, 0x01, 'a'});
+        assertThrows(IllegalArgumentException.class, () -> new MessageView().wrap(buffer, 0));
+    }
+
+    @Test
+    void rejectsIdOutsideIntRange() {
+        // 2^35 не помещается в int
+        var buffer = ByteBuffer.wrap(new byte[]{
+            (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, 0x01, 0x02, 0x00, 0x00
+        });
+        assertThrows(IllegalArgumentException.class, () -> new MessageView().wrap(buffer, 0));
+    }
+
+    @Test
+    void rejectsOverlongVarint() {
+        var bytes = new byte[12];
+        Arrays.fill(bytes, (byte) 0xFF);
+        assertThrows(IllegalArgumentException.class, () -> new MessageView().wrap(ByteBuffer.wrap(bytes), 0));
+    }
+
+    @Test
+    void viewWalksRecordsAndRelaysThemWithoutDecoding() {
+        var first = message(1, 10, 1_000, "первое");
+        var second = message(2, -1, 2_000, "second 😀");
+
+        var source = ByteBuffer.allocate(MessageCodec.encodedLength(first) + MessageCodec.encodedLength(second));
+        MessageCodec.encode(first, source);
+        MessageCodec.encode(second, source);
+        source.flip();
+
+        var relay = ByteBuffer.allocate(source.limit() + 4);
+        relay.position(4);
+
+        var view = new MessageView();
+        int offset = 0;
+        int count = 0;
+        while (offset < source.limit()) {
+            view.wrap(source, offset);
+            view.copyTo(relay);
+            offset = view.nextOffset();
+            count++;
+        }
+
+        assertEquals(2, count);
+        assertEquals(0, source.position(), "the view must not move the source buffer");
+        assertEquals(relay.capacity(), relay.position());
+
+        relay.position(4);
+        var relayed = MessageCodec.decode(relay);
+        assertEquals(first.getContent(), relayed.getContent());
+        assertEquals(first.getSenderId(), relayed.getSenderId());
+
+        view.wrap(relay, relay.position());
+        assertEquals(2, view.id());
+        assertEquals(-1, view.senderId());
+        assertEquals(2_000, view.timeMillis());
+        assertEquals(second.getContent(), view.content());
+        assertEquals(second.getContent().getBytes(StandardCharsets.UTF_8).length, view.contentBytes().remaining());
+    }
+}
@@ -0,0 +1,189 @@
+package server;
+
+import cli.CustomCommandProcessor;
+import network.Connection;
+import network.EncodedMessage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import utils.IntSet;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PresenceServiceTest {
+
+    /**
+     * Соединение, запоминающее отправленные ему сообщения.
+     */
+    private static final class RecordingConnection implements Connection {
+        final List<String> messages = new ArrayList<>();
+
+        @Override
+        public synchronized void sendMessage(String message) {
+            messages.add(message);
+        }
+
+        @Override
+        public void sendMessage(EncodedMessage message) {
+            sendMessage(message.text());
+        }
+
+        @Override
+        public boolean isClosed() {
+            return false;
+        }
+
+        @Override
+        public void close() {
+        }
+
+        synchronized List<String> diffs() {
+            var result = new ArrayList<String>();
+            for (var message : messages) {
+                // /presence update "<diff>,<diff>,..."
+                var list = message.substring(message.indexOf('"') + 1, message.lastIndexOf('"'));
+                result.addAll(List.of(list.split(",")));
+            }
+            return result;
+        }
+
+        synchronized int count() {
+            return messages.size();
+        }
+
+        synchronized void clear() {
+            messages.clear();
+        }
+    }
+
+    private final HashMap<Integer, IntSet> friends = new HashMap<>();
+    private final MembershipIndex groups = new MembershipIndex();
+    private final SessionRegistry sessions = new SessionRegistry(groups);
+    private final PresenceService presence = new PresenceService(friends::get, groups, sessions);
+
+    {
+        sessions.setPresenceService(presence);
+    }
+
+    @AfterEach
+    void close() {
+        presence.close();
+    }
+
+    private void befriend(int a, int b) {
+        friends.computeIfAbsent(a, (it) -> new IntSet()).add(b);
+        friends.computeIfAbsent(b, (it) -> new IntSet()).add(a);
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "timed out");
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * Ждет, пока сервис разошлет все, что накопил к этому моменту.
+     */
+    private static void settle() throws InterruptedException {
+        Thread.sleep(3 * PresenceService.COALESCE_WINDOW_MILLIS);
+    }
+
+    @Test
+    void registryDrivesPresence() {
+        var connection = new RecordingConnection();
+        sessions.bind(1, connection);
+        assertEquals(PresenceService.State.ONLINE, presence.getState(1));
+
+        sessions.unbind(1, connection);
+        assertEquals(PresenceService.State.OFFLINE, presence.getState(1));
+    }
+
+    @Test
+    void newConnectionReceivesSnapshotOfOnlineFriends() throws InterruptedException {
+        befriend(1, 2);
+        befriend(1, 3);
+        sessions.bind(2, new RecordingConnection());
+        settle();
+
+        var connection = new RecordingConnection();
+        sessions.bind(1, connection);
+        await(() -> connection.count() > 0);
+        settle();
+
+        assertEquals(List.of("2:online"), connection.diffs());
+    }
+
+    @Test
+    void friendsLearnAboutLoginAndLogout() throws InterruptedException {
+        befriend(1, 2);
+        var observer = new RecordingConnection();
+        sessions.bind(1, observer);
+
+        var other = new RecordingConnection();
+        sessions.bind(2, other);
+        await(() -> observer.diffs().contains("2:online"));
+
+        sessions.unbind(2, other);
+        await(() -> observer.diffs().contains("2:offline"));
+    }
+
+    @Test
+    void typingIsAcceptedOnlyFromGroupMembers() throws InterruptedException {
+        groups.addMember(7, 1);
+        groups.addMember(7, 2);
+        var processor = new CustomCommandProcessor<Connection>();
+        presence.register(processor);
+
+        var observer = new RecordingConnection();
+        var member = new RecordingConnection();
+        var stranger = new RecordingConnection();
+        sessions.bind(2, observer);
+        sessions.bind(1, member);
+        sessions.bind(3, stranger);
+        settle();
+        observer.clear();
+
+        assertNull(processor.execute("/presence typing 7", stranger));
+        settle();
+        assertEquals(PresenceService.State.ONLINE, presence.getState(3));
+        assertEquals(0, observer.count());
+
+        assertNull(processor.execute("/presence typing 7", member));
+        await(() -> observer.diffs().contains("1:typing:7"));
+    }
+
+    @Test
+    void massReconnectCostsOneMessagePerRecipientWindow() throws InterruptedException {
+        int users = 50_000;
+        for (int userId = 1; userId <= users; userId++)
+            befriend(0, userId);
+
+        var observer = new RecordingConnection();
+        sessions.bind(0, observer);
+        settle();
+        observer.clear();
+
+        // Каждый пользователь входит, обрывает соединение и входит снова
+        for (int userId = 1; userId <= users; userId++) {
+            var first = new RecordingConnection();
+            sessions.bind(userId, first);
+            sessions.unbind(userId, first);
+            sessions.bind(userId, new RecordingConnection());
+        }
+        await(() -> observer.diffs().size() >= users);
+        settle();
+
+        var diffs = observer.diffs();
+        assertEquals(users, diffs.size(), "flapping must collapse into one diff per user");
+        assertTrue(diffs.stream().allMatch((it) -> it.endsWith(":online")));
+        int expectedMessages = (users + PresenceService.MAX_DIFFS_PER_MESSAGE - 1) / PresenceService.MAX_DIFFS_PER_MESSAGE;
+        assertTrue(observer.count() <= 2 * expectedMessages,
+            "expected about " + expectedMessages + " messages, got " + observer.count());
+    }
+}
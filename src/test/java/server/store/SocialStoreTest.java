@@ -0,0 +1,154 @@
+package server.store;
+
+import connection.Group;
+import connection.User;
+import elements.GroupTypes;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SocialStoreTest {
+
+    private final Path root;
+    private final List<SocialStore> stores = new ArrayList<>();
+
+    SocialStoreTest() throws IOException {
+        root = Files.createTempDirectory("social-store-test");
+    }
+
+    @AfterEach
+    void cleanUp() throws IOException {
+        stores.forEach(SocialStore::close);
+        try (Stream<Path> files = Files.walk(root)) {
+            for (var file : files.sorted(Comparator.reverseOrder()).toList())
+                Files.deleteIfExists(file);
+        }
+    }
+
+    private SocialStore open() throws IOException {
+        var store = new SocialStore(root, 10, SocialStore.DEFAULT_SNAPSHOT_THRESHOLD);
+        stores.add(store);
+        return store;
+    }
+
+    /**
+     * Параметры названы не как поля: в анонимном подклассе поля скрыли бы их.
+     */
+    private static User user(int userId, String login, String displayName, String secret, int... friendIds) {
+        return new User() {{
+            id = userId;
+            userName = login;
+            name = displayName;
+            password = secret;
+            for (int friendId : friendIds)
+                friends.add(friendId);
+        }};
+    }
+
+    private static Group group(int groupId, String displayName, GroupTypes groupType, int ownerId,
+                               int[] memberIds, int[] adminIds) {
+        return new Group() {{
+            id = groupId;
+            groupName = "group" + groupId;
+            name = displayName;
+            type = groupType;
+            owner = ownerId;
+            for (int userId : memberIds)
+                members.add(userId);
+            for (int userId : adminIds)
+                admins.add(userId);
+        }};
+    }
+
+    private static SocialStore.StoredUser storedUser(SocialStore store, int id) {
+        var found = new ArrayList<SocialStore.StoredUser>();
+        store.forEachUser((it) -> {
+            if (it.id() == id)
+                found.add(it);
+        });
+        assertEquals(1, found.size(), "user " + id);
+        return found.getFirst();
+    }
+
+    private static SocialStore.StoredGroup storedGroup(SocialStore store, int id) {
+        var found = new ArrayList<SocialStore.StoredGroup>();
+        store.forEachGroup((it) -> {
+            if (it.id() == id)
+                found.add(it);
+        });
+        assertEquals(1, found.size(), "group " + id);
+        return found.getFirst();
+    }
+
+    private static int[] sorted(int[] values) {
+        var copy = values.clone();
+        Arrays.sort(copy);
+        return copy;
+    }
+
+    @Test
+    void setJournalSavesExistingState() throws IOException {
+        var store = open();
+        user(5, "alice", "Alice", "secret", 6, 7).setJournal(store);
+        group(9, "Chat", GroupTypes.Group, 5, new int[]{5, 6}, new int[]{5}).setJournal(store);
+        store.flush();
+
+        // Без close(): восстановление из журнала, как после сбоя
+        var restored = open();
+        var user = storedUser(restored, 5);
+        assertEquals("alice", user.userName());
+        assertEquals("Alice", user.name());
+        assertEquals("secret", user.password());
+        assertArrayEquals(new int[]{6, 7}, sorted(user.friends()));
+
+        var group = storedGroup(restored, 9);
+        assertEquals("group9", group.groupName());
+        assertEquals("Chat", group.name());
+        assertEquals(GroupTypes.Group, group.type());
+        assertEquals(5, group.owner());
+        assertArrayEquals(new int[]{5, 6}, sorted(group.members()));
+        assertArrayEquals(new int[]{5}, group.admins());
+    }
+
+    @Test
+    void changesSurviveRestartThroughSnapshot() throws IOException {
+        var store = open();
+        var user = user(1, "bob", "Bob", "pw");
+        user.setJournal(store);
+        var group = group(2, "Channel", GroupTypes.Channel, 1, new int[0], new int[0]);
+        group.setJournal(store);
+
+        user.setName("Robert");
+        user.addFriend(3);
+        group.includeUser(1);
+        group.includeUser(3);
+        group.addAdmin(1);
+        group.addAdmin(3);
+        group.excludeUser(3);
+        store.close();
+
+        var restored = open();
+        assertEquals(1, restored.userCount());
+        assertEquals(1, restored.groupCount());
+
+        var stored = storedUser(restored, 1);
+        assertEquals("Robert", stored.name());
+        assertArrayEquals(new int[]{3}, stored.friends());
+
+        var storedGroup = storedGroup(restored, 2);
+        assertEquals(GroupTypes.Channel, storedGroup.type());
+        assertEquals(1, storedGroup.owner());
+        assertArrayEquals(new int[]{1}, storedGroup.members());
+        assertArrayEquals(new int[]{1}, storedGroup.admins());
+    }
+}